@@ -20,6 +20,7 @@ import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.text.MessageFormat;
+import java.util.Map;
 
 /**
  * The bathymetry operator is a GPF-Operator. It takes the geographic bounds of the input product and creates a new
@@ -162,24 +163,25 @@ public class BathymetryOp extends Operator {
 
 
     @Override
-    public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
+    public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
 
-        final String targetBandName = targetBand.getName();
-
-        final Rectangle rectangle = targetTile.getRectangle();
+        // the three bands share the geolocation, the chunk read from the bathymetry source and the interpolation,
+        // so they are computed together for each tile rectangle
+        final Tile bathymetryTile = targetTiles.get(targetProduct.getBand(BATHYMETRY_BAND_NAME));
+        final Tile topographyTile = targetTiles.get(targetProduct.getBand(TOPOGRAPHY_BAND_NAME));
+        final Tile elevationTile = targetTiles.get(targetProduct.getBand(ELEVATION_BAND_NAME));
 
         // not sure if this is really needed but just in case
-        if (!targetBandName.equals(BATHYMETRY_BAND_NAME)
-                && !targetBandName.equals(TOPOGRAPHY_BAND_NAME)
-                && !targetBandName.equals(ELEVATION_BAND_NAME)) {
-            for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
-                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
-                    int dataValue = 0;
-                    targetTile.setSample(x, y, dataValue);
+        for (Map.Entry<Band, Tile> entry : targetTiles.entrySet()) {
+            final Tile targetTile = entry.getValue();
+            if (targetTile != bathymetryTile && targetTile != topographyTile && targetTile != elevationTile) {
+                for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                    for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                        int dataValue = 0;
+                        targetTile.setSample(x, y, dataValue);
+                    }
                 }
             }
-
-            return;
         }
 
 
@@ -188,17 +190,27 @@ public class BathymetryOp extends Operator {
             final PixelPos pixelPos = new PixelPos();
             final GeoPos geoPos = new GeoPos();
 
+            final int pixelCount = rectangle.width * rectangle.height;
+            final float[] lats = new float[pixelCount];
+            final float[] lons = new float[pixelCount];
+            final boolean[] valid = new boolean[pixelCount];
 
-            // loop through tile, adding each pixel geolocation to it's appropriate earthBox via motherEarthBox
-            // at this point the earthBoxes will adjust their mins and maxes based on the given lats and lons.
+
+            // loop through tile, geolocating each pixel once and adding it to it's appropriate earthBox via
+            // motherEarthBox. At this point the earthBoxes will adjust their mins and maxes based on the given lats and lons.
 
             MotherEarthBox motherEarthBox = new MotherEarthBox();
 
+            int i = 0;
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
                 for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
                     pixelPos.setLocation(x, y);
                     geoCoding.getGeoPos(pixelPos, geoPos);
                     motherEarthBox.add(geoPos);
+                    lats[i] = geoPos.lat;
+                    lons[i] = geoPos.lon;
+                    valid[i] = geoPos.isValid();
+                    i++;
                 }
             }
 
@@ -261,58 +273,53 @@ public class BathymetryOp extends Operator {
             }
 
 
-            // loop through all the tile pixels, geolocate them, and get their bathymetry height from motherEarthBox.
+            // loop through all the tile pixels and get their bathymetry height from motherEarthBox, once for all bands.
+            final short missingValue = bathymetryReader.getMissingValue();
+            i = 0;
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
                 for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
-                    pixelPos.setLocation(x, y);
-                    geoCoding.getGeoPos(pixelPos, geoPos);
 
-                    int value;
-                    int waterSurfaceHeight;
-                    int height;
-                    if (geoPos.isValid()) {
-
-                        height = motherEarthBox.getValue(geoPos);
-                        waterSurfaceHeight = motherEarthBox.getWaterSurfaceValue(geoPos);
-
-                        if (targetBandName.equals(ELEVATION_BAND_NAME)) {
-                            value = height;
-                        } else if (targetBandName.equals(TOPOGRAPHY_BAND_NAME)) {
-                            int valueSurface = height - waterSurfaceHeight;
-
-                            if (valueSurface > 0) {
-                                value = motherEarthBox.getValue(geoPos);
-                            } else {
-                                value = bathymetryReader.getMissingValue();
-                            }
-                        } else if (targetBandName.equals(BATHYMETRY_BAND_NAME)) {
-                          int  valueSurface = height - waterSurfaceHeight;
-
-                            if (valueSurface <= 0) {
-                                value = valueSurface;
-                            } else {
-                                value = bathymetryReader.getMissingValue();
-                            }
-
-                            // convert  to positive if not NaN
-                            if (value > -32000) {
-                                value = -value;
-                            }
-                        } else {
-                            value = bathymetryReader.getMissingValue();
+                    int elevation = missingValue;
+                    int topography = missingValue;
+                    int bathymetry = missingValue;
+                    if (valid[i]) {
+                        geoPos.setLocation(lats[i], lons[i]);
+
+                        int height = motherEarthBox.getValue(geoPos);
+                        int waterSurfaceHeight = motherEarthBox.getWaterSurfaceValue(geoPos);
+                        int valueSurface = height - waterSurfaceHeight;
+
+                        elevation = height;
+
+                        if (valueSurface > 0) {
+                            topography = height;
                         }
 
-                    } else {
-                        value = bathymetryReader.getMissingValue();
-                    }
+                        if (valueSurface <= 0) {
+                            bathymetry = valueSurface;
+                        }
 
+                        // convert  to positive if not NaN
+                        if (bathymetry > -32000) {
+                            bathymetry = -bathymetry;
+                        }
+                    }
+                    i++;
 
-                    targetTile.setSample(x, y, value);
+                    if (elevationTile != null) {
+                        elevationTile.setSample(x, y, elevation);
+                    }
+                    if (topographyTile != null) {
+                        topographyTile.setSample(x, y, topography);
+                    }
+                    if (bathymetryTile != null) {
+                        bathymetryTile.setSample(x, y, bathymetry);
+                    }
                 }
             }
 
         } catch (Exception e) {
-            throw new OperatorException("Error computing tile '" + targetTile.getRectangle().toString() + "'.", e);
+            throw new OperatorException("Error computing tile '" + rectangle.toString() + "'.", e);
         }
     }
 
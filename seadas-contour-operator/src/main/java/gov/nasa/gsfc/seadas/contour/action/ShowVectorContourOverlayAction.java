@@ -13,6 +13,7 @@ import org.esa.beam.framework.ui.command.CommandEvent;
 import org.esa.beam.framework.ui.product.ProductSceneView;
 import org.esa.beam.util.FeatureUtils;
 import org.esa.beam.util.ProductUtils;
+import org.esa.beam.util.logging.BeamLogManager;
 import org.esa.beam.visat.VisatApp;
 import org.esa.beam.visat.actions.AbstractShowOverlayAction;
 import org.geotools.data.collection.ListFeatureCollection;
@@ -34,6 +35,11 @@ import javax.media.jai.RenderedOp;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 
 /**
  * Created by IntelliJ IDEA.
@@ -137,26 +143,41 @@ public class ShowVectorContourOverlayAction extends AbstractShowOverlayAction {
         noDataList.add(noDataValue);
         pb.setParameter("nodata", noDataList);
 
+        // all levels are traced in a single pass over the source image, the lines are split by level afterwards
+        ArrayList<Double> contourLevels = new ArrayList<Double>();
         for (ContourInterval interval : contourIntervals) {
-            ArrayList<Double> contourInterval = new ArrayList<Double>();
+            contourLevels.add((interval.getContourLevelValue() - scalingOffset) / scalingFactor);
+        }
+        if (contourLevels.isEmpty()) {
+            return vectorDataNodes;
+        }
+        // intervals sharing a level value share its lines
+        pb.setParameter("levels", new ArrayList<Double>(new LinkedHashSet<Double>(contourLevels)));
+
+        Map<Double, List<LineString>> contoursByLevel;
+        try {
+            contoursByLevel = createContoursByLevel(pb);
+        } catch (Exception e) {
+            reportFailure("Failed to create contour lines of " + contourData.getBand().getName(), e);
+            return vectorDataNodes;
+        }
+
+        for (int i = 0; i < contourIntervals.size(); i++) {
+            ContourInterval interval = contourIntervals.get(i);
             String vectorName = interval.getContourLevelName();
             if (contourData.isFiltered()) {
                 vectorName = vectorName + "_filtered";
             }
-            double contourValue = (interval.getContourLevelValue() - scalingOffset) / scalingFactor;
-            contourInterval.add(contourValue);
-            pb.setParameter("levels", contourInterval);
+            double contourValue = contourLevels.get(i);
 
+            List<LineString> contours = contoursByLevel.get(contourValue);
             FeatureCollection<SimpleFeatureType, SimpleFeature> featureCollection = null;
 
             try {
-                featureCollection = createContourFeatureCollection(pb);
+                featureCollection = createContourFeatureCollection(contours != null ? contours : new ArrayList<LineString>());
             } catch (Exception e) {
-                if (contourData.getLevels().size() != 0)
-                    System.out.println(e.getMessage());
-                if (VisatApp.getApp() != null) {
-                    VisatApp.getApp().showErrorDialog("failed to create contour lines");
-                }
+                reportFailure("Failed to create contour lines of " + contourData.getBand().getName() + " at " +
+                        (contourValue * scalingFactor + scalingOffset), e);
                 continue;
             }
             if (featureCollection.isEmpty()) {
@@ -179,10 +200,47 @@ public class ShowVectorContourOverlayAction extends AbstractShowOverlayAction {
         return vectorDataNodes;
     }
 
-    private FeatureCollection<SimpleFeatureType, SimpleFeature> createContourFeatureCollection(ParameterBlockJAI pb) {
+    /**
+     * Logs a failure, and shows it to the user if the action runs in VISAT rather than in an operator.
+     */
+    private static void reportFailure(String message, Exception e) {
+        BeamLogManager.getSystemLogger().log(Level.WARNING, message, e);
+        if (VisatApp.getApp() != null) {
+            VisatApp.getApp().showErrorDialog("Contour Lines", message + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Traces the contours of all levels of the parameter block and groups the lines by their level.
+     * The contour operator tags every line with the level value it belongs to.
+     */
+    private Map<Double, List<LineString>> createContoursByLevel(ParameterBlockJAI pb) {
 
         RenderedOp dest = JAI.create("Contour", pb);
         Collection<LineString> contours = (Collection<LineString>) dest.getProperty(ContourDescriptor.CONTOUR_PROPERTY_NAME);
+        Map<Double, List<LineString>> contoursByLevel = new HashMap<Double, List<LineString>>();
+        for (LineString contour : contours) {
+            // the contour operator caches its lines, so shift a copy of them
+            LineString lineString = (LineString) contour.clone();
+            Coordinate[] coordinates = lineString.getCoordinates();
+            for (int i = 0; i < coordinates.length; i++) {
+                coordinates[i].x = coordinates[i].x + 0.5;
+                coordinates[i].y = coordinates[i].y + 0.5;
+            }
+            lineString.geometryChanged();
+            Double level = (Double) contour.getUserData();
+            List<LineString> levelContours = contoursByLevel.get(level);
+            if (levelContours == null) {
+                levelContours = new ArrayList<LineString>();
+                contoursByLevel.put(level, levelContours);
+            }
+            levelContours.add(lineString);
+        }
+        return contoursByLevel;
+    }
+
+    private FeatureCollection<SimpleFeatureType, SimpleFeature> createContourFeatureCollection(List<LineString> contours) {
+
         SimpleFeatureType featureType = null;
         FeatureCollection<SimpleFeatureType, SimpleFeature> featureCollection = null;
         try {
@@ -192,11 +250,6 @@ public class ShowVectorContourOverlayAction extends AbstractShowOverlayAction {
 
         }
         for (LineString lineString : contours) {
-            Coordinate[] coordinates = lineString.getCoordinates();
-            for (int i = 0; i < coordinates.length; i++) {
-                coordinates[i].x = coordinates[i].x + 0.5;
-                coordinates[i].y = coordinates[i].y + 0.5;
-            }
             final SimpleFeature feature = createFeature(featureType, lineString);
 
             if (feature != null) {
@@ -0,0 +1,108 @@
+package gov.nasa.gsfc.seadas.contour.operator;
+
+import com.vividsolutions.jts.geom.LineString;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of the contours traced by {@link ContourOpImage}s, shared by all
+ * instances of the operator.
+ * <p>
+ * Contours are keyed by the source image and all parameters affecting the result
+ * (band, levels or interval, NODATA values, simplification and smoothing), so a new
+ * "Contour" operation on the same band with the same settings, e.g. when the contour
+ * dialog is opened again, reuses the lines traced before. The least recently used
+ * entries are dropped once more than {@link #getMaxSize()} results are held. The size
+ * can be set with the system property {@value #MAX_SIZE_PROPERTY}.
+ */
+class ContourCache {
+
+    static final String MAX_SIZE_PROPERTY = "seadas.contour.cacheSize";
+
+    private static final int DEFAULT_MAX_SIZE = 16;
+
+    private static final ContourCache INSTANCE = new ContourCache(Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+
+    private final int maxSize;
+    private final Map<Key, List<LineString>> entries;
+
+    ContourCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        this.entries = new LinkedHashMap<Key, List<LineString>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<LineString>> eldest) {
+                return size() > ContourCache.this.maxSize;
+            }
+        };
+    }
+
+    static ContourCache getInstance() {
+        return INSTANCE;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    synchronized List<LineString> get(Key key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(Key key, List<LineString> contours) {
+        if (maxSize > 0) {
+            entries.put(key, contours);
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Identifies a contour result. The source image and ROI are compared by identity
+     * and only weakly referenced, so the cache does not keep them alive.
+     */
+    static final class Key {
+
+        private final WeakReference<Object> source;
+        private final WeakReference<Object> roi;
+        private final Object[] parameters;
+        private final int hashCode;
+
+        Key(Object source, Object roi, Object... parameters) {
+            this.source = new WeakReference<Object>(source);
+            this.roi = roi != null ? new WeakReference<Object>(roi) : null;
+            this.parameters = parameters;
+            this.hashCode = 31 * (31 * System.identityHashCode(source) + System.identityHashCode(roi))
+                            + Arrays.deepHashCode(parameters);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            Object thisSource = source.get();
+            if (hashCode != other.hashCode || thisSource == null || thisSource != other.source.get()) {
+                return false;
+            }
+            if ((roi == null) != (other.roi == null) || (roi != null && (roi.get() == null || roi.get() != other.roi.get()))) {
+                return false;
+            }
+            return Arrays.deepEquals(parameters, other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
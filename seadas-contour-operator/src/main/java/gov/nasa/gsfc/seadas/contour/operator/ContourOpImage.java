@@ -37,9 +37,14 @@ import javax.media.jai.PlanarImage;
 import javax.media.jai.ROI;
 import javax.media.jai.iterator.RectIter;
 import javax.media.jai.iterator.RectIterFactory;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
-import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 
 /**
@@ -70,6 +75,9 @@ public class ContourOpImage extends AttributeOpImage {
     private static final int BR_VERTEX2 = 1;
     private static final int TR_VERTEX3 = 2;
     private static final int TL_VERTEX4 = 3;
+
+    /** Minimum number of image lines contoured by one task */
+    private static final int MIN_STRIP_HEIGHT = 64;
     
     /** The source image band to process */
     private int band;
@@ -92,8 +100,8 @@ public class ContourOpImage extends AttributeOpImage {
     /** Whether to use strict NODATA exclusion */
     private final boolean strictNodata;
     
-    /** Output contour lines */
-    private SoftReference<List<LineString>> cachedContours;
+    /** Identifies the output contour lines in the {@link ContourCache} */
+    private final ContourCache.Key cacheKey;
     
     /** Whether to simplify contour lines by removing coincident vertices */
     private final boolean simplify;
@@ -218,6 +226,12 @@ public class ContourOpImage extends AttributeOpImage {
         this.simplify = simplify;
         this.smooth = smooth;
 
+        this.cacheKey = new ContourCache.Key(source, roi, band,
+                contourLevels != null ? contourLevels.toArray() : null,
+                contourLevels == null ? contourInterval : null,
+                noDataNumbers.toArray(), noDataRanges.toString(),
+                strictNodata, simplify, smooth);
+
         // Set the precision to use for Geometry operations
         Utils.setPrecision(100.0);
     }
@@ -227,13 +241,14 @@ public class ContourOpImage extends AttributeOpImage {
      */
     @Override
     protected Object getAttribute(String name) {
-        if (cachedContours == null || cachedContours.get() == null) {
-            synchronized(this) {
-                cachedContours = new SoftReference<List<LineString>>(createContours());
+        synchronized(this) {
+            List<LineString> contours = ContourCache.getInstance().get(cacheKey);
+            if (contours == null) {
+                contours = Collections.unmodifiableList(createContours());
+                ContourCache.getInstance().put(cacheKey, contours);
             }
+            return contours;
         }
-        
-        return cachedContours.get();
     }
 
     /**
@@ -300,6 +315,7 @@ public class ContourOpImage extends AttributeOpImage {
             for (int i = N - 1; i >= 0; i--) {
                 LineString contour = mergedContourLines.remove(i);
                 LineString smoothed = smoother.smooth(contour, smoothAlpha);
+                smoothed.setUserData(contour.getUserData());
                 mergedContourLines.add(smoothed);
             }
         }
@@ -352,6 +368,65 @@ public class ContourOpImage extends AttributeOpImage {
      * @return the generated contour segments
      */
     private Map<Integer, Segments> getContourSegments() {
+        final PlanarImage src = getSourceImage(0);
+        final Rectangle bounds = src.getBounds();
+
+        // squares of row y have their lower vertices on image line y and their upper vertices on line y + 1;
+        // strips follow the tile rows of the source so that each strip decodes as few tiles as possible
+        final int lastLine = bounds.y + bounds.height - 1;
+        final int stripHeight = Math.max(MIN_STRIP_HEIGHT, src.getTileHeight());
+
+        List<Future<Map<Integer, Segments>>> strips = new ArrayList<Future<Map<Integer, Segments>>>();
+        for (int y = bounds.y; y < lastLine; y += stripHeight) {
+            final int stripMinY = y;
+            final int stripMaxY = Math.min(y + stripHeight, lastLine);
+            strips.add(ForkJoinPool.commonPool().submit(new Callable<Map<Integer, Segments>>() {
+                @Override
+                public Map<Integer, Segments> call() {
+                    return getContourSegments(src, bounds.x, bounds.width, stripMinY, stripMaxY);
+                }
+            }));
+        }
+
+        /*
+         * Stitch the strips together. Segments ending on the line shared by two strips
+         * are computed from the same samples in both strips, so their end points match
+         * exactly and the lines are joined when the segments are merged.
+         */
+        Map<Integer, Segments> segments = new HashMap<Integer, Segments>();
+        try {
+            for (Future<Map<Integer, Segments>> strip : strips) {
+                for (Map.Entry<Integer, Segments> entry : strip.get().entrySet()) {
+                    Segments levelSegments = segments.get(entry.getKey());
+                    if (levelSegments == null) {
+                        segments.put(entry.getKey(), entry.getValue());
+                    } else {
+                        levelSegments.addAll(entry.getValue());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating contours", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<Map<Integer, Segments>> strip : strips) {
+                strip.cancel(false);
+            }
+        }
+
+        return segments;
+    }
+
+    /**
+     * Creates the contour segments of the squares in the image lines {@code minY} (inclusive)
+     * to {@code maxY} (exclusive). The samples are read line by line into primitive buffers.
+     */
+    private Map<Integer, Segments> getContourSegments(PlanarImage src, int minX, int width, int minY, int maxY) {
 
         Map<Integer, Segments> segments = new HashMap<Integer, Segments>();
 
@@ -368,43 +443,43 @@ public class ContourOpImage extends AttributeOpImage {
             {{0, 3, 4}, {1, 3, 1}, {4, 3, 0}},
             {{9, 6, 7}, {5, 2, 0}, {8, 0, 0}}
         };
-        
-        final PlanarImage src = getSourceImage(0);
-        
-        RectIter iter1 = RectIterFactory.create(src, src.getBounds());
-        RectIter iter2 = RectIterFactory.create(src, src.getBounds());
-        moveIterToBand(iter1, this.band);
-        moveIterToBand(iter2, this.band);
-        iter1.startLines();
-        iter2.startLines();
-        iter2.nextLine();
-        
-        int y = (int) src.getBounds().getMinY();
-        while(!iter2.finishedLines() && !iter1.finishedLines()) {
-            iter1.startPixels();
-            iter2.startPixels();
-            
-            sample[BR_VERTEX2] = iter1.getSampleDouble();
-            nodata[BR_VERTEX2] = isNoData(sample[BR_VERTEX2]);
 
-            sample[TR_VERTEX3] = iter2.getSampleDouble();
-            nodata[TR_VERTEX3] = isNoData(sample[TR_VERTEX3]);
-            
-            iter1.nextPixel();
-            iter2.nextPixel();
-            int x = (int) src.getBounds().getMinX() + 1;
-            while (!iter1.finishedPixels() && !iter2.finishedPixels()) {
+        final Raster strip = src.getData(new Rectangle(minX, minY, width, maxY - minY + 1));
+        double[] lowerLine = new double[width];
+        double[] upperLine = new double[width];
+        boolean[] lowerNodata = new boolean[width];
+        boolean[] upperNodata = new boolean[width];
+        readLine(strip, minX, minY, width, upperLine, upperNodata);
+
+        for (int y = minY; y < maxY; y++) {
+            double[] tempLine = lowerLine;
+            lowerLine = upperLine;
+            upperLine = tempLine;
+            boolean[] tempNodata = lowerNodata;
+            lowerNodata = upperNodata;
+            upperNodata = tempNodata;
+            readLine(strip, minX, y + 1, width, upperLine, upperNodata);
+
+            sample[BR_VERTEX2] = lowerLine[0];
+            nodata[BR_VERTEX2] = lowerNodata[0];
+
+            sample[TR_VERTEX3] = upperLine[0];
+            nodata[TR_VERTEX3] = upperNodata[0];
+
+            for (int col = 1; col < width; col++) {
+                int x = minX + col;
                 sample[BL_VERTEX1] = sample[BR_VERTEX2];
                 nodata[BL_VERTEX1] = nodata[BR_VERTEX2];
 
-                sample[BR_VERTEX2] = iter1.getSampleDouble();
-                nodata[BR_VERTEX2] = isNoData(sample[BR_VERTEX2]);
+                sample[BR_VERTEX2] = lowerLine[col];
+                nodata[BR_VERTEX2] = lowerNodata[col];
 
                 sample[TL_VERTEX4] = sample[TR_VERTEX3];
                 nodata[TL_VERTEX4] = nodata[TR_VERTEX3];
 
-                sample[TR_VERTEX3] = iter2.getSampleDouble();
-                nodata[TR_VERTEX3] = isNoData(sample[TR_VERTEX3]);
+                sample[TR_VERTEX3] = upperLine[col];
+                nodata[TR_VERTEX3] = upperNodata[col];
+
 
                 boolean processSquare = true;
                 boolean hasSingleNoData = false;
@@ -609,19 +684,21 @@ public class ContourOpImage extends AttributeOpImage {
                         }
                     }
                 }
-                
-                iter1.nextPixel();
-                iter2.nextPixel();
-                x++;
             }
-            
-            iter1.nextLine();
-            iter2.nextLine();
-            y++;
         }
-        
+
         return segments;
     }
+
+    /**
+     * Reads one image line of the processed band and flags its NODATA samples.
+     */
+    private void readLine(Raster raster, int minX, int y, int width, double[] line, boolean[] lineNodata) {
+        raster.getSamples(minX, y, width, 1, band, line);
+        for (int i = 0; i < width; i++) {
+            lineNodata[i] = isNoData(line[i]);
+        }
+    }
     
 
     /**
@@ -27,28 +27,38 @@ package gov.nasa.gsfc.seadas.contour.operator;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.operation.linemerge.LineMerger;
 import org.jaitools.jts.Utils;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.List;
 
 
 /**
  * A container for the segments collected by ContourOpImage. 
  * It will return them as merged lines eventually applying simplification procedures 
+ * <p>
+ * Segments are chained into polylines as they are added: the open ends of all
+ * polylines are kept in a hash of quantized end points, so a new segment only
+ * has to look up its two end points to find the polylines it continues. The
+ * polylines are stored in primitive arrays and JTS geometries are only created
+ * once, when the merged segments are requested.
  * 
  * @author Andrea Aime - GeoSolutions
  * @since 1.1
  * @version $Id$
  */
 class Segments {
-    static final int MAX_SIZE = 16348; // this amounts to 130KB storage
+    /** End points closer than this (in pixels) are considered to be the same */
+    static final double QUANTUM = 1.0e-6;
+
+    private static final int START = 0;
+    private static final int END = 1;
+
     boolean simplify;
-    double[] ordinates;
-    int idx = 0;
-    List<LineString> result = new ArrayList<LineString>();
+    List<Polyline> polylines = new ArrayList<Polyline>();
+    EndPoints ends = new EndPoints();
+    List<LineString> result;
     
     public Segments(boolean simplify) {
         this.simplify = simplify;
@@ -62,22 +72,30 @@ class Segments {
      * @param y2
      */
     public void add(double x1, double y1, double x2, double y2) {
-        if(ordinates == null) {
-            ordinates = new double[512];
-        } else if((idx + 4) > ordinates.length) {
-            // reallocate
-            double[] temp = new double[ordinates.length * 2];
-            System.arraycopy(ordinates, 0, temp, 0, ordinates.length);
-            ordinates = temp;
-        }
-        ordinates[idx++] = x1;
-        ordinates[idx++] = y1;
-        ordinates[idx++] = x2;
-        ordinates[idx++] = y2;
-        
-        if(idx >= MAX_SIZE) {
-            merge();
+        if (x1 == x2 && y1 == y2) {
+            return;
         }
+        Polyline segment = new Polyline(4);
+        segment.addLast(x1, y1);
+        segment.addLast(x2, y2);
+        add(segment);
+    }
+
+    /**
+     * Adds all segments and lines collected by another container, typically
+     * the one of a neighbouring image strip. The other container must not be
+     * used afterwards.
+     * @param other
+     */
+    public void addAll(Segments other) {
+        for (Polyline polyline : other.polylines) {
+            if (polyline != null) {
+                add(polyline);
+            }
+        }
+        other.polylines.clear();
+        other.ends = new EndPoints();
+        other.result = null;
     }
     
     /**
@@ -85,47 +103,271 @@ class Segments {
      * @return
      */
     public List<LineString> getMergedSegments() {
-        if(idx > 0) {
-            merge();
-            // release the part of the storage we don't need anymore
-            ordinates = null;
+        if (result == null) {
+            result = new ArrayList<LineString>();
+            for (Polyline polyline : polylines) {
+                if (polyline != null) {
+                    LineString merged = Utils.getGeometryFactory().createLineString(polyline.toCoordinates());
+                    if (simplify) {
+                        merged = Utils.removeCollinearVertices(merged);
+                    }
+                    result.add(merged);
+                }
+            }
         }
         return result;
     }
 
+    private void add(Polyline polyline) {
+        result = null;
+        int id = polylines.size();
+        polylines.add(polyline);
+        if (polyline.closed) {
+            return;
+        }
+        int ref = link(id, START);
+        if (ref >= 0) {
+            link(ref >> 1, ref & 1);
+        }
+    }
+
+    /**
+     * Connects one end of a polyline to the polyline waiting at the same end point,
+     * or leaves it waiting there if there is none. When two polylines are joined,
+     * the shorter one is copied into the longer one.
+     *
+     * @return the polyline and side holding the opposite end of the linked polyline
+     *         afterwards, encoded as {@code 2 * id + side}, or -1 if the polyline was closed
+     */
+    private int link(int id, int side) {
+        Polyline polyline = polylines.get(id);
+        double x = polyline.getX(side);
+        double y = polyline.getY(side);
+        long kx = quantize(x);
+        long ky = quantize(y);
+        int waiting = ends.remove(kx, ky);
+        if (waiting < 0) {
+            ends.put(kx, ky, 2 * id + side);
+            return 2 * id + (1 - side);
+        }
+
+        int otherId = waiting >> 1;
+        int otherSide = waiting & 1;
+        if (otherId == id) {
+            // both ends meet, use the very same coordinates for the last point of the ring
+            polyline.setPoint(side, polyline.getX(otherSide), polyline.getY(otherSide));
+            polyline.closed = true;
+            return -1;
+        }
+
+        Polyline other = polylines.get(otherId);
+        if (polyline.size() >= other.size()) {
+            absorb(id, side, otherId, otherSide);
+            return 2 * id + (1 - side);
+        } else {
+            absorb(otherId, otherSide, id, side);
+            return 2 * otherId + otherSide;
+        }
+    }
+
     /**
-     * Merges and eventually simplifies all of the segments collected so far with the 
-     * linestring collected so far
+     * Copies the points of the polyline {@code fromId}, starting at its end {@code fromSide},
+     * onto the end {@code toSide} of the polyline {@code toId}.
      */
-    void merge() {
-        // merge all the segments
-        LineMerger merger = new LineMerger();
-        for (int i = 0; i < idx;) {
-            Coordinate p1 = new Coordinate(ordinates[i++], ordinates[i++]);
-            Coordinate p2 = new Coordinate(ordinates[i++], ordinates[i++]);
-            if(!p1.equals2D(p2)) {
-                merger.add(Utils.getGeometryFactory().createLineString(new Coordinate[] {p1, p2}));
+    private void absorb(int toId, int toSide, int fromId, int fromSide) {
+        Polyline to = polylines.get(toId);
+        Polyline from = polylines.get(fromId);
+        int n = from.size();
+        for (int i = 1; i < n; i++) {
+            int index = fromSide == START ? i : n - 1 - i;
+            if (toSide == START) {
+                to.addFirst(from.x(index), from.y(index));
+            } else {
+                to.addLast(from.x(index), from.y(index));
             }
         }
-        // reset the counter, we offloaded all segments
-        idx = 0;
-        // add to the mix all lines that have not been merged so far
-        // (we know linear rings are already complete so we skip them)
-        for (LineString ls : result) {
-            merger.add(ls);
-        }
-        // eventually simplify and add back the merged line strings
-        Collection<LineString> mergedLines = merger.getMergedLineStrings();
-        result.clear();
-        if(simplify) {
-            for (LineString merged : mergedLines) {
-                if(simplify) {
-                    merged = Utils.removeCollinearVertices(merged);
+        polylines.set(fromId, null);
+
+        // the far end of the absorbed polyline may be waiting for a continuation
+        int farSide = 1 - fromSide;
+        long kx = quantize(from.getX(farSide));
+        long ky = quantize(from.getY(farSide));
+        if (ends.get(kx, ky) == 2 * fromId + farSide) {
+            ends.put(kx, ky, 2 * toId + toSide);
+        }
+    }
+
+    private static long quantize(double value) {
+        return Math.round(value / QUANTUM);
+    }
+
+    /**
+     * A sequence of points that can grow at both ends.
+     */
+    static class Polyline {
+        double[] coords;
+        int head;
+        int tail;
+        boolean closed;
+
+        Polyline(int capacity) {
+            coords = new double[2 * capacity];
+            head = tail = capacity & ~1;
+        }
+
+        int size() {
+            return (tail - head) >> 1;
+        }
+
+        double x(int index) {
+            return coords[head + 2 * index];
+        }
+
+        double y(int index) {
+            return coords[head + 2 * index + 1];
+        }
+
+        double getX(int side) {
+            return side == START ? coords[head] : coords[tail - 2];
+        }
+
+        double getY(int side) {
+            return side == START ? coords[head + 1] : coords[tail - 1];
+        }
+
+        void setPoint(int side, double x, double y) {
+            int i = side == START ? head : tail - 2;
+            coords[i] = x;
+            coords[i + 1] = y;
+        }
+
+        void addFirst(double x, double y) {
+            if (head == 0) {
+                grow();
+            }
+            coords[--head] = y;
+            coords[--head] = x;
+        }
+
+        void addLast(double x, double y) {
+            if (tail == coords.length) {
+                grow();
+            }
+            coords[tail++] = x;
+            coords[tail++] = y;
+        }
+
+        // re-centers the points in an array twice the current size
+        private void grow() {
+            int length = tail - head;
+            double[] temp = new double[Math.max(8, 2 * length + 4)];
+            int newHead = ((temp.length - length) >> 1) & ~1;
+            System.arraycopy(coords, head, temp, newHead, length);
+            coords = temp;
+            head = newHead;
+            tail = newHead + length;
+        }
+
+        Coordinate[] toCoordinates() {
+            Coordinate[] coordinates = new Coordinate[size()];
+            for (int i = 0; i < coordinates.length; i++) {
+                coordinates[i] = new Coordinate(x(i), y(i));
+            }
+            return coordinates;
+        }
+    }
+
+    /**
+     * An open addressing hash from quantized end points to the polyline ends waiting there.
+     */
+    static class EndPoints {
+        long[] xs = new long[64];
+        long[] ys = new long[64];
+        int[] values = newValues(64);
+        int size;
+
+        int get(long x, long y) {
+            int mask = values.length - 1;
+            for (int i = hash(x, y) & mask; values[i] >= 0; i = (i + 1) & mask) {
+                if (xs[i] == x && ys[i] == y) {
+                    return values[i];
                 }
-                result.add(merged);
             }
-        } else {
-            result.addAll(mergedLines);
+            return -1;
+        }
+
+        void put(long x, long y, int value) {
+            if (2 * (size + 1) > values.length) {
+                rehash(2 * values.length);
+            }
+            int mask = values.length - 1;
+            int i = hash(x, y) & mask;
+            for (; values[i] >= 0; i = (i + 1) & mask) {
+                if (xs[i] == x && ys[i] == y) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            xs[i] = x;
+            ys[i] = y;
+            values[i] = value;
+            size++;
+        }
+
+        int remove(long x, long y) {
+            int mask = values.length - 1;
+            int i = hash(x, y) & mask;
+            for (; values[i] >= 0; i = (i + 1) & mask) {
+                if (xs[i] == x && ys[i] == y) {
+                    break;
+                }
+            }
+            int value = values[i];
+            if (value < 0) {
+                return -1;
+            }
+            // shift back the entries following in the probe sequence
+            int gap = i;
+            for (int j = (gap + 1) & mask; values[j] >= 0; j = (j + 1) & mask) {
+                int home = hash(xs[j], ys[j]) & mask;
+                if (((j - home) & mask) >= ((j - gap) & mask)) {
+                    xs[gap] = xs[j];
+                    ys[gap] = ys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+            }
+            values[gap] = -1;
+            size--;
+            return value;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldXs = xs;
+            long[] oldYs = ys;
+            int[] oldValues = values;
+            xs = new long[capacity];
+            ys = new long[capacity];
+            values = newValues(capacity);
+            size = 0;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] >= 0) {
+                    put(oldXs[i], oldYs[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int[] newValues(int capacity) {
+            int[] values = new int[capacity];
+            Arrays.fill(values, -1);
+            return values;
+        }
+
+        private static int hash(long x, long y) {
+            long h = x * 0x9E3779B97F4A7C15L + y;
+            h ^= h >>> 29;
+            h *= 0xBF58476D1CE4E5B9L;
+            return (int) (h ^ (h >>> 32));
         }
     }
 }
@@ -0,0 +1,173 @@
+package gov.nasa.gsfc.seadas.contour.operator;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.LineString;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SegmentsTest {
+
+    @Test
+    public void testChainsSegmentsAddedInAnyOrder() {
+        Segments segments = new Segments(false);
+        segments.add(0, 0, 1, 0);
+        segments.add(2, 0, 3, 0);
+        segments.add(1, 0, 2, 0);
+
+        List<LineString> lines = segments.getMergedSegments();
+        assertEquals(1, lines.size());
+        assertLine(lines.get(0), 0, 0, 1, 0, 2, 0, 3, 0);
+    }
+
+    @Test
+    public void testChainsSegmentsOfOppositeDirections() {
+        Segments segments = new Segments(false);
+        segments.add(1, 0, 0, 0);
+        segments.add(1, 0, 2, 1);
+        segments.add(3, 1, 2, 1);
+
+        List<LineString> lines = segments.getMergedSegments();
+        assertEquals(1, lines.size());
+        assertLine(lines.get(0), 0, 0, 1, 0, 2, 1, 3, 1);
+    }
+
+    @Test
+    public void testClosesRings() {
+        Segments segments = new Segments(false);
+        segments.add(0, 0, 1, 0);
+        segments.add(1, 1, 0, 1);
+        segments.add(1, 0, 1, 1);
+        segments.add(0, 1, 0, 0);
+
+        List<LineString> lines = segments.getMergedSegments();
+        assertEquals(1, lines.size());
+        Coordinate[] coordinates = lines.get(0).getCoordinates();
+        assertEquals(5, coordinates.length);
+        assertEquals(coordinates[0], coordinates[4]);
+    }
+
+    @Test
+    public void testKeepsSeparateLinesApart() {
+        Segments segments = new Segments(false);
+        segments.add(0, 0, 1, 0);
+        segments.add(0, 5, 1, 5);
+        segments.add(1, 0, 2, 0);
+        segments.add(1, 5, 2, 5);
+
+        List<LineString> lines = segments.getMergedSegments();
+        assertEquals(2, lines.size());
+        for (LineString line : lines) {
+            double y = line.getCoordinates()[0].y;
+            assertLine(line, 0, y, 1, y, 2, y);
+        }
+    }
+
+    @Test
+    public void testJoinsEndPointsWithinQuantum() {
+        Segments segments = new Segments(false);
+        segments.add(0, 0, 1, 0);
+        segments.add(1 + Segments.QUANTUM / 10, 0, 2, 0);
+
+        assertEquals(1, segments.getMergedSegments().size());
+        assertEquals(3, segments.getMergedSegments().get(0).getCoordinates().length);
+    }
+
+    @Test
+    public void testIgnoresDegenerateSegments() {
+        Segments segments = new Segments(false);
+        segments.add(1, 1, 1, 1);
+
+        assertTrue(segments.getMergedSegments().isEmpty());
+    }
+
+    @Test
+    public void testMergesLinesOfNeighbouringStrips() {
+        Segments upperStrip = new Segments(false);
+        upperStrip.add(0, 0, 1, 1);
+        upperStrip.add(1, 1, 2, 2);
+        Segments lowerStrip = new Segments(false);
+        lowerStrip.add(3, 3, 4, 4);
+        lowerStrip.add(2, 2, 3, 3);
+        lowerStrip.add(10, 10, 11, 11);
+
+        upperStrip.addAll(lowerStrip);
+
+        List<LineString> lines = upperStrip.getMergedSegments();
+        assertEquals(2, lines.size());
+        LineString longLine = lines.get(0).getCoordinates().length == 5 ? lines.get(0) : lines.get(1);
+        assertLine(longLine, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4);
+        assertTrue(lowerStrip.getMergedSegments().isEmpty());
+    }
+
+    @Test
+    public void testChainsManyShuffledSegments() {
+        int segmentCount = 10000;
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < segmentCount; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+        Segments segments = new Segments(false);
+        for (int i : order) {
+            // alternate the direction of the segments
+            if (i % 2 == 0) {
+                segments.add(i, 0.5 * i, i + 1, 0.5 * (i + 1));
+            } else {
+                segments.add(i + 1, 0.5 * (i + 1), i, 0.5 * i);
+            }
+        }
+
+        List<LineString> lines = segments.getMergedSegments();
+        assertEquals(1, lines.size());
+        Coordinate[] coordinates = lines.get(0).getCoordinates();
+        assertEquals(segmentCount + 1, coordinates.length);
+        boolean reversed = coordinates[0].x != 0;
+        for (int i = 0; i <= segmentCount; i++) {
+            Coordinate coordinate = coordinates[reversed ? segmentCount - i : i];
+            assertEquals(i, coordinate.x, 0);
+            assertEquals(0.5 * i, coordinate.y, 0);
+        }
+    }
+
+    @Test
+    public void testChainsManyRings() {
+        Segments segments = new Segments(false);
+        int ringCount = 1000;
+        for (int i = 0; i < ringCount; i++) {
+            double x = 3 * i;
+            segments.add(x, 0, x + 1, 0);
+            segments.add(x + 1, 1, x, 1);
+            segments.add(x, 1, x, 0);
+            segments.add(x + 1, 0, x + 1, 1);
+        }
+
+        List<LineString> lines = segments.getMergedSegments();
+        assertEquals(ringCount, lines.size());
+        for (LineString line : lines) {
+            Coordinate[] coordinates = line.getCoordinates();
+            assertEquals(5, coordinates.length);
+            assertEquals(coordinates[0], coordinates[4]);
+        }
+    }
+
+    /**
+     * Asserts the points of a line, in either direction.
+     */
+    private static void assertLine(LineString line, double... expectedXYs) {
+        Coordinate[] coordinates = line.getCoordinates();
+        int pointCount = expectedXYs.length / 2;
+        assertEquals(pointCount, coordinates.length);
+        boolean reversed = coordinates[0].x != expectedXYs[0] || coordinates[0].y != expectedXYs[1];
+        for (int i = 0; i < pointCount; i++) {
+            Coordinate coordinate = coordinates[reversed ? pointCount - 1 - i : i];
+            assertEquals(expectedXYs[2 * i], coordinate.x, 0);
+            assertEquals(expectedXYs[2 * i + 1], coordinate.y, 0);
+        }
+    }
+}
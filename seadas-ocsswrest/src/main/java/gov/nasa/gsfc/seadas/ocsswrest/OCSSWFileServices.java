@@ -3,6 +3,7 @@ package gov.nasa.gsfc.seadas.ocsswrest;
 import gov.nasa.gsfc.seadas.ocsswrest.database.SQLiteJDBC;
 import gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel.OCSSWRemoteImpl;
 import gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel.OCSSWServerModel;
+import gov.nasa.gsfc.seadas.ocsswrest.utilities.InputFileCache;
 import gov.nasa.gsfc.seadas.ocsswrest.utilities.OCSSWServerPropertyValues;
 import gov.nasa.gsfc.seadas.ocsswrest.utilities.ServerSideFileUtilities;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
@@ -10,11 +11,13 @@ import org.glassfish.jersey.media.multipart.FormDataParam;
 
 import javax.json.Json;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.ws.rs.*;
 import javax.ws.rs.Path;
 import javax.ws.rs.core.*;
 import java.io.*;
 import java.nio.file.*;
+import java.util.Date;
 
 import static gov.nasa.gsfc.seadas.ocsswrest.OCSSWRestServer.OCSSW_ROOT_PROPERTY;
 import static gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel.OCSSWRemoteImpl.MLP_OUTPUT_DIR_NAME;
@@ -40,6 +43,22 @@ public class OCSSWFileServices {
     private static final String OCSSW_OUTPUT_COMPRESSED_FILE_NAME = "ocssw_output.zip";
     private static final int BUFFER_SIZE = 1024;
 
+    public static final long UPLOAD_COMPLETE = -1;
+
+    /**
+     * The optional byte range of a download request, used by clients to resume downloads
+     * and to fetch large files in several parts at once.
+     */
+    @HeaderParam("Range")
+    private String range;
+
+    /**
+     * The entity tag of the file the client has part of. The byte range is only served if the file
+     * still has this tag; otherwise the whole file is sent.
+     */
+    @HeaderParam("If-Range")
+    private String ifRange;
+
     @GET
     @Path("/serverSharedFileDir")
     @Produces(MediaType.TEXT_PLAIN)
@@ -135,28 +154,104 @@ public class OCSSWFileServices {
         return Response.status(respStatus).build();
     }
 
+    /**
+     * Reports the upload state of a set of files, so clients upload only the files and the parts of files the
+     * server does not have yet.
+     *
+     * @param jobId      the job the files are uploaded for
+     * @param fileHashes the content hashes of the files, keyed by file name
+     * @return for each file, UPLOAD_COMPLETE if a file with the same content is already in the working directory
+     * or in the input file cache, or else the number of bytes received by an interrupted upload to resume from
+     */
+    @POST
+    @Path("/uploadStatus/{jobId}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject getUploadStatus(@PathParam("jobId") String jobId, JsonObject fileHashes) {
+        String workingFileDir = SQLiteJDBC.retrieveItem(SQLiteJDBC.FILE_TABLE_NAME, jobId, SQLiteJDBC.FileTableFields.WORKING_DIR_PATH.getFieldName());
+        JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
+        for (String fileName : fileHashes.keySet()) {
+            File file = new File(workingFileDir, new File(fileName).getName());
+            String hash = fileHashes.getString(fileName);
+            if (file.isFile() && hash.equals(ServerSideFileUtilities.getFileHash(file))) {
+                jsonObjectBuilder.add(fileName, UPLOAD_COMPLETE);
+            } else if (InputFileCache.link(hash, file)) {
+                SQLiteJDBC.updateInputFilesList(jobId, file.getPath());
+                jsonObjectBuilder.add(fileName, UPLOAD_COMPLETE);
+            } else {
+                jsonObjectBuilder.add(fileName, new File(file.getPath() + ServerSideFileUtilities.PART_FILE_EXTENSION).length());
+            }
+        }
+        return jsonObjectBuilder.build();
+    }
+
+    /**
+     * Receives a chunk of a file. Chunks are written to a part file, which is moved into the working directory
+     * by {@link #completeUpload}.
+     *
+     * @param offset the position of the chunk in the file; it must not be beyond the bytes received so far
+     * @return the number of bytes received so far, with the status CONFLICT if the offset is beyond them
+     */
+    @PUT
+    @Path("/uploadFileChunk/{jobId}/{fileName}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.TEXT_PLAIN)
+    public Response uploadFileChunk(@PathParam("jobId") String jobId,
+                                    @PathParam("fileName") String fileName,
+                                    @QueryParam("offset") long offset,
+                                    InputStream chunkInputStream) {
+        String workingFileDir = SQLiteJDBC.retrieveItem(SQLiteJDBC.FILE_TABLE_NAME, jobId, SQLiteJDBC.FileTableFields.WORKING_DIR_PATH.getFieldName());
+        File partFile = new File(workingFileDir, new File(fileName).getName() + ServerSideFileUtilities.PART_FILE_EXTENSION);
+        try {
+            Files.createDirectories(partFile.getParentFile().toPath());
+            if (offset < 0 || offset > partFile.length()) {
+                return Response.status(Response.Status.CONFLICT).entity(String.valueOf(partFile.length())).build();
+            }
+            long received = ServerSideFileUtilities.writeToFile(chunkInputStream, partFile, offset);
+            return Response.ok(String.valueOf(received)).build();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Completes the upload of a file whose chunks have all been received. The content is checked against the
+     * hash computed by the client; a file that does not match is dropped and must be uploaded again.
+     */
+    @POST
+    @Path("/completeUpload/{jobId}/{fileName}")
+    public Response completeUpload(@PathParam("jobId") String jobId,
+                                   @PathParam("fileName") String fileName,
+                                   @QueryParam("hash") String hash) {
+        String workingFileDir = SQLiteJDBC.retrieveItem(SQLiteJDBC.FILE_TABLE_NAME, jobId, SQLiteJDBC.FileTableFields.WORKING_DIR_PATH.getFieldName());
+        File file = new File(workingFileDir, new File(fileName).getName());
+        File partFile = new File(file.getPath() + ServerSideFileUtilities.PART_FILE_EXTENSION);
+        if (!partFile.isFile()) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        if (hash == null || !hash.equals(ServerSideFileUtilities.getFileHash(partFile))) {
+            System.out.println(fileName + " does not match its hash, upload is discarded");
+            partFile.delete();
+            return Response.status(Response.Status.CONFLICT).build();
+        }
+        try {
+            Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            InputFileCache.store(file, hash);
+            SQLiteJDBC.updateInputFilesList(jobId, file.getPath());
+            return Response.ok().build();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GET
     @Path("/downloadFile/{jobId}")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
     public Response downloadFile(@PathParam("jobId") String jobId) {
         String ofileName = SQLiteJDBC.retrieveItem(SQLiteJDBC.FILE_TABLE_NAME, jobId, SQLiteJDBC.FileTableFields.O_FILE_NAME.getFieldName());
-        StreamingOutput fileStream = new StreamingOutput() {
-            @Override
-            public void write(OutputStream outputStream) throws WebApplicationException {
-                try {
-                    java.nio.file.Path path = Paths.get(ofileName);
-                    byte[] data = Files.readAllBytes(path);
-                    outputStream.write(data);
-                    outputStream.flush();
-                } catch (Exception e) {
-                    throw new WebApplicationException("File Not Found !!");
-                }
-            }
-        };
-        return Response
-                .ok(fileStream, MediaType.APPLICATION_OCTET_STREAM)
-                .header("content-disposition", "attachment; fileName = " + ofileName)
-                .build();
+        return createFileDownloadResponse(ofileName);
     }
 
     @GET
@@ -166,24 +261,8 @@ public class OCSSWFileServices {
 
         String serverWorkingDir = SQLiteJDBC.retrieveItem(SQLiteJDBC.FILE_TABLE_NAME, jobId, SQLiteJDBC.FileTableFields.WORKING_DIR_PATH.getFieldName());
         String fileToDownload = serverWorkingDir + File.separator + OCSSWRemoteImpl.ANC_FILE_LIST_FILE_NAME;
-        StreamingOutput fileStream = new StreamingOutput() {
-            @Override
-            public void write(OutputStream outputStream) throws WebApplicationException {
-                try {
-                    System.out.println("anc file name = " + fileToDownload);
-                    java.nio.file.Path path = Paths.get(fileToDownload);
-                    byte[] data = Files.readAllBytes(path);
-                    outputStream.write(data);
-                    outputStream.flush();
-                } catch (Exception e) {
-                    throw new WebApplicationException("File Not Found !!");
-                }
-            }
-        };
-        return Response
-                .ok(fileStream, MediaType.APPLICATION_OCTET_STREAM)
-                .header("content-disposition", "attachment; fileName = " + fileToDownload)
-                .build();
+        System.out.println("anc file name = " + fileToDownload);
+        return createFileDownloadResponse(fileToDownload);
     }
 
 
@@ -204,24 +283,7 @@ public class OCSSWFileServices {
         if (programName.equals(MLP_PROGRAM_NAME)) {
             processStdoutFileName = ServerSideFileUtilities.getLogFileName(workingDir);
         }
-        String finalProcessStdoutFileName = processStdoutFileName;
-        StreamingOutput fileStream = new StreamingOutput() {
-            @Override
-            public void write(OutputStream outputStream) throws WebApplicationException {
-                try {
-                    java.nio.file.Path path = Paths.get(finalProcessStdoutFileName);
-                    byte[] data = Files.readAllBytes(path);
-                    outputStream.write(data);
-                    outputStream.flush();
-                } catch (Exception e) {
-                    throw new WebApplicationException("File Not Found !!");
-                }
-            }
-        };
-        return Response
-                .ok(fileStream, MediaType.APPLICATION_OCTET_STREAM)
-                .header("content-disposition", "attachment; fileName = " + finalProcessStdoutFileName)
-                .build();
+        return createFileDownloadResponse(processStdoutFileName);
     }
 
     @GET
@@ -234,25 +296,8 @@ public class OCSSWFileServices {
         String ofileName = mlpOutputDir + File.separator + clientOfileName;
         File file = new File(ofileName);
         if (file.exists()) {
-            StreamingOutput fileStream = new StreamingOutput() {
-                @Override
-                public void write(OutputStream outputStream) throws WebApplicationException {
-                    try {
-                        java.nio.file.Path path = Paths.get(ofileName);
-                        byte[] data = Files.readAllBytes(path);
-                        outputStream.write(data);
-                        outputStream.flush();
-                    } catch (Exception e) {
-                        throw new WebApplicationException("File Not Found !!");
-                    }
-                }
-            };
             System.out.println(file.getAbsolutePath());
-
-            return Response
-                    .ok(fileStream, MediaType.APPLICATION_OCTET_STREAM)
-                    .header("content-disposition", "attachment; fileName = " + ofileName)
-                    .build();
+            return createFileDownloadResponse(ofileName);
         } else {
             System.out.println(ofileName + " does not exist");
             return null;
@@ -267,22 +312,59 @@ public class OCSSWFileServices {
                                          @PathParam("ofileName") String clientOfileName) {
         String workingFileDir = SQLiteJDBC.retrieveItem(SQLiteJDBC.FILE_TABLE_NAME, jobId, SQLiteJDBC.FileTableFields.WORKING_DIR_PATH.getFieldName());
         String ofileName = workingFileDir + File.separator + clientOfileName;
+        return createFileDownloadResponse(ofileName);
+    }
+
+    /**
+     * Creates the response streaming a file, or the byte range of it requested in the Range header.
+     * The file is sent straight from disk, so the size of the files is not limited by the server memory.
+     *
+     * @param fileName the full path of the file on the server
+     * @return the response
+     */
+    private Response createFileDownloadResponse(String fileName) {
+        final File file = fileName != null ? new File(fileName) : null;
+        if (file == null || !file.isFile()) {
+            System.out.println(fileName + " does not exist");
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        final long fileLength = file.length();
+        EntityTag entityTag = ServerSideFileUtilities.getEntityTag(file);
+        long[] byteRange = ServerSideFileUtilities.parseByteRange(range, fileLength);
+        if (ifRange != null && !ifRange.equals(entityTag.toString())) {
+            // the client's part is of another version of the file
+            byteRange = null;
+        }
+        if (byteRange != null && byteRange[0] >= fileLength) {
+            return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + fileLength)
+                    .tag(entityTag)
+                    .build();
+        }
+        final long first = byteRange != null ? byteRange[0] : 0;
+        final long count = byteRange != null ? byteRange[1] - byteRange[0] + 1 : fileLength;
         StreamingOutput fileStream = new StreamingOutput() {
             @Override
             public void write(OutputStream outputStream) throws WebApplicationException {
                 try {
-                    java.nio.file.Path path = Paths.get(ofileName);
-                    byte[] data = Files.readAllBytes(path);
-                    outputStream.write(data);
-                    outputStream.flush();
-                } catch (Exception e) {
+                    ServerSideFileUtilities.transferFile(file, first, count, outputStream);
+                } catch (IOException e) {
                     throw new WebApplicationException("File Not Found !!");
                 }
             }
         };
-        return Response
-                .ok(fileStream, MediaType.APPLICATION_OCTET_STREAM)
-                .header("content-disposition", "attachment; fileName = " + ofileName)
+        Response.ResponseBuilder responseBuilder = byteRange != null ? Response.status(Response.Status.PARTIAL_CONTENT) : Response.ok();
+        if (byteRange != null) {
+            responseBuilder.header("Content-Range", "bytes " + byteRange[0] + "-" + byteRange[1] + "/" + fileLength);
+        }
+        return responseBuilder
+                .entity(fileStream)
+                .type(MediaType.APPLICATION_OCTET_STREAM)
+                .header("content-disposition", "attachment; fileName = " + fileName)
+                .header("Accept-Ranges", "bytes")
+                .header(HttpHeaders.CONTENT_LENGTH, count)
+                .tag(entityTag)
+                .lastModified(new Date(file.lastModified()))
                 .build();
     }
 
@@ -3,6 +3,7 @@ package gov.nasa.gsfc.seadas.ocsswrest;
 import gov.nasa.gsfc.seadas.ocsswrest.database.SQLiteJDBC;
 import gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel.OCSSWConfig;
 import gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel.OCSSWServerModel;
+import gov.nasa.gsfc.seadas.ocsswrest.utilities.InputFileCache;
 import gov.nasa.gsfc.seadas.ocsswrest.utilities.ProcessMessageBodyWriter;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
@@ -81,6 +82,7 @@ public class OCSSWRestServer extends ResourceConfig {
         baseUriPortNumber = System.getProperty(BASE_URI_PORT_NUMBER_PROPERTY);
         BASE_URI = "http://"+ SERVER_API + ":" + baseUriPortNumber + "/" + OCSSW_REST_SERVICES_CONTEXT_PATH + "/";
         SQLiteJDBC.createTables();
+        InputFileCache.initialize();
         OCSSWServerModel.initiliaze();
         System.out.println(String.format("ORS is starting at ", BASE_URI));
         final HttpServer server = startServer();
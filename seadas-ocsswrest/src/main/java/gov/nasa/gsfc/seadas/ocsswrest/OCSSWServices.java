@@ -3,16 +3,26 @@ package gov.nasa.gsfc.seadas.ocsswrest;
 import gov.nasa.gsfc.seadas.ocsswrest.database.SQLiteJDBC;
 import gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel.OCSSWRemoteImpl;
 import gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel.OCSSWServerModel;
+import gov.nasa.gsfc.seadas.ocsswrest.process.JobScheduler;
+import gov.nasa.gsfc.seadas.ocsswrest.process.ProcessLog;
+import gov.nasa.gsfc.seadas.ocsswrest.process.ProcessStatusMonitor;
 import gov.nasa.gsfc.seadas.ocsswrest.utilities.*;
 
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import org.glassfish.jersey.server.ChunkedOutput;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 import static gov.nasa.gsfc.seadas.ocsswrest.OCSSWRestServer.SERVER_WORKING_DIRECTORY_PROPERTY;
 import static gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel.OCSSWRemoteImpl.*;
@@ -38,6 +48,7 @@ public class OCSSWServices {
     private static String FILE_TABLE_NAME = "FILE_TABLE";
     private static String MISSION_TABLE_NAME = "MISSION_TABLE";
     final static String CLIENT_SERVER_SHARED_DIR_PROPERTY = "clientServerSharedDir";
+    static final int MAX_PROCESS_STATUS_WAIT_SECONDS = 60;
 
     private HashMap<String, Boolean> missionDataStatus;
 
@@ -387,6 +398,114 @@ public class OCSSWServices {
         return processStatus;
     }
 
+    /**
+     * Returns the process status of a job as soon as it differs from the status known to the client, or the
+     * unchanged status when the timeout has passed, so clients learn of a status change at once without polling.
+     * The request is suspended while waiting and holds no server thread.
+     *
+     * @param jobId          the job
+     * @param knownStatus    the status known to the client
+     * @param timeoutSeconds the longest time to wait, at most {@link #MAX_PROCESS_STATUS_WAIT_SECONDS}
+     */
+    @GET
+    @Path("waitForProcessStatus/{jobId}")
+    @Produces(MediaType.TEXT_PLAIN)
+    public void waitForProcessStatus(@PathParam("jobId") final String jobId,
+                                     @QueryParam("status") String knownStatus,
+                                     @QueryParam("timeout") @DefaultValue("30") int timeoutSeconds,
+                                     @Suspended final AsyncResponse asyncResponse) {
+        // the waiter is registered last, as a status change may resume the response at once
+        final ProcessStatusMonitor.Waiter[] waiter = new ProcessStatusMonitor.Waiter[1];
+        asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+            @Override
+            public void handleTimeout(AsyncResponse asyncResponse) {
+                asyncResponse.resume(ProcessStatusMonitor.getStatus(jobId));
+            }
+        });
+        asyncResponse.register(new CompletionCallback() {
+            @Override
+            public void onComplete(Throwable throwable) {
+                // also called on timeouts and when the client has gone away
+                ProcessStatusMonitor.removeWaiter(waiter[0]);
+            }
+        });
+        asyncResponse.setTimeout(Math.max(1, Math.min(timeoutSeconds, MAX_PROCESS_STATUS_WAIT_SECONDS)), TimeUnit.SECONDS);
+        waiter[0] = ProcessStatusMonitor.waitForStatusChange(jobId, knownStatus, new ProcessStatusMonitor.Listener() {
+            @Override
+            public void statusChanged(String status) {
+                asyncResponse.resume(status);
+            }
+        });
+        if (waiter[0] != null && !asyncResponse.isSuspended()) {
+            // the response timed out while the waiter was registered
+            ProcessStatusMonitor.removeWaiter(waiter[0]);
+        }
+    }
+
+    /**
+     * Cancels a job waiting for or running its OCSSW program. The process status of a cancelled job is FAILED.
+     */
+    @DELETE
+    @Path("cancelJob/{jobId}")
+    public Response cancelJob(@PathParam("jobId") String jobId) {
+        boolean cancelled = JobScheduler.getInstance().cancel(jobId);
+        return Response.status(cancelled ? Response.Status.OK : Response.Status.NOT_FOUND).build();
+    }
+
+    /**
+     * Streams the lines a job's process writes to stdout or stderr, as they are written. The response ends when the
+     * process has ended, so clients can read the final process status then. Clients connecting before the process
+     * has started wait for it; clients reconnecting pass the number of lines already read. The lines are written
+     * by the writer threads of the log, so no request thread is held while the process runs. The response of a
+     * client falling too far behind ends early, and the client reconnects while the process status is STARTED.
+     *
+     * @param jobId      the job
+     * @param streamType "stdout" or "stderr"
+     * @param firstLine  the number of the first line to send
+     * @throws NotFoundException if the job has never been scheduled or its log has been dropped
+     */
+    @GET
+    @Path("processLog/{jobId}/{streamType}")
+    @Produces(MediaType.TEXT_PLAIN + ";charset=UTF-8")
+    public ChunkedOutput<String> getProcessLog(@PathParam("jobId") String jobId,
+                                               @PathParam("streamType") String streamType,
+                                               @QueryParam("from") @DefaultValue("0") long firstLine) {
+        ProcessLog processLog = null;
+        if (ProcessLog.STDOUT.equals(streamType) || ProcessLog.STDERR.equals(streamType)) {
+            processLog = ProcessLog.getLog(jobId, streamType);
+        }
+        if (processLog == null) {
+            throw new NotFoundException("no " + streamType + " log of job " + jobId);
+        }
+        final ChunkedOutput<String> logStream = new ChunkedOutput<>(String.class);
+        // lines written before the response is sent are queued by the chunked output
+        processLog.addListener(Math.max(0, firstLine), new ProcessLog.Listener() {
+            @Override
+            public void lineAppended(String line) throws IOException {
+                logStream.write(line + "\n");
+            }
+
+            @Override
+            public void logClosed() throws IOException {
+                logStream.close();
+            }
+
+            @Override
+            public void logDisconnected() throws IOException {
+                // the client reconnects from the next line while the process is running
+                logStream.close();
+            }
+        });
+        return logStream;
+    }
+
+    @GET
+    @Path("jobSchedulerMetrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public JsonObject getJobSchedulerMetrics() {
+        return JobScheduler.getInstance().getMetrics();
+    }
+
     @GET
     @Path("missions")
     @Produces(MediaType.APPLICATION_JSON)
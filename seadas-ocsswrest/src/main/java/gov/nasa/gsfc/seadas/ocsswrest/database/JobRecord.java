@@ -0,0 +1,139 @@
+package gov.nasa.gsfc.seadas.ocsswrest.database;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The rows of a job in the PROCESS_TABLE, FILE_TABLE and LONLAT_2_PIXEL_TABLE, kept in memory by the
+ * {@link JobRegistry}. The columns read for every request of a job are held in fields; the other columns, e.g. the
+ * pixel bounds named by the output of lonlat2pixline, are held by name. Column names are case-insensitive, as in
+ * SQLite. Like an UPDATE of the database, setting a value in a table the job has no row in does nothing.
+ * <p/>
+ * A record dropped from the registry is no longer changed, so its changes cannot miss the record read back from the
+ * database in its place.
+ */
+public class JobRecord {
+
+    private static final String STATUS_COLUMN = "STATUS";
+    private static final String CLIENT_ID_COLUMN = "CLIENT_ID_NAME";
+    private static final String WORKING_DIR_PATH_COLUMN = "WORKING_DIR_PATH";
+    private static final String PROGRAM_NAME_COLUMN = "PROGRAM_NAME";
+    private static final String OFILE_NAME_COLUMN = "O_FILE_NAME";
+
+    private final String jobId;
+    private final Set<String> tableNames;
+    private final Map<String, String> otherValues;
+    private String status;
+    private String clientId;
+    private String workingDirPath;
+    private String programName;
+    private String ofileName;
+    private boolean dropped;
+
+    JobRecord(String jobId) {
+        this.jobId = jobId;
+        this.tableNames = new HashSet<>();
+        this.otherValues = new HashMap<>();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * @return the process status, null if it has not been set
+     */
+    public synchronized String getStatus() {
+        return status;
+    }
+
+    public synchronized String getClientId() {
+        return clientId;
+    }
+
+    public synchronized String getWorkingDirPath() {
+        return workingDirPath;
+    }
+
+    public synchronized String getProgramName() {
+        return programName;
+    }
+
+    public synchronized String getOfileName() {
+        return ofileName;
+    }
+
+    /**
+     * @return the value of a column, null if it has not been set or the job has no row in the table
+     */
+    public synchronized String get(String tableName, String columnName) {
+        if (!tableNames.contains(tableName)) {
+            return null;
+        }
+        String column = columnName.toUpperCase(Locale.ROOT);
+        if (SQLiteJDBC.PROCESS_TABLE_NAME.equals(tableName) && STATUS_COLUMN.equals(column)) {
+            return status;
+        }
+        if (SQLiteJDBC.FILE_TABLE_NAME.equals(tableName)) {
+            switch (column) {
+                case CLIENT_ID_COLUMN:
+                    return clientId;
+                case WORKING_DIR_PATH_COLUMN:
+                    return workingDirPath;
+                case PROGRAM_NAME_COLUMN:
+                    return programName;
+                case OFILE_NAME_COLUMN:
+                    return ofileName;
+            }
+        }
+        return otherValues.get(tableName + "." + column);
+    }
+
+    synchronized boolean hasRow(String tableName) {
+        return tableNames.contains(tableName);
+    }
+
+    synchronized void addRow(String tableName) {
+        tableNames.add(tableName);
+    }
+
+    synchronized boolean set(String tableName, String columnName, String value) {
+        if (!tableNames.contains(tableName)) {
+            return false;
+        }
+        String column = columnName.toUpperCase(Locale.ROOT);
+        if (SQLiteJDBC.PROCESS_TABLE_NAME.equals(tableName) && STATUS_COLUMN.equals(column)) {
+            status = value;
+            return true;
+        }
+        if (SQLiteJDBC.FILE_TABLE_NAME.equals(tableName)) {
+            switch (column) {
+                case CLIENT_ID_COLUMN:
+                    clientId = value;
+                    return true;
+                case WORKING_DIR_PATH_COLUMN:
+                    workingDirPath = value;
+                    return true;
+                case PROGRAM_NAME_COLUMN:
+                    programName = value;
+                    return true;
+                case OFILE_NAME_COLUMN:
+                    ofileName = value;
+                    return true;
+            }
+        }
+        otherValues.put(tableName + "." + column, value);
+        return true;
+    }
+
+    synchronized boolean isDropped() {
+        return dropped;
+    }
+
+    synchronized void drop() {
+        dropped = true;
+    }
+}
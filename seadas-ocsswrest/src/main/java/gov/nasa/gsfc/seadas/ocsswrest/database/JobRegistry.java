@@ -0,0 +1,176 @@
+package gov.nasa.gsfc.seadas.ocsswrest.database;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The state of the jobs, kept in memory.
+ * <p/>
+ * The rows of the jobs in the PROCESS_TABLE, FILE_TABLE and LONLAT_2_PIXEL_TABLE are held as {@link JobRecord}s, so
+ * reading a job's status, files or pixels costs no database access. {@link SQLiteJDBC} changes the records first
+ * and writes the changes behind to the job database, which stays complete for the tools reading it. The records of
+ * the last {@link #MAX_JOB_COUNT_PROPERTY} jobs are kept; the records of older jobs are read back from the database
+ * when they are used again. The job database is created anew when the server starts, so a job which has not been
+ * dropped from memory in this run has no rows, and asking for it costs no database access.
+ * <p/>
+ * A record is changed and its change queued for the database under the lock of the record, and a record is marked
+ * dropped under the same lock, so a change either reaches the database before the record is read back or is made
+ * again on the record read back.
+ */
+public class JobRegistry {
+
+    public static final String MAX_JOB_COUNT_PROPERTY = "jobRegistrySize";
+
+    private static final int DEFAULT_MAX_JOB_COUNT = 10000;
+    private static final String[] JOB_TABLE_NAMES = {
+            SQLiteJDBC.PROCESS_TABLE_NAME,
+            SQLiteJDBC.FILE_TABLE_NAME,
+            SQLiteJDBC.LONLAT_TABLE_NAME
+    };
+
+    private static final ConcurrentHashMap<String, JobRecord> jobs = new ConcurrentHashMap<>();
+    // the jobs in the order they were registered, for dropping the oldest
+    private static final ConcurrentLinkedQueue<String> jobIds = new ConcurrentLinkedQueue<>();
+    // the jobs dropped from memory, the only ones to read back from the database
+    private static final Set<String> droppedJobIds = ConcurrentHashMap.newKeySet();
+    // reading a dropped job back is done by one thread at a time, so no outdated copy of it is registered
+    private static final Object loadLock = new Object();
+
+    private JobRegistry() {
+    }
+
+    /**
+     * @return true if the rows of the table are kept in the job records
+     */
+    public static boolean isJobTable(String tableName) {
+        for (String jobTableName : JOB_TABLE_NAMES) {
+            if (jobTableName.equals(tableName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the record of a job, reading it from the job database if it is not in memory.
+     *
+     * @return the record, or null if the job has no row in any of the job tables
+     */
+    public static JobRecord getJob(String jobId) {
+        if (jobId == null) {
+            return null;
+        }
+        JobRecord job = jobs.get(jobId);
+        if (job == null && droppedJobIds.contains(jobId)) {
+            synchronized (loadLock) {
+                job = jobs.get(jobId);
+                if (job == null) {
+                    job = load(jobId);
+                    if (job != null) {
+                        job = register(job);
+                    }
+                }
+            }
+        }
+        return job;
+    }
+
+    /**
+     * Adds the row of a new job to a job table and writes it behind to the database.
+     */
+    static void addRow(String tableName, String jobId) {
+        String insertString = "INSERT INTO " + tableName + " (" + SQLiteJDBC.JOB_ID_FIELD_NAME + ") VALUES ( ? );";
+        while (true) {
+            JobRecord job = getJob(jobId);
+            if (job == null) {
+                job = register(new JobRecord(jobId));
+            }
+            synchronized (job) {
+                if (!job.isDropped()) {
+                    job.addRow(tableName);
+                    SQLiteConnectionPool.updateLater(insertString, jobId);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets a column of a job and writes it behind to the database. Nothing is set if the job has no row in the
+     * table.
+     */
+    static void set(String tableName, String jobId, String columnName, String value) {
+        String updateString = "UPDATE " + tableName + " SET " + columnName + " = ?  WHERE JOB_ID = ?";
+        while (true) {
+            JobRecord job = getJob(jobId);
+            if (job == null) {
+                return;
+            }
+            synchronized (job) {
+                if (!job.isDropped()) {
+                    if (job.set(tableName, columnName, value)) {
+                        SQLiteConnectionPool.updateLater(updateString, value, jobId);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private static JobRecord register(JobRecord job) {
+        JobRecord registeredJob = jobs.putIfAbsent(job.getJobId(), job);
+        if (registeredJob != null) {
+            return registeredJob;
+        }
+        jobIds.add(job.getJobId());
+        int maxJobCount = Integer.getInteger(MAX_JOB_COUNT_PROPERTY, DEFAULT_MAX_JOB_COUNT);
+        while (jobs.size() > maxJobCount) {
+            String oldestJobId = jobIds.poll();
+            if (oldestJobId == null) {
+                break;
+            }
+            JobRecord oldestJob = jobs.get(oldestJobId);
+            if (oldestJob != null) {
+                synchronized (oldestJob) {
+                    oldestJob.drop();
+                    droppedJobIds.add(oldestJobId);
+                    jobs.remove(oldestJobId, oldestJob);
+                }
+            }
+        }
+        return job;
+    }
+
+    private static JobRecord load(String jobId) {
+        final JobRecord job = new JobRecord(jobId);
+        boolean found = false;
+        try {
+            // the changes queued before the record was dropped
+            SQLiteConnectionPool.flush();
+            for (final String tableName : JOB_TABLE_NAMES) {
+                found |= SQLiteConnectionPool.query("SELECT * FROM " + tableName + " WHERE JOB_ID = ?", new SQLiteConnectionPool.ResultSetReader<Boolean>() {
+                    @Override
+                    public Boolean read(ResultSet rs) throws SQLException {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        job.addRow(tableName);
+                        ResultSetMetaData metaData = rs.getMetaData();
+                        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                            job.set(tableName, metaData.getColumnName(i), rs.getString(i));
+                        }
+                        return true;
+                    }
+                }, jobId);
+            }
+        } catch (Exception e) {
+            System.err.println(" in loading job " + jobId + " : " + e.getClass().getName() + ": " + e.getMessage());
+            return null;
+        }
+        return found ? job : null;
+    }
+}
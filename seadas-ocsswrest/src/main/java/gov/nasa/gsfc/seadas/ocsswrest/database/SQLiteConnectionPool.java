@@ -0,0 +1,315 @@
+package gov.nasa.gsfc.seadas.ocsswrest.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * The long-lived connections to the job database.
+ * <p/>
+ * The database is used in WAL mode, so reads neither wait for writes nor block them. Reads are run on a pool of
+ * {@link #READ_CONNECTION_COUNT_PROPERTY} connections. Writes are run by a single writer thread on its own
+ * connection, which commits all writes waiting at the time in one transaction, so the status updates of many
+ * concurrent jobs share the cost of a commit. The callers of {@link #update(String, Object...)} wait until their
+ * write is committed, so they read what they have written; the callers of {@link #updateLater(String, Object...)}
+ * keep what they write in memory and do not wait. Each connection keeps its prepared statements. The writer
+ * connection is reopened after a failed transaction, and a caller waits for its write at most
+ * {@link #MAX_WRITE_WAIT_MILLIS}, so a broken writer fails the writes instead of holding their callers.
+ */
+public class SQLiteConnectionPool {
+
+    public static final String READ_CONNECTION_COUNT_PROPERTY = "jobDbReadConnectionCount";
+
+    private static final int DEFAULT_READ_CONNECTION_COUNT = 4;
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final int BUSY_TIMEOUT_MILLIS = 10000;
+    private static final long MAX_WRITE_WAIT_MILLIS = 60000;
+
+    private static final LinkedBlockingQueue<PooledConnection> idleReadConnections = new LinkedBlockingQueue<>();
+    private static final LinkedBlockingQueue<Write> writes = new LinkedBlockingQueue<>();
+    private static int readConnectionCount;
+    private static Thread writerThread;
+    private static boolean shutdownHookAdded;
+
+    private SQLiteConnectionPool() {
+    }
+
+    /**
+     * Reads the rows of a query.
+     */
+    public interface ResultSetReader<T> {
+        T read(ResultSet resultSet) throws SQLException;
+    }
+
+    /**
+     * Runs a query on a pooled read connection.
+     *
+     * @param sql        the query
+     * @param reader     the reader of the result rows
+     * @param parameters the values of the query parameters
+     * @return the value returned by the reader
+     */
+    public static <T> T query(String sql, ResultSetReader<T> reader, Object... parameters) throws SQLException {
+        PooledConnection connection = acquireReadConnection();
+        try {
+            try (ResultSet resultSet = connection.prepare(sql, parameters).executeQuery()) {
+                return reader.read(resultSet);
+            }
+        } finally {
+            idleReadConnections.add(connection);
+        }
+    }
+
+    /**
+     * Runs an insert, update or delete statement in the next transaction of the writer thread and waits until
+     * the transaction is committed.
+     *
+     * @param sql        the statement
+     * @param parameters the values of the statement parameters
+     * @return the number of rows changed
+     */
+    public static int update(String sql, Object... parameters) throws SQLException {
+        startWriter();
+        Write write = new Write(sql, parameters);
+        writes.add(write);
+        return write.await();
+    }
+
+    /**
+     * Queues an insert, update or delete statement for the next transaction of the writer thread without
+     * waiting for it. Failures are logged by the writer thread.
+     *
+     * @param sql        the statement
+     * @param parameters the values of the statement parameters
+     */
+    public static void updateLater(String sql, Object... parameters) {
+        startWriter();
+        Write write = new Write(sql, parameters);
+        write.writeBehind = true;
+        writes.add(write);
+    }
+
+    /**
+     * Waits until all queued writes are committed.
+     */
+    public static void flush() throws SQLException {
+        startWriter();
+        Write write = new Write(null, new Object[0]);
+        writes.add(write);
+        write.await();
+    }
+
+    private static PooledConnection acquireReadConnection() throws SQLException {
+        PooledConnection connection = idleReadConnections.poll();
+        if (connection != null) {
+            return connection;
+        }
+        synchronized (SQLiteConnectionPool.class) {
+            if (readConnectionCount < Integer.getInteger(READ_CONNECTION_COUNT_PROPERTY, DEFAULT_READ_CONNECTION_COUNT)) {
+                connection = openConnection(true);
+                readConnectionCount++;
+                return connection;
+            }
+        }
+        try {
+            return idleReadConnections.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a job database connection", e);
+        }
+    }
+
+    private static synchronized void startWriter() {
+        // a writer which has died is replaced, so the queued writes are not left waiting
+        if (writerThread == null || !writerThread.isAlive()) {
+            writerThread = new Thread(new Writer(), "job database writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+        if (!shutdownHookAdded) {
+            shutdownHookAdded = true;
+            // commit the writes still queued when the server is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (SQLException e) {
+                        System.err.println(" in flushing job database writes : " + e.getMessage());
+                    }
+                }
+            }, "job database flush"));
+        }
+    }
+
+    private static PooledConnection openConnection(boolean autoCommit) throws SQLException {
+        try {
+            Class.forName(SQLiteJDBC.DB_CLASS_FOR_NAME);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException(e);
+        }
+        Connection connection = DriverManager.getConnection(SQLiteJDBC.JOB_DB_URL);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            // in WAL mode, commits survive a crash of the server without waiting for the disk
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MILLIS);
+        }
+        connection.setAutoCommit(autoCommit);
+        return new PooledConnection(connection);
+    }
+
+    private static class PooledConnection {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements;
+
+        private PooledConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = new HashMap<>();
+        }
+
+        private PreparedStatement prepare(String sql, Object[] parameters) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            statement.clearParameters();
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            return statement;
+        }
+    }
+
+    private static class Write {
+        private final String sql;
+        private final Object[] parameters;
+        private int updateCount;
+        private SQLException exception;
+        private boolean writeBehind;
+        private boolean done;
+
+        private Write(String sql, Object[] parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+
+        private synchronized void done(SQLException commitException) {
+            if (commitException != null) {
+                exception = commitException;
+            }
+            if (writeBehind && exception != null) {
+                System.err.println(" in writing behind to the job database : " + exception.getMessage());
+            }
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized int await() throws SQLException {
+            // the write is committed anyway, so an interrupt, e.g. of a cancelled job, does not end the wait
+            boolean interrupted = false;
+            long end = System.currentTimeMillis() + MAX_WRITE_WAIT_MILLIS;
+            long waitMillis = MAX_WRITE_WAIT_MILLIS;
+            while (!done && waitMillis > 0) {
+                try {
+                    wait(waitMillis);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                waitMillis = end - System.currentTimeMillis();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (!done) {
+                throw new SQLException("timed out waiting for the job database writer");
+            }
+            if (exception != null) {
+                throw exception;
+            }
+            return updateCount;
+        }
+    }
+
+    private static class Writer implements Runnable {
+
+        private PooledConnection connection;
+
+        @Override
+        public void run() {
+            while (true) {
+                List<Write> batch = new ArrayList<>();
+                try {
+                    batch.add(writes.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                writes.drainTo(batch, MAX_BATCH_SIZE - 1);
+                commit(batch);
+            }
+        }
+
+        /**
+         * Commits the writes of a batch and marks each of them done, whatever fails.
+         */
+        private void commit(List<Write> batch) {
+            SQLException commitException = null;
+            try {
+                if (connection == null) {
+                    connection = openConnection(false);
+                }
+                for (Write write : batch) {
+                    if (write.sql == null) {
+                        // a flush, done when the writes queued before it are committed
+                        continue;
+                    }
+                    try {
+                        write.updateCount = connection.prepare(write.sql, write.parameters).executeUpdate();
+                    } catch (SQLException e) {
+                        // a failed statement is rolled back on its own, the other writes of the batch are kept
+                        write.exception = e;
+                    }
+                }
+                connection.connection.commit();
+            } catch (SQLException e) {
+                commitException = e;
+                reset();
+            } catch (Throwable e) {
+                commitException = new SQLException(e);
+                reset();
+            }
+            for (Write write : batch) {
+                write.done(commitException);
+            }
+        }
+
+        /**
+         * Rolls back the failed transaction and drops the connection, which is reopened for the next batch.
+         */
+        private void reset() {
+            if (connection == null) {
+                return;
+            }
+            try {
+                connection.connection.rollback();
+            } catch (SQLException e) {
+                System.err.println(" in rolling back job database writes : " + e.getMessage());
+            }
+            try {
+                connection.connection.close();
+            } catch (SQLException e) {
+                System.err.println(" in closing the job database writer connection : " + e.getMessage());
+            }
+            connection = null;
+        }
+    }
+}
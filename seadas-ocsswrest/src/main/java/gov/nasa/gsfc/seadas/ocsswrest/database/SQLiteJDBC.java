@@ -1,9 +1,13 @@
 package gov.nasa.gsfc.seadas.ocsswrest.database;
 
+import gov.nasa.gsfc.seadas.ocsswrest.process.ProcessStatusMonitor;
+
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 /**
  * Created by IntelliJ IDEA.
@@ -32,6 +36,7 @@ public class SQLiteJDBC {
     public static final String PROCESS_MONITOR_STDOUT_TABLE_NAME = "PROCESS_MONITOR_STDOUT_TABLE";
     public static final String PROCESS_MONITOR_STDERR_TABLE_NAME = "PROCESS_MONITOR_STDERR_TABLE";
     public static final String INPUT_FILES_LIST_TABLE_NAME = "INPUT_FILES_LIST_TABLE";
+    public static final String INPUT_FILE_CACHE_TABLE_NAME = "INPUT_FILE_CACHE_TABLE";
 
     public static final String JOB_ID_FIELD_NAME = "JOB_ID";
     public static final String IFILE_NAME_FIELD_NAME = "I_FILE_NAME";
@@ -133,6 +138,9 @@ public class SQLiteJDBC {
         if (new File(JOB_DB_FILENAME).exists()) {
             new File(JOB_DB_FILENAME).delete();
         }
+        // the write-ahead log and its index of the earlier database
+        new File(JOB_DB_FILENAME + "-wal").delete();
+        new File(JOB_DB_FILENAME + "-shm").delete();
         Connection connection = null;
         Statement stmt = null;
         PreparedStatement preparedStatement = null;
@@ -199,6 +207,13 @@ public class SQLiteJDBC {
                     "PRIMARY KEY (FILE_ID)," +
                     "FOREIGN KEY (JOB_ID) REFERENCES FILE_TABLE(JOB_ID)" +
                     " );";
+
+            //string for creating INPUT_FILE_CACHE_TABLE, the files in the input file cache keyed by content hash
+            String input_file_cache_table_sql = "CREATE TABLE IF NOT EXISTS INPUT_FILE_CACHE_TABLE " +
+                    "(HASH CHAR(64) PRIMARY KEY   NOT NULL, " +
+                    "FILE_SIZE INTEGER   NOT NULL, " +
+                    "LAST_ACCESS INTEGER   NOT NULL" +
+                    " );";
 //
 //            String lonlat_table_sql = "CREATE TABLE IF NOT EXISTS LONLAT2PIXEL_TABLE " +
 //                    "(LONLAT_ID INTEGER   NOT NULL , " +
@@ -215,6 +230,7 @@ public class SQLiteJDBC {
             stmt.executeUpdate(file_info_table_sql);
             stmt.executeUpdate(lonlat_2_pixel_table_sql);
             stmt.executeUpdate(input_files_list_table_sql);
+            stmt.executeUpdate(input_file_cache_table_sql);
 
 
             //string for creating MISSION_TABLE
@@ -351,34 +367,25 @@ public class SQLiteJDBC {
 
     }
 
-    public static String retrieveMissionDir(String missionName) {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
-        Statement statement = null;
-        String commonQueryString = "SELECT * FROM MISSION_TABLE WHERE MISSION_ID = ?";
-
+    public static String retrieveMissionDir(final String missionName) {
         String missionDir = null;
 
         try {
-            Class.forName(DB_CLASS_FOR_NAME);
-            connection = DriverManager.getConnection(JOB_DB_URL);
-            connection.setAutoCommit(false);
-            //System.out.println("Opened database successfully");
-
-            statement = connection.createStatement();
-            ResultSet rs = statement.executeQuery("SELECT * FROM MISSION_TABLE;");
-            while (rs.next()) {
-                String missionNames = rs.getString("MISSION_NAMES");
-                System.out.println("MISSION NAMES = " + missionNames);
-                if (missionNames.contains(missionName)) {
-                    missionDir = rs.getString("MISSION_DIR");
-                    System.out.println("MISSION DIR = " + missionDir);
-                    break;
+            missionDir = SQLiteConnectionPool.query("SELECT * FROM MISSION_TABLE;", new SQLiteConnectionPool.ResultSetReader<String>() {
+                @Override
+                public String read(ResultSet rs) throws SQLException {
+                    while (rs.next()) {
+                        String missionNames = rs.getString("MISSION_NAMES");
+                        System.out.println("MISSION NAMES = " + missionNames);
+                        if (missionNames.contains(missionName)) {
+                            String missionDir = rs.getString("MISSION_DIR");
+                            System.out.println("MISSION DIR = " + missionDir);
+                            return missionDir;
+                        }
+                    }
+                    return null;
                 }
-            }
-            rs.close();
-            statement.close();
-            connection.close();
+            });
         } catch (Exception e) {
             System.err.println(e.getClass().getName() + ": " + e.getMessage());
             System.exit(0);
@@ -388,278 +395,205 @@ public class SQLiteJDBC {
     }
 
     public static void insertItem(String tableName, String itemName, String itemValue) {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
-
         String commonInsertString = "INSERT INTO " + tableName + " (" + itemName + ") VALUES ( ? );";
 
         try {
-            Class.forName(DB_CLASS_FOR_NAME);
-            connection = DriverManager.getConnection(JOB_DB_URL);
-            connection.setAutoCommit(false);
-            preparedStatement = connection.prepareStatement(commonInsertString);
-            preparedStatement.setString(1, itemValue);
-            // execute insert SQL stetement
-            int exitCode = preparedStatement.executeUpdate();
-
-            connection.commit();
-
-            //System.out.println(itemName + " is " + (exitCode == 1 ? "" : "not") + " inserted into " + tableName + " table!");
-            preparedStatement.close();
-            connection.close();
-
+            if (JobRegistry.isJobTable(tableName) && itemName.equalsIgnoreCase(JOB_ID_FIELD_NAME)) {
+                JobRegistry.addRow(tableName, itemValue);
+            } else {
+                SQLiteConnectionPool.update(commonInsertString, itemValue);
+            }
         } catch (Exception e) {
             System.err.println(" in inserting item : " + e.getClass().getName() + ": " + e.getMessage());
             //System.exit(0);
         }
-        //System.out.println("Inserted " + itemName + " successfully");
     }
 
     public static String updateItem(String tableName, String jobID, String itemName, String itemValue) {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
         String commonUpdateString = "UPDATE " + tableName + " SET " + itemName + " = ?  WHERE JOB_ID = ?";
         String retrievedItem = null;
 
         try {
-            Class.forName(DB_CLASS_FOR_NAME);
-            connection = DriverManager.getConnection(JOB_DB_URL);
-            connection.setAutoCommit(false);
-            //System.out.println("Operating on table " + tableName);
-
-            preparedStatement = connection.prepareStatement(commonUpdateString);
-
-            preparedStatement.setString(1, itemValue);
-            preparedStatement.setString(2, jobID);
-            int exitCode = preparedStatement.executeUpdate();
-            connection.commit();
-
-            //System.out.println(itemName + " is " + (exitCode == 1 ? "" : "not") + " updated on " + tableName + " table!");
-            //System.out.println(itemName + " = "  + itemValue);
-            preparedStatement.close();
-            connection.close();
-
+            if (JobRegistry.isJobTable(tableName)) {
+                JobRegistry.set(tableName, jobID, itemName, itemValue);
+            } else {
+                SQLiteConnectionPool.update(commonUpdateString, itemValue, jobID);
+            }
+            if (tableName.equals(PROCESS_TABLE_NAME) && itemName.equals(ProcessTableFields.STATUS.getFieldName())) {
+                ProcessStatusMonitor.statusChanged(jobID, itemValue);
+            }
         } catch (Exception e) {
             System.err.println(" in update item : " + e.getClass().getName() + ": " + e.getMessage());
             //System.exit(0);
         }
-        //System.out.println("Operation done successfully");
 
         return retrievedItem;
     }
 
     public static void insertItemWithDoubleKey(String tableName, String key1, String value1, String key2, String value2) {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
-
         String commonInsertString = "INSERT INTO " + tableName + " (" + key1 + "," + key2 + ") VALUES ( ?, ? );";
 
         try {
-            Class.forName(DB_CLASS_FOR_NAME);
-            connection = DriverManager.getConnection(JOB_DB_URL);
-            connection.setAutoCommit(false);
-            preparedStatement = connection.prepareStatement(commonInsertString);
-            preparedStatement.setString(1, value1);
-            preparedStatement.setString(2, value2);
-            // execute insert SQL stetement
-            int exitCode = preparedStatement.executeUpdate();
-
-            connection.commit();
-
-            //System.out.println(key1 + " is " + (exitCode == 1 ? "" : "not") + " inserted into " + tableName + " table!");
-            preparedStatement.close();
-            connection.close();
-
+            SQLiteConnectionPool.update(commonInsertString, value1, value2);
         } catch (Exception e) {
             System.err.println(" in inserting item : " + e.getClass().getName() + ": " + e.getMessage());
             //System.exit(0);
         }
-        //System.out.println("Inserted " + key1 + "and " + key2 + " successfully");
     }
 
 
     public static String updateItemWithDoubleKey(String tableName, String key1, String keyValue1, String key2, String keyValue2, String itemName, String itemValue) {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
         String commonUpdateString = "UPDATE " + tableName + " SET " + itemName + " = ?  WHERE " + key1 + " = ? AND " + key2 + "=?";
         String retrievedItem = null;
 
         try {
-            Class.forName(DB_CLASS_FOR_NAME);
-            connection = DriverManager.getConnection(JOB_DB_URL);
-            connection.setAutoCommit(false);
-            //System.out.println("Operating on table " + tableName);
-
-            preparedStatement = connection.prepareStatement(commonUpdateString);
-
-            preparedStatement.setString(1, itemValue);
-            preparedStatement.setString(2, keyValue1);
-            preparedStatement.setString(3, keyValue2);
-            int exitCode = preparedStatement.executeUpdate();
-            connection.commit();
-
-            //System.out.println(itemName + " is " + (exitCode == 1 ? "" : "not") + " updated on " + tableName + " table!");
-            //System.out.println(itemName + " = "  + itemValue);
-            preparedStatement.close();
-            connection.close();
-
+            SQLiteConnectionPool.update(commonUpdateString, itemValue, keyValue1, keyValue2);
         } catch (Exception e) {
             System.err.println(" in update item : " + e.getClass().getName() + ": " + e.getMessage());
             //System.exit(0);
         }
-        //System.out.println("Operation done successfully");
 
         return retrievedItem;
     }
 
     public static ArrayList getInputFilesList(String jobId) {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
         String commonQueryString = "SELECT * FROM " + INPUT_FILES_LIST_TABLE_NAME + " WHERE JOB_ID = ?";
 
         ArrayList fileList = new ArrayList();
 
         try {
-            Class.forName(DB_CLASS_FOR_NAME);
-            connection = DriverManager.getConnection(JOB_DB_URL);
-            connection.setAutoCommit(false);
-            //System.out.println("Operating on table " + INPUT_FILES_LIST_TABLE_NAME + "  jobID = " + jobId + "  searching for " + "fileName");
-
-            preparedStatement = connection.prepareStatement(commonQueryString);
-
-            //preparedStatement.setString(1, itemName);
-            preparedStatement.setString(1, jobId);
-            //System.out.println("sql string: " + preparedStatement);
-
-            ResultSet rs = preparedStatement.executeQuery();
-
-
-            while (rs.next()) {
-                fileList.add(rs.getString("FILENAME"));
-            }
-            rs.close();
-            preparedStatement.close();
-            connection.close();
+            fileList = SQLiteConnectionPool.query(commonQueryString, new SQLiteConnectionPool.ResultSetReader<ArrayList>() {
+                @Override
+                public ArrayList read(ResultSet rs) throws SQLException {
+                    ArrayList fileList = new ArrayList();
+                    while (rs.next()) {
+                        fileList.add(rs.getString("FILENAME"));
+                    }
+                    return fileList;
+                }
+            }, jobId);
         } catch (Exception e) {
             System.err.println(" in retrieve item : " + e.getClass().getName() + ": " + e.getMessage());
             //System.exit(0);
         }
-        //System.out.println("Operation done successfully");
 
         return fileList;
     }
 
     public static void updateInputFilesList(String jobID, String newClientFileName) {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
-
         String commonUpdateString = "INSERT INTO " + INPUT_FILES_LIST_TABLE_NAME + " ( JOB_ID, FILENAME )  VALUES ( ? , ? );";
 
-        //System.out.println(commonUpdateString);
-
         try {
-            Class.forName(DB_CLASS_FOR_NAME);
-            connection = DriverManager.getConnection(JOB_DB_URL);
-            connection.setAutoCommit(false);
-            //System.out.println("Operating on table " + INPUT_FILES_LIST_TABLE_NAME);
-
-            preparedStatement = connection.prepareStatement(commonUpdateString);
-
-            preparedStatement.setString(1, jobID);
-            preparedStatement.setString(2, newClientFileName);
-
-            int exitCode = preparedStatement.executeUpdate();
-            connection.commit();
-
-            //System.out.println(newClientFileName + " is " + (exitCode == 1 ? "" : "not") + " added in " + INPUT_FILES_LIST_TABLE_NAME + " table!");
-
-            preparedStatement.close();
-            connection.close();
-
+            SQLiteConnectionPool.update(commonUpdateString, jobID, newClientFileName);
         } catch (Exception e) {
             System.err.println(" in update item : " + e.getClass().getName() + ": " + e.getMessage());
             //System.exit(0);
         }
     }
 
-    public static String retrieveItem(String tableName, String searchKey, String itemName) {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
-
+    public static String retrieveItem(String tableName, String searchKey, final String itemName) {
         String commonQueryString = "SELECT * FROM " + tableName + " WHERE JOB_ID = ?";
 
         String retrievedItem = null;
 
         try {
-            Class.forName(DB_CLASS_FOR_NAME);
-            connection = DriverManager.getConnection(JOB_DB_URL);
-            connection.setAutoCommit(false);
-            //System.out.println("Operating on table " + tableName + "  jobID = " + searchKey + " searching for " + itemName);
-
-            preparedStatement = connection.prepareStatement(commonQueryString);
-            preparedStatement.setString(1, searchKey);
-            ResultSet rs = preparedStatement.executeQuery();
-            retrievedItem = rs.getString(itemName);
-            //System.out.println("Retrieved item name : " + retrievedItem);
-            rs.close();
-            preparedStatement.close();
-            connection.close();
+            if (JobRegistry.isJobTable(tableName)) {
+                JobRecord job = JobRegistry.getJob(searchKey);
+                return job != null ? job.get(tableName, itemName) : null;
+            }
+            retrievedItem = SQLiteConnectionPool.query(commonQueryString, new SQLiteConnectionPool.ResultSetReader<String>() {
+                @Override
+                public String read(ResultSet rs) throws SQLException {
+                    return rs.next() ? rs.getString(itemName) : null;
+                }
+            }, searchKey);
         } catch (Exception e) {
             System.err.println(" in retrieve item : " + e.getClass().getName() + ": " + e.getMessage());
             //System.exit(0);
         }
-        //System.out.println("Operation done successfully");
 
         return retrievedItem;
     }
 
-    public static InputStream retrieveInputStreamItem(String tableName, String searchKey, String itemName) {
-        Connection connection = null;
-        PreparedStatement preparedStatement = null;
+    public static InputStream retrieveInputStreamItem(String tableName, String searchKey, final String itemName) {
         String commonQueryString = "SELECT * FROM " + tableName + " WHERE JOB_ID = ?";
         InputStream retrievedItem = null;
 
         try {
-            Class.forName(DB_CLASS_FOR_NAME);
-            connection = DriverManager.getConnection(JOB_DB_URL);
-            connection.setAutoCommit(false);
-            //System.out.println("Operating on table " + tableName + "  jobID = " + searchKey + " searching for " + itemName);
-
-            preparedStatement = connection.prepareStatement(commonQueryString);
-            preparedStatement.setString(1, searchKey);
-            ResultSet rs = preparedStatement.executeQuery();
-
-            int size= 0;
-            if (rs != null)
-            {
-                rs.beforeFirst();
-                rs.last();
-                size = rs.getRow();
-            }
-
-            if (rs.next()) {
-                retrievedItem = rs.getBinaryStream(size);
-                //System.out.println("Total retrieved item number : " + rs.getFetchSize());
-                //rs.deleteRow();
-            } else {
-                retrievedItem = null;
+            // the stream items are not kept in the job records, so the job's changes must be written first
+            SQLiteConnectionPool.flush();
+            // the bytes are copied, as the result set is closed when the connection is returned to the pool
+            byte[] bytes = SQLiteConnectionPool.query(commonQueryString, new SQLiteConnectionPool.ResultSetReader<byte[]>() {
+                @Override
+                public byte[] read(ResultSet rs) throws SQLException {
+                    return rs.next() ? rs.getBytes(itemName) : null;
+                }
+            }, searchKey);
+            if (bytes != null) {
+                retrievedItem = new ByteArrayInputStream(bytes);
             }
-
-            //retrievedItem = rs.getBinaryStream(itemName);
-            //System.out.println("Retrieved item name : " + retrievedItem.toString());
-            rs.close();
-            preparedStatement.close();
-            connection.close();
         } catch (Exception e) {
             System.err.println(" in retrieve input stream item : " );
             e.printStackTrace();
         }
-        //System.out.println("Operation done successfully");
 
         return retrievedItem;
     }
 
+    /**
+     * Adds a file to the input file cache table, or updates its entry.
+     *
+     * @param hash           the content hash of the file
+     * @param fileSize       the size of the file in bytes
+     * @param lastAccessTime the time the file was last used, in milliseconds
+     */
+    public static void updateInputFileCacheEntry(String hash, long fileSize, long lastAccessTime) {
+        String commonUpdateString = "INSERT OR REPLACE INTO " + INPUT_FILE_CACHE_TABLE_NAME + " ( HASH, FILE_SIZE, LAST_ACCESS )  VALUES ( ? , ? , ? );";
+
+        try {
+            SQLiteConnectionPool.update(commonUpdateString, hash, fileSize, lastAccessTime);
+        } catch (Exception e) {
+            System.err.println(" in update input file cache entry : " + e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    public static void deleteInputFileCacheEntry(String hash) {
+        String commonDeleteString = "DELETE FROM " + INPUT_FILE_CACHE_TABLE_NAME + " WHERE HASH = ?";
+
+        try {
+            SQLiteConnectionPool.update(commonDeleteString, hash);
+        } catch (Exception e) {
+            System.err.println(" in delete input file cache entry : " + e.getClass().getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the sizes of the files in the input file cache keyed by content hash, least recently used first
+     */
+    public static LinkedHashMap<String, Long> getInputFileCacheEntries() {
+        String commonQueryString = "SELECT HASH, FILE_SIZE FROM " + INPUT_FILE_CACHE_TABLE_NAME + " ORDER BY LAST_ACCESS ASC;";
+        LinkedHashMap<String, Long> entries = new LinkedHashMap<>();
+
+        try {
+            entries = SQLiteConnectionPool.query(commonQueryString, new SQLiteConnectionPool.ResultSetReader<LinkedHashMap<String, Long>>() {
+                @Override
+                public LinkedHashMap<String, Long> read(ResultSet rs) throws SQLException {
+                    LinkedHashMap<String, Long> entries = new LinkedHashMap<>();
+                    while (rs.next()) {
+                        entries.put(rs.getString("HASH"), rs.getLong("FILE_SIZE"));
+                    }
+                    return entries;
+                }
+            });
+        } catch (Exception e) {
+            System.err.println(" in retrieve input file cache entries : " + e.getClass().getName() + ": " + e.getMessage());
+        }
+
+        return entries;
+    }
+
      public static String getProgramName(String jobId) {
-        return retrieveItem(FILE_TABLE_NAME, jobId, FileTableFields.PROGRAM_NAME.getFieldName());
+        JobRecord job = JobRegistry.getJob(jobId);
+        return job != null ? job.getProgramName() : null;
     }
 }
@@ -1,6 +1,7 @@
 package gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel;
 
 import gov.nasa.gsfc.seadas.ocsswrest.database.SQLiteJDBC;
+import gov.nasa.gsfc.seadas.ocsswrest.process.JobScheduler;
 import gov.nasa.gsfc.seadas.ocsswrest.process.ORSProcessObserver;
 import gov.nasa.gsfc.seadas.ocsswrest.utilities.MissionInfo;
 import gov.nasa.gsfc.seadas.ocsswrest.utilities.ServerSideFileUtilities;
@@ -8,7 +9,6 @@ import gov.nasa.gsfc.seadas.ocsswrest.utilities.ServerSideFileUtilities;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
-import javax.swing.*;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -376,10 +376,10 @@ public class OCSSWRemoteImpl {
         }
         debug("\n" + "command array content ended ");
 
-        SwingWorker swingWorker = new SwingWorker() {
+        JobScheduler.getInstance().submit(jobId, new Runnable() {
 
             @Override
-            protected Object doInBackground() throws Exception {
+            public void run() {
                 ProcessBuilder processBuilder = new ProcessBuilder(commandArray);
                 Process process = null;
                 try {
@@ -389,8 +389,11 @@ public class OCSSWRemoteImpl {
                 }
 
                 if (process == null) {
-                    throw new IOException(programName + " failed to create process.");
+                    debug(programName + " failed to create process.");
+                    SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, jobId, SQLiteJDBC.ProcessTableFields.STATUS.getFieldName(), SQLiteJDBC.ProcessStatusFlag.FAILED.getValue());
+                    return;
                 }
+                JobScheduler.getInstance().setProcess(jobId, process);
                 if (process.isAlive()) {
                     debug("process is alive: ");
                     final ORSProcessObserver processObserver = new ORSProcessObserver(process, programName, jobId);
@@ -402,10 +405,8 @@ public class OCSSWRemoteImpl {
                         SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, jobId, SQLiteJDBC.ProcessTableFields.STATUS.getFieldName(), SQLiteJDBC.ProcessStatusFlag.FAILED.getValue());
                     }
                 }
-                return null;
             }
-        };
-        swingWorker.execute();
+        });
     }
 
     public void executeProcessSimple(String[] commandArray, String jobId, String programName) {
@@ -464,10 +465,10 @@ public class OCSSWRemoteImpl {
     public void execute(String[] commandArrayParam, String workingDir, String jobIdParam) {
         String jobID = jobIdParam;
         String[] commandArray = commandArrayParam;
-        SwingWorker swingWorker = new SwingWorker() {
+        JobScheduler.getInstance().submit(jobID, new Runnable() {
 
             @Override
-            protected Object doInBackground() {
+            public void run() {
 
                 StringBuilder sb = new StringBuilder();
                 for (String item : commandArray) {
@@ -488,12 +489,11 @@ public class OCSSWRemoteImpl {
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
+                JobScheduler.getInstance().setProcess(jobID, process);
                 final ORSProcessObserver processObserver = new ORSProcessObserver(process, programName, jobIdParam);
                 processObserver.startAndWait();
-                return process;
             }
-        };
-        swingWorker.execute();
+        });
     }
 
     public HashMap<String, String> computePixelsFromLonLat(String jobId, String programName, JsonObject jsonObject) {
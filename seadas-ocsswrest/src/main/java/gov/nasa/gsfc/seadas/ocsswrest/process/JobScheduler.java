@@ -0,0 +1,299 @@
+package gov.nasa.gsfc.seadas.ocsswrest.process;
+
+import gov.nasa.gsfc.seadas.ocsswrest.database.SQLiteJDBC;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs the OCSSW programs started by the clients of the server on a bounded pool of worker threads.
+ * <p/>
+ * The number of workers is the value of the {@link #JOB_WORKER_COUNT_PROPERTY} property, or else the number of
+ * processors, limited by the physical memory divided by the memory needed per job ({@link #JOB_MEMORY_PROPERTY}).
+ * Jobs waiting for a worker are queued per client, and the workers take the jobs from the client queues in turn,
+ * so a client submitting many jobs does not hold up the jobs of other clients. Queued and running jobs can be
+ * cancelled; the queue depths and the wait and run times of the jobs are available as metrics.
+ */
+public class JobScheduler {
+
+    public static final String JOB_WORKER_COUNT_PROPERTY = "jobWorkerCount";
+    public static final String JOB_MEMORY_PROPERTY = "jobMemoryInMB";
+
+    private static final long DEFAULT_JOB_MEMORY_IN_MB = 2048;
+    private static final String UNKNOWN_CLIENT_ID = "unknown";
+
+    private static JobScheduler instance;
+
+    private final int workerCount;
+    // queued jobs per client, in the order the clients are served
+    private final LinkedHashMap<String, ArrayDeque<ScheduledJob>> clientQueues;
+    private final Map<String, ScheduledJob> jobs;
+    // the job run by the calling worker thread
+    private final ThreadLocal<ScheduledJob> currentJob;
+
+    private int queuedJobCount;
+    private int runningJobCount;
+    private long completedJobCount;
+    private long cancelledJobCount;
+    private long totalWaitTime;
+    private long totalRunTime;
+    private long maxRunTime;
+
+    public static synchronized JobScheduler getInstance() {
+        if (instance == null) {
+            instance = new JobScheduler(getDefaultWorkerCount());
+        }
+        return instance;
+    }
+
+    JobScheduler(int workerCount) {
+        this.workerCount = workerCount;
+        clientQueues = new LinkedHashMap<>();
+        jobs = new HashMap<>();
+        currentJob = new ThreadLocal<>();
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(new Worker(), "OCSSW job worker " + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+        }
+        System.out.println("job scheduler started with " + workerCount + " workers");
+    }
+
+    private static int getDefaultWorkerCount() {
+        Integer workerCount = Integer.getInteger(JOB_WORKER_COUNT_PROPERTY);
+        if (workerCount != null && workerCount > 0) {
+            return workerCount;
+        }
+        int processorCount = Runtime.getRuntime().availableProcessors();
+        long jobMemory = Long.getLong(JOB_MEMORY_PROPERTY, DEFAULT_JOB_MEMORY_IN_MB) * 1024 * 1024;
+        OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean && jobMemory > 0) {
+            long physicalMemory = ((com.sun.management.OperatingSystemMXBean) operatingSystem).getTotalPhysicalMemorySize();
+            processorCount = (int) Math.min(processorCount, physicalMemory / jobMemory);
+        }
+        return Math.max(1, processorCount);
+    }
+
+    /**
+     * Queues a job. The job keeps the process status NONEXIST until it has been started by a worker.
+     *
+     * @param jobId the job
+     * @param task  the task running the job's program
+     */
+    public synchronized void submit(String jobId, Runnable task) {
+        String clientId = getClientId(jobId);
+        ScheduledJob job = new ScheduledJob(jobId, clientId != null ? clientId : UNKNOWN_CLIENT_ID, task);
+        ArrayDeque<ScheduledJob> clientQueue = clientQueues.get(job.clientId);
+        if (clientQueue == null) {
+            clientQueue = new ArrayDeque<>();
+            clientQueues.put(job.clientId, clientQueue);
+        }
+        clientQueue.add(job);
+        jobs.put(jobId, job);
+        queuedJobCount++;
+        notify();
+    }
+
+    /**
+     * Registers the process started by a running job, so the job can be cancelled. A job cancelled while
+     * its process was being started has the process destroyed at once.
+     */
+    public void setProcess(String jobId, Process process) {
+        ScheduledJob job;
+        synchronized (this) {
+            job = currentJob.get();
+            if (job == null || !job.jobId.equals(jobId)) {
+                job = jobs.get(jobId);
+            }
+            if (job == null) {
+                return;
+            }
+            job.process = process;
+        }
+        if (job.cancelled && process != null) {
+            process.destroyForcibly();
+        }
+    }
+
+    /**
+     * Cancels a job. A queued job is removed from its queue, the process of a running job is destroyed.
+     * The process status of a cancelled job is FAILED.
+     *
+     * @return false if the job is neither queued nor running
+     */
+    public boolean cancel(String jobId) {
+        Process process;
+        synchronized (this) {
+            ScheduledJob job = jobs.get(jobId);
+            if (job == null || job.cancelled) {
+                return false;
+            }
+            job.cancelled = true;
+            cancelledJobCount++;
+            if (job.startTime == 0) {
+                ArrayDeque<ScheduledJob> clientQueue = clientQueues.get(job.clientId);
+                clientQueue.remove(job);
+                if (clientQueue.isEmpty()) {
+                    clientQueues.remove(job.clientId);
+                }
+                queuedJobCount--;
+                jobs.remove(jobId);
+                setFailed(jobId);
+                job.closeLogs();
+                return true;
+            }
+            process = job.process;
+            job.worker.interrupt();
+        }
+        if (process != null) {
+            process.destroyForcibly();
+        }
+        return true;
+    }
+
+    /**
+     * Returns a log of the job run by the calling worker thread. Each run of a job has its own logs, so the
+     * output of a run never goes to the logs of a later run of the same job.
+     *
+     * @param streamType {@link ProcessLog#STDOUT} or {@link ProcessLog#STDERR}
+     * @return the log, or null if the calling thread is not running a job
+     */
+    public ProcessLog getCurrentLog(String streamType) {
+        ScheduledJob job = currentJob.get();
+        if (job == null) {
+            return null;
+        }
+        return ProcessLog.STDOUT.equals(streamType) ? job.stdoutLog : job.stderrLog;
+    }
+
+    /**
+     * @return the numbers of workers and of queued, running, completed and cancelled jobs, the queue depth per
+     * client, and the average wait and run times and the maximum run time of the completed jobs in milliseconds
+     */
+    public synchronized JsonObject getMetrics() {
+        JsonObjectBuilder clientQueueDepths = Json.createObjectBuilder();
+        for (Map.Entry<String, ArrayDeque<ScheduledJob>> clientQueue : clientQueues.entrySet()) {
+            clientQueueDepths.add(clientQueue.getKey(), clientQueue.getValue().size());
+        }
+        return Json.createObjectBuilder()
+                .add("workerCount", workerCount)
+                .add("queuedJobs", queuedJobCount)
+                .add("runningJobs", runningJobCount)
+                .add("completedJobs", completedJobCount)
+                .add("cancelledJobs", cancelledJobCount)
+                .add("clientQueueDepths", clientQueueDepths)
+                .add("averageWaitTime", completedJobCount > 0 ? totalWaitTime / completedJobCount : 0)
+                .add("averageRunTime", completedJobCount > 0 ? totalRunTime / completedJobCount : 0)
+                .add("maxRunTime", maxRunTime)
+                .build();
+    }
+
+    private synchronized ScheduledJob take() throws InterruptedException {
+        while (clientQueues.isEmpty()) {
+            wait();
+        }
+        // serve the client first in turn and move it to the end of the turn
+        Iterator<Map.Entry<String, ArrayDeque<ScheduledJob>>> iterator = clientQueues.entrySet().iterator();
+        Map.Entry<String, ArrayDeque<ScheduledJob>> clientQueue = iterator.next();
+        iterator.remove();
+        ScheduledJob job = clientQueue.getValue().poll();
+        if (!clientQueue.getValue().isEmpty()) {
+            clientQueues.put(clientQueue.getKey(), clientQueue.getValue());
+        }
+        queuedJobCount--;
+        runningJobCount++;
+        job.startTime = System.currentTimeMillis();
+        job.worker = Thread.currentThread();
+        return job;
+    }
+
+    private synchronized void finish(ScheduledJob job) {
+        long runTime = System.currentTimeMillis() - job.startTime;
+        runningJobCount--;
+        completedJobCount++;
+        totalWaitTime += job.startTime - job.submitTime;
+        totalRunTime += runTime;
+        maxRunTime = Math.max(maxRunTime, runTime);
+        // the client may have submitted the next run of the job already
+        if (jobs.get(job.jobId) == job) {
+            jobs.remove(job.jobId);
+        }
+        if (job.cancelled) {
+            setFailed(job.jobId);
+        }
+        // ends the log streams of jobs whose process failed to start or ended before it was observed
+        job.closeLogs();
+    }
+
+    String getClientId(String jobId) {
+        return SQLiteJDBC.retrieveItem(SQLiteJDBC.FILE_TABLE_NAME, jobId, SQLiteJDBC.FileTableFields.CLIENT_ID_NAME.getFieldName());
+    }
+
+    void setFailed(String jobId) {
+        SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, jobId, SQLiteJDBC.ProcessTableFields.STATUS.getFieldName(), SQLiteJDBC.ProcessStatusFlag.FAILED.getValue());
+    }
+
+    private static class ScheduledJob {
+        private final String jobId;
+        private final String clientId;
+        private final Runnable task;
+        private final long submitTime;
+        private final ProcessLog stdoutLog;
+        private final ProcessLog stderrLog;
+        private long startTime;
+        private Thread worker;
+        private volatile Process process;
+        private volatile boolean cancelled;
+
+        private ScheduledJob(String jobId, String clientId, Runnable task) {
+            this.jobId = jobId;
+            this.clientId = clientId;
+            this.task = task;
+            this.submitTime = System.currentTimeMillis();
+            // clients may start reading the logs of the new run while it is queued
+            this.stdoutLog = ProcessLog.createLog(jobId, ProcessLog.STDOUT);
+            this.stderrLog = ProcessLog.createLog(jobId, ProcessLog.STDERR);
+        }
+
+        private void closeLogs() {
+            stdoutLog.close();
+            stderrLog.close();
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            while (true) {
+                ScheduledJob job;
+                try {
+                    job = take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                currentJob.set(job);
+                try {
+                    if (!job.cancelled) {
+                        job.task.run();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    currentJob.remove();
+                    finish(job);
+                    // clear an interrupt meant for the cancelled job
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+}
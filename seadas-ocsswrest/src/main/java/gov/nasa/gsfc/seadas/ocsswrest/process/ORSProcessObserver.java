@@ -1,28 +1,27 @@
 package gov.nasa.gsfc.seadas.ocsswrest.process;
 
 import gov.nasa.gsfc.seadas.ocsswrest.database.SQLiteJDBC;
-import gov.nasa.gsfc.seadas.ocsswrest.ocsswmodel.OCSSWConfig;
 
 import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
 
 /**
  * Created by aabduraz on 3/22/16.
+ * <p/>
+ * The lines written by the process are appended to the job's {@link ProcessLog}s, which clients read
+ * through the processLog service of the server.
  */
 public class ORSProcessObserver {
 
     public static final String PROCESS_INPUT_STREAM_FILE_NAME = "processInputStream.log";
     public static final String PROCESS_ERROR_STREAM_FILE_NAME = "processErrorStream.log";
 
-    private static final String STDOUT = "stdout";
-    private static final String STDERR = "stderr";
+    private static final String STDOUT = ProcessLog.STDOUT;
+    private static final String STDERR = ProcessLog.STDERR;
     private final Process process;
     private final String processName;
     private final String jobId;
-
-    private int processInputStreamPortNumber;
-    private int processErrorStreamPortNumber;
+    private final ProcessLog stdoutLog;
+    private final ProcessLog stderrLog;
 
 
     /**
@@ -35,11 +34,17 @@ public class ORSProcessObserver {
         this.process = process;
         this.processName = processName;
         this.jobId = jobId;
-        processInputStreamPortNumber = new Integer(System.getProperty(OCSSWConfig.OCSSW_PROCESS_INPUTSTREAM_SOCKET_PORT_NUMBER_PROPERTY)).intValue();
-        processErrorStreamPortNumber = new Integer(System.getProperty(OCSSWConfig.OCSSW_PROCESS_ERRORSTREAM_SOCKET_PORT_NUMBER_PROPERTY)).intValue();
+        // the logs of the run of the job, taken while on the job's worker thread
+        this.stdoutLog = getLog(STDOUT);
+        this.stderrLog = getLog(STDERR);
         SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, jobId, SQLiteJDBC.ProcessTableFields.STATUS.getFieldName(), SQLiteJDBC.ProcessStatusFlag.STARTED.getValue());
     }
 
+    private ProcessLog getLog(String type) {
+        ProcessLog log = JobScheduler.getInstance().getCurrentLog(type);
+        return log != null ? log : ProcessLog.createLog(jobId, type);
+    }
+
     /**
      * Starts observing the given process. The method blocks until both {@code stdout} and {@code stderr}
      * streams are no longer available. If the progress monitor is cancelled, the process will be destroyed.
@@ -86,34 +91,27 @@ public class ORSProcessObserver {
 
         private void read() {
 
-            InputStream inputStream = type.equals("stdout") ? process.getInputStream() : process.getErrorStream();
-            writeProcessStreamToSocket(inputStream, type.equals("stdout") ? processInputStreamPortNumber : processErrorStreamPortNumber);
+            InputStream inputStream = type.equals(STDOUT) ? process.getInputStream() : process.getErrorStream();
+            writeProcessStreamToLog(inputStream, type.equals(STDOUT) ? stdoutLog : stderrLog);
         }
 
-        private void writeProcessStreamToSocket(InputStream inputStream, int portNumber) {
-            System.out.println("server process observer: " + portNumber);
-            try (
-                    ServerSocket serverSocket =
-                            new ServerSocket(portNumber);
-                    Socket clientSocket = serverSocket.accept();
-                    PrintWriter out =
-                            new PrintWriter(clientSocket.getOutputStream(), true);
-                    final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))
-            ) {
+        private void writeProcessStreamToLog(InputStream inputStream, ProcessLog processLog) {
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
                 String inputLine;
                 while ((inputLine = reader.readLine()) != null) {
-                    out.println(inputLine);
+                    processLog.append(inputLine);
                 }
                 int processStatus = process.waitFor();
                 System.out.println("final process status: " + processStatus);
                 SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, jobId, SQLiteJDBC.ProcessTableFields.STATUS.getFieldName(), new Integer(process.exitValue()).toString());
-                serverSocket.setReuseAddress(true);
             } catch (IOException e) {
-                System.out.println("Exception caught when trying to listen on port "
-                        + portNumber + " or listening for a connection");
+                System.out.println("Exception caught when reading the " + type + " of " + processName);
                 System.out.println(e.getMessage());
             } catch (Exception e) {
                 e.printStackTrace();
+            } finally {
+                // closed after the status is updated, so clients reaching the end of the log find the final status
+                processLog.close();
             }
         }
     }
@@ -0,0 +1,287 @@
+package gov.nasa.gsfc.seadas.ocsswrest.process;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The recent lines a job's process has written to one of its output streams.
+ * <p/>
+ * The lines are kept in a ring buffer of {@link #MAX_LINE_COUNT} lines and numbered from 0, so clients reading
+ * the log can continue at the next line after reconnecting. Readers are {@link Listener}s, which are passed each
+ * line as it is appended, so no thread waits for the lines of a log. The lines are queued per listener and passed
+ * on by a shared pool of writer threads, so a slow client never holds up the thread reading the process output.
+ * A listener falling more than {@link #MAX_QUEUED_LINE_COUNT} lines behind is disconnected: it is passed the lines
+ * already queued and then {@link Listener#logDisconnected()}, after which its client reconnects from the next line.
+ * The logs of a bounded number of finished jobs are kept for clients connecting late.
+ */
+public class ProcessLog {
+
+    public static final String STDOUT = "stdout";
+    public static final String STDERR = "stderr";
+
+    public static final int MAX_LINE_COUNT = 1000;
+    public static final int MAX_QUEUED_LINE_COUNT = MAX_LINE_COUNT;
+    private static final int MAX_CLOSED_LOG_COUNT = 200;
+
+    // passes the queued lines to the listeners, a thread only while a listener has lines queued
+    private static final ExecutorService listenerExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "process log writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static final Map<String, ProcessLog> openLogs = new HashMap<>();
+    private static final LinkedHashMap<String, ProcessLog> closedLogs = new LinkedHashMap<>();
+
+    private final String key;
+    private final String[] lines;
+    private final List<Subscription> subscriptions;
+    private long lineCount;
+    private boolean closed;
+
+    private ProcessLog(String key) {
+        this.key = key;
+        this.lines = new String[MAX_LINE_COUNT];
+        this.subscriptions = new ArrayList<>();
+    }
+
+    /**
+     * Receives the lines of a log, on a writer thread of the log. A listener throwing an IOException, e.g. because
+     * its client has gone, is removed from the log.
+     */
+    public interface Listener {
+        void lineAppended(String line) throws IOException;
+
+        /**
+         * Called after the last line of a closed log.
+         */
+        void logClosed() throws IOException;
+
+        /**
+         * Called after the last queued line of a listener which has fallen too far behind the log.
+         */
+        void logDisconnected() throws IOException;
+    }
+
+    /**
+     * Returns the log of a job's output stream.
+     *
+     * @param jobId      the job
+     * @param streamType {@link #STDOUT} or {@link #STDERR}
+     * @return the log, or null if the job has never been scheduled or its log has been dropped
+     */
+    public static ProcessLog getLog(String jobId, String streamType) {
+        String key = jobId + "-" + streamType;
+        synchronized (openLogs) {
+            ProcessLog log = closedLogs.get(key);
+            if (log == null) {
+                log = openLogs.get(key);
+            }
+            return log;
+        }
+    }
+
+    /**
+     * Starts a new log for a job's output stream. The log of an earlier process of the job is no longer returned
+     * by {@link #getLog(String, String)}; its current readers keep reading it until it is closed.
+     */
+    public static ProcessLog createLog(String jobId, String streamType) {
+        String key = jobId + "-" + streamType;
+        synchronized (openLogs) {
+            closedLogs.remove(key);
+            ProcessLog log = new ProcessLog(key);
+            openLogs.put(key, log);
+            return log;
+        }
+    }
+
+    /**
+     * Appends a line and queues it for the listeners, without waiting for them.
+     */
+    public synchronized void append(String line) {
+        lines[(int) (lineCount % MAX_LINE_COUNT)] = line;
+        lineCount++;
+        Iterator<Subscription> iterator = subscriptions.iterator();
+        while (iterator.hasNext()) {
+            Subscription subscription = iterator.next();
+            if (!subscription.offer(line)) {
+                iterator.remove();
+                subscription.end(false);
+            }
+        }
+    }
+
+    /**
+     * Closes the log once the process has ended, ending the reads of all clients after the last line.
+     */
+    public void close() {
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                for (Subscription subscription : subscriptions) {
+                    subscription.end(true);
+                }
+                subscriptions.clear();
+            }
+        }
+        synchronized (openLogs) {
+            if (openLogs.get(key) == this) {
+                openLogs.remove(key);
+                closedLogs.put(key, this);
+                Iterator<ProcessLog> iterator = closedLogs.values().iterator();
+                while (closedLogs.size() > MAX_CLOSED_LOG_COUNT) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes the lines written since a given line to a listener, then each line appended later, until the log is
+     * closed or the listener is disconnected. Lines no longer in the buffer are skipped.
+     *
+     * @param firstLine the number of the first line to pass
+     * @param listener  the listener
+     */
+    public synchronized void addListener(long firstLine, Listener listener) {
+        List<String> lines = new ArrayList<>();
+        getLines(firstLine, lines);
+        Subscription subscription = new Subscription(listener);
+        // the buffer holds no more lines than a listener may have queued
+        for (String line : lines) {
+            subscription.offer(line);
+        }
+        if (closed) {
+            subscription.end(true);
+        } else {
+            subscriptions.add(subscription);
+        }
+    }
+
+    /**
+     * Gets the lines written since a given line without waiting for more. Lines no longer in the buffer are skipped.
+     *
+     * @param firstLine the number of the first line to get
+     * @param lines     the list receiving the lines
+     * @return the number of the line following the lines got
+     */
+    public synchronized long getLines(long firstLine, List<String> lines) {
+        long line = Math.max(firstLine, lineCount - MAX_LINE_COUNT);
+        for (; line < lineCount; line++) {
+            lines.add(this.lines[(int) (line % MAX_LINE_COUNT)]);
+        }
+        return Math.max(line, firstLine);
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    synchronized int getListenerCount() {
+        return subscriptions.size();
+    }
+
+    private synchronized void removeSubscription(Subscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * The lines queued for a listener. At most one writer thread passes them on at a time.
+     */
+    private class Subscription implements Runnable {
+
+        private final Listener listener;
+        private final ArrayDeque<String> queuedLines;
+        private boolean ended;
+        private boolean logClosed;
+        private boolean running;
+        private boolean done;
+
+        private Subscription(Listener listener) {
+            this.listener = listener;
+            this.queuedLines = new ArrayDeque<>();
+        }
+
+        /**
+         * @return false if the listener has too many lines queued
+         */
+        private synchronized boolean offer(String line) {
+            if (queuedLines.size() >= MAX_QUEUED_LINE_COUNT) {
+                return false;
+            }
+            queuedLines.add(line);
+            schedule();
+            return true;
+        }
+
+        /**
+         * Ends the subscription after the lines already queued.
+         *
+         * @param logClosed true if the log is closed, false if the listener is disconnected
+         */
+        private synchronized void end(boolean logClosed) {
+            if (!ended) {
+                ended = true;
+                this.logClosed = logClosed;
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            if (!running && !done) {
+                running = true;
+                listenerExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                String line;
+                synchronized (this) {
+                    line = queuedLines.poll();
+                    if (line == null && !ended) {
+                        running = false;
+                        return;
+                    }
+                }
+                try {
+                    if (line != null) {
+                        listener.lineAppended(line);
+                        continue;
+                    }
+                    if (logClosed) {
+                        listener.logClosed();
+                    } else {
+                        listener.logDisconnected();
+                    }
+                } catch (IOException e) {
+                    // the client has gone
+                    removeSubscription(this);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    removeSubscription(this);
+                }
+                synchronized (this) {
+                    queuedLines.clear();
+                    done = true;
+                    running = false;
+                }
+                return;
+            }
+        }
+    }
+}
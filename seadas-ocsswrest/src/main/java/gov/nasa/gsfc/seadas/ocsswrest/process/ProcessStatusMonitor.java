@@ -0,0 +1,132 @@
+package gov.nasa.gsfc.seadas.ocsswrest.process;
+
+import gov.nasa.gsfc.seadas.ocsswrest.database.JobRecord;
+import gov.nasa.gsfc.seadas.ocsswrest.database.JobRegistry;
+import gov.nasa.gsfc.seadas.ocsswrest.database.SQLiteJDBC;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tells waiting clients when the process status of a job changes.
+ * <p/>
+ * Every update of a status in the PROCESS_TABLE is passed to {@link #statusChanged(String, String)}, which calls
+ * the listeners waiting for the job's status to differ from the status they know. Clients therefore learn of a
+ * status change at once, without asking for the status over and over.
+ */
+public class ProcessStatusMonitor {
+
+    private static final Map<String, List<Waiter>> waiters = new HashMap<>();
+
+    private ProcessStatusMonitor() {
+    }
+
+    /**
+     * Receives the status changes of a job.
+     */
+    public interface Listener {
+        void statusChanged(String status);
+    }
+
+    /**
+     * A listener waiting for a change of a job's status.
+     */
+    public static class Waiter {
+        private final String jobId;
+        private final String knownStatus;
+        private final Listener listener;
+
+        private Waiter(String jobId, String knownStatus, Listener listener) {
+            this.jobId = jobId;
+            this.knownStatus = knownStatus;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * @return the current process status of a job, NONEXIST if the job has no status yet
+     */
+    public static String getStatus(String jobId) {
+        JobRecord job = JobRegistry.getJob(jobId);
+        String status = job != null ? job.getStatus() : null;
+        return status != null ? status : SQLiteJDBC.ProcessStatusFlag.NONEXIST.getValue();
+    }
+
+    /**
+     * Calls the listeners waiting for a new status of a job. The new status must have been stored already.
+     */
+    public static void statusChanged(String jobId, String status) {
+        if (status == null) {
+            status = SQLiteJDBC.ProcessStatusFlag.NONEXIST.getValue();
+        }
+        List<Waiter> notifiedWaiters = new ArrayList<>();
+        synchronized (waiters) {
+            List<Waiter> jobWaiters = waiters.get(jobId);
+            if (jobWaiters != null) {
+                Iterator<Waiter> iterator = jobWaiters.iterator();
+                while (iterator.hasNext()) {
+                    Waiter waiter = iterator.next();
+                    if (!status.equals(waiter.knownStatus)) {
+                        iterator.remove();
+                        notifiedWaiters.add(waiter);
+                    }
+                }
+                if (jobWaiters.isEmpty()) {
+                    waiters.remove(jobId);
+                }
+            }
+        }
+        for (Waiter waiter : notifiedWaiters) {
+            waiter.listener.statusChanged(status);
+        }
+    }
+
+    /**
+     * Calls a listener once the status of a job differs from the status known to the caller. If it already
+     * differs, the listener is called at once.
+     *
+     * @param jobId       the job
+     * @param knownStatus the status known to the caller
+     * @param listener    the listener
+     * @return the waiter to pass to {@link #removeWaiter(Waiter)} when the caller stops waiting, or null if the
+     * listener has been called
+     */
+    public static Waiter waitForStatusChange(String jobId, String knownStatus, Listener listener) {
+        String status;
+        // reads a job no longer in memory back from the database before taking the lock
+        JobRegistry.getJob(jobId);
+        synchronized (waiters) {
+            status = getStatus(jobId);
+            if (status.equals(knownStatus)) {
+                Waiter waiter = new Waiter(jobId, knownStatus, listener);
+                List<Waiter> jobWaiters = waiters.get(jobId);
+                if (jobWaiters == null) {
+                    jobWaiters = new ArrayList<>();
+                    waiters.put(jobId, jobWaiters);
+                }
+                jobWaiters.add(waiter);
+                return waiter;
+            }
+        }
+        listener.statusChanged(status);
+        return null;
+    }
+
+    public static void removeWaiter(Waiter waiter) {
+        if (waiter == null) {
+            return;
+        }
+        synchronized (waiters) {
+            List<Waiter> jobWaiters = waiters.get(waiter.jobId);
+            if (jobWaiters != null) {
+                jobWaiters.remove(waiter);
+                if (jobWaiters.isEmpty()) {
+                    waiters.remove(waiter.jobId);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package gov.nasa.gsfc.seadas.ocsswrest.utilities;
+
+import gov.nasa.gsfc.seadas.ocsswrest.database.SQLiteJDBC;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+import static gov.nasa.gsfc.seadas.ocsswrest.OCSSWRestServer.SERVER_WORKING_DIRECTORY_PROPERTY;
+
+/**
+ * Content-addressed store of the input files uploaded to the server.
+ * <p/>
+ * Each uploaded file is kept once, named by its content hash, and the client working directories only hold
+ * links to it. A file used by several clients or jobs is therefore uploaded and stored only once. The files are
+ * hard-linked into the working directories where possible, so evicting a file from the store does not affect
+ * working directories still using it; they are copied where hard links are not supported. The stored files are
+ * read-only, and files in the working directories are deleted before they are written, so writing a file in a
+ * working directory never changes the stored content shared by other jobs.
+ * <p/>
+ * The size and last use of the stored files are kept in the INPUT_FILE_CACHE_TABLE of the job database. When the
+ * total size exceeds the limit, the least recently used files are evicted.
+ */
+public class InputFileCache {
+
+    public static final String INPUT_FILE_CACHE_DIRECTORY_PROPERTY = "inputFileCacheDirectory";
+    public static final String INPUT_FILE_CACHE_SIZE_PROPERTY = "inputFileCacheSizeInGB";
+
+    private static final String DEFAULT_CACHE_DIR_NAME = "inputFileCache";
+    private static final long DEFAULT_CACHE_SIZE_IN_GB = 50;
+
+    private static final Object lock = new Object();
+
+    private InputFileCache() {
+    }
+
+    /**
+     * Registers the files left in the store by an earlier server run, as the job database is created anew
+     * on server start, and evicts files if the store is too large.
+     */
+    public static void initialize() {
+        synchronized (lock) {
+            File[] hashDirs = getCacheDir().listFiles();
+            if (hashDirs != null) {
+                for (File hashDir : hashDirs) {
+                    File[] files = hashDir.listFiles();
+                    if (files != null) {
+                        for (File file : files) {
+                            file.setReadOnly();
+                            SQLiteJDBC.updateInputFileCacheEntry(file.getName(), file.length(), file.lastModified());
+                        }
+                    }
+                }
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Links a stored file into a working directory.
+     *
+     * @param hash the content hash of the file
+     * @param file the path of the file in the working directory
+     * @return true if the file is in the store and has been linked, false if it must be uploaded
+     */
+    public static boolean link(String hash, File file) {
+        if (!isValidHash(hash)) {
+            return false;
+        }
+        synchronized (lock) {
+            File cachedFile = getCachedFile(hash);
+            if (!cachedFile.isFile()) {
+                return false;
+            }
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                createLink(cachedFile, file);
+                touch(hash, cachedFile);
+                ServerSideFileUtilities.putFileHash(file, hash);
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Moves a file into the store and replaces it with a link. If the store already has the content,
+     * the file is replaced by a link to the stored copy.
+     *
+     * @param file the file in a working directory
+     * @param hash the content hash of the file
+     */
+    public static void store(File file, String hash) {
+        if (!isValidHash(hash)) {
+            return;
+        }
+        synchronized (lock) {
+            File cachedFile = getCachedFile(hash);
+            try {
+                if (!cachedFile.isFile()) {
+                    Files.createDirectories(cachedFile.getParentFile().toPath());
+                    Files.move(file.toPath(), cachedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    cachedFile.setReadOnly();
+                }
+                createLink(cachedFile, file);
+                touch(hash, cachedFile);
+                ServerSideFileUtilities.putFileHash(file, hash);
+                evict();
+            } catch (IOException e) {
+                // the file stays in the working directory, it just is not shared
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void createLink(File cachedFile, File file) throws IOException {
+        Files.deleteIfExists(file.toPath());
+        try {
+            Files.createLink(file.toPath(), cachedFile.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            // e.g. the store is on another file system; a copy, unlike a symbolic link, outlives the evicted file
+            Files.copy(cachedFile.toPath(), file.toPath());
+        }
+    }
+
+    private static void touch(String hash, File cachedFile) {
+        SQLiteJDBC.updateInputFileCacheEntry(hash, cachedFile.length(), System.currentTimeMillis());
+    }
+
+    private static void evict() {
+        long maxSize = Long.getLong(INPUT_FILE_CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE_IN_GB) * 1024 * 1024 * 1024;
+        Map<String, Long> entries = SQLiteJDBC.getInputFileCacheEntries();
+        long size = 0;
+        for (long fileSize : entries.values()) {
+            size += fileSize;
+        }
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            if (size <= maxSize) {
+                break;
+            }
+            File cachedFile = getCachedFile(entry.getKey());
+            System.out.println("evicting " + cachedFile.getName() + " from the input file cache");
+            cachedFile.delete();
+            SQLiteJDBC.deleteInputFileCacheEntry(entry.getKey());
+            size -= entry.getValue();
+        }
+    }
+
+    private static File getCacheDir() {
+        String cacheDirName = System.getProperty(INPUT_FILE_CACHE_DIRECTORY_PROPERTY);
+        if (cacheDirName == null) {
+            cacheDirName = System.getProperty(SERVER_WORKING_DIRECTORY_PROPERTY) + File.separator + DEFAULT_CACHE_DIR_NAME;
+        }
+        return new File(cacheDirName);
+    }
+
+    private static File getCachedFile(String hash) {
+        // spread the files over subdirectories by the first two hash digits
+        return new File(new File(getCacheDir(), hash.substring(0, 2)), hash);
+    }
+
+    private static boolean isValidHash(String hash) {
+        return hash != null && hash.length() > 2 && hash.matches("[0-9a-f]+");
+    }
+}
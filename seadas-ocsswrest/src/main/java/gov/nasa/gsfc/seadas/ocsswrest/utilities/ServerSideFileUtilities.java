@@ -8,15 +8,23 @@ package gov.nasa.gsfc.seadas.ocsswrest.utilities;
  * To change this template use File | Settings | File Templates.
  */
 
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static gov.nasa.gsfc.seadas.ocsswrest.OCSSWRestServer.SERVER_WORKING_DIRECTORY_PROPERTY;
 
@@ -32,12 +40,25 @@ public class ServerSideFileUtilities {
     private static boolean debug = true;
     public static final String FILE_UPLOAD_PATH = System.getProperty("user.dir") + System.getProperty("file.separator") + "ifiles";
     public static final int BUFFER_SIZE = 1024;
+    public static final String FILE_HASH_ALGORITHM = "SHA-256";
+    public static final String PART_FILE_EXTENSION = ".part";
+
+    private static final int MAX_FILE_HASH_COUNT = 10000;
+
+    // hashes of files on the server, keyed by path, length and modification time, the least recently used dropped
+    private static final Map<String, String> fileHashes = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_FILE_HASH_COUNT;
+        }
+    });
 
 
     public static void saveToDisc(final InputStream fileInputStream,
                                   final String fileUploadPath) throws IOException
 
     {
+        deleteBeforeWriting(new File(fileUploadPath));
         final OutputStream out = new FileOutputStream(new File(fileUploadPath));
         int read = 0;
         byte[] bytes = new byte[BUFFER_SIZE];
@@ -54,6 +75,7 @@ public class ServerSideFileUtilities {
     {
         FileWriter fileWriter = null;
         try {
+            deleteBeforeWriting(new File(filePath));
             fileWriter = new FileWriter(new File(filePath));
             fileWriter.write(params);
         } finally {
@@ -63,12 +85,29 @@ public class ServerSideFileUtilities {
         }
     }
 
+    /**
+     * Returns the entity tag of a file, which changes whenever the file is written, so clients resume downloads
+     * only of the file they have started to download.
+     */
+    public static EntityTag getEntityTag(File file) {
+        return new EntityTag(Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()));
+    }
+
+    /**
+     * Deletes a file about to be written anew. A file in a working directory may be a link to a file of the
+     * {@link InputFileCache}, whose content is shared by other jobs and must not be overwritten in place.
+     */
+    public static void deleteBeforeWriting(File file) throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
     // save uploaded file to new location
     public static void writeToFile(InputStream inputStream,
                                    String fileLocation) {
 
         try {
             File outputFile = new File(fileLocation);
+            deleteBeforeWriting(outputFile);
             OutputStream outputStream = new FileOutputStream(outputFile);
             int read = 0;
             byte[] bytes = new byte[8192];
@@ -91,6 +130,7 @@ public class ServerSideFileUtilities {
 
         try {
             File outputFile = new File(uploadedFileLocation);
+            deleteBeforeWriting(outputFile);
             OutputStream outputStream = new FileOutputStream(outputFile);
             InputStream uploadedInputStream = new FileInputStream(inputFile);
             int read = 0;
@@ -115,6 +155,7 @@ public class ServerSideFileUtilities {
             final File parFile = new File(fileLocation);
             FileWriter fileWriter = null;
             try {
+                deleteBeforeWriting(parFile);
                 fileWriter = new FileWriter(parFile);
                 fileWriter.write(fileContent);
             } finally {
@@ -132,6 +173,146 @@ public class ServerSideFileUtilities {
     }
 
 
+    /**
+     * Parses the value of an HTTP Range header holding a single byte range.
+     *
+     * @param rangeHeader the header value, e.g. "bytes=100-199", "bytes=100-" or "bytes=-100"
+     * @param fileLength  the length of the requested file
+     * @return the first and last byte position of the range, null if the whole file is to be sent
+     * because there is no header or it can not be served as a single range; the first position is
+     * not less than the file length if the range can not be satisfied
+     */
+    public static long[] parseByteRange(String rangeHeader, long fileLength) {
+        if (rangeHeader == null || !rangeHeader.trim().startsWith("bytes=") || rangeHeader.indexOf(',') != -1) {
+            return null;
+        }
+        String spec = rangeHeader.trim().substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash == -1) {
+            return null;
+        }
+        try {
+            long first, last;
+            if (dash == 0) {
+                // suffix range: the last n bytes
+                long suffixLength = Long.parseLong(spec.substring(1).trim());
+                first = Math.max(0, fileLength - suffixLength);
+                last = fileLength - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, dash).trim());
+                String lastSpec = spec.substring(dash + 1).trim();
+                last = lastSpec.isEmpty() ? fileLength - 1 : Math.min(Long.parseLong(lastSpec), fileLength - 1);
+                if (last < first && first < fileLength) {
+                    return null;
+                }
+            }
+            return new long[]{first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sends a part of a file to an output stream without loading it into memory.
+     *
+     * @param file         the file to send
+     * @param position     the position of the first byte to send
+     * @param count        the number of bytes to send
+     * @param outputStream the stream to write to; it is flushed but not closed
+     * @throws IOException if the file can not be read or the stream can not be written
+     */
+    public static void transferFile(File file, long position, long count, OutputStream outputStream) throws IOException {
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+            long end = position + count;
+            while (position < end) {
+                long transferred = fileChannel.transferTo(position, end - position, outputChannel);
+                if (transferred <= 0) {
+                    throw new EOFException("Unexpected end of file " + file.getPath());
+                }
+                position += transferred;
+            }
+            outputStream.flush();
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * Writes a chunk of a file being uploaded at the given position of the file, dropping
+     * anything that has been written beyond the position by an earlier, failed attempt.
+     *
+     * @param inputStream the chunk content
+     * @param file        the file to write
+     * @param position    the position of the chunk in the file
+     * @return the length of the file after writing the chunk
+     * @throws IOException if the file can not be written
+     */
+    public static long writeToFile(InputStream inputStream, File file, long position) throws IOException {
+        FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            fileChannel.truncate(position);
+            fileChannel.position(position);
+            fileChannel.transferFrom(Channels.newChannel(inputStream), position, Long.MAX_VALUE);
+            return fileChannel.size();
+        } finally {
+            fileChannel.close();
+        }
+    }
+
+    /**
+     * Computes the content hash of a file as a hexadecimal string. The hash is computed
+     * only once as long as the file is not modified.
+     *
+     * @param file the file
+     * @return the hash, or null if the file can not be read
+     */
+    public static String getFileHash(File file) {
+        String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+        String hash = fileHashes.get(key);
+        if (hash == null && file.isFile()) {
+            try {
+                hash = computeFileHash(file);
+                fileHashes.put(key, hash);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Records the content hash of a file known by other means, e.g. a file linked to a file with a known hash.
+     */
+    public static void putFileHash(File file, String hash) {
+        fileHashes.put(file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified(), hash);
+    }
+
+    private static String computeFileHash(File file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(FILE_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(bytes)) != -1) {
+                messageDigest.update(bytes, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : messageDigest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
     public static void debug(String message) {
         if (debug) {
             System.out.println("Debugging: " + message);
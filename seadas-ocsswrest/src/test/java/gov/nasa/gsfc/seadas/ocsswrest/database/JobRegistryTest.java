@@ -0,0 +1,123 @@
+package gov.nasa.gsfc.seadas.ocsswrest.database;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class JobRegistryTest {
+
+    private static final String STATUS = SQLiteJDBC.ProcessTableFields.STATUS.getFieldName();
+    private static final String PROGRAM_NAME = SQLiteJDBC.FileTableFields.PROGRAM_NAME.getFieldName();
+
+    @BeforeClass
+    public static void createDatabase() throws IOException {
+        File dbFile = File.createTempFile("ocssw", ".db");
+        dbFile.deleteOnExit();
+        SQLiteJDBC.JOB_DB_FILENAME = dbFile.getPath();
+        SQLiteJDBC.JOB_DB_URL = "jdbc:sqlite:" + dbFile.getPath();
+        SQLiteJDBC.createTables();
+    }
+
+    @After
+    public void resetRegistrySize() {
+        System.clearProperty(JobRegistry.MAX_JOB_COUNT_PROPERTY);
+    }
+
+    @Test
+    public void testReadsItsWrites() throws Exception {
+        addJob("readWrite");
+        SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, "readWrite", STATUS, SQLiteJDBC.PROCESS_STATUS_STARTED);
+        SQLiteJDBC.updateItem(SQLiteJDBC.FILE_TABLE_NAME, "readWrite", PROGRAM_NAME, "l2gen");
+        SQLiteJDBC.updateItem(SQLiteJDBC.LONLAT_TABLE_NAME, "readWrite", "sline", "10");
+
+        // the values are read from memory before they are written to the database
+        assertEquals(SQLiteJDBC.PROCESS_STATUS_STARTED, SQLiteJDBC.retrieveItem(SQLiteJDBC.PROCESS_TABLE_NAME, "readWrite", STATUS));
+        assertEquals("l2gen", SQLiteJDBC.getProgramName("readWrite"));
+        assertEquals("10", SQLiteJDBC.retrieveItem(SQLiteJDBC.LONLAT_TABLE_NAME, "readWrite", "SLINE"));
+        JobRecord job = JobRegistry.getJob("readWrite");
+        assertEquals(SQLiteJDBC.PROCESS_STATUS_STARTED, job.getStatus());
+        assertEquals("l2gen", job.getProgramName());
+
+        SQLiteConnectionPool.flush();
+        assertEquals(SQLiteJDBC.PROCESS_STATUS_STARTED, readColumn(SQLiteJDBC.PROCESS_TABLE_NAME, "readWrite", STATUS));
+        assertEquals("l2gen", readColumn(SQLiteJDBC.FILE_TABLE_NAME, "readWrite", PROGRAM_NAME));
+    }
+
+    @Test
+    public void testUnknownJob() {
+        assertNull(JobRegistry.getJob("neverAdded"));
+        assertNull(SQLiteJDBC.retrieveItem(SQLiteJDBC.PROCESS_TABLE_NAME, "neverAdded", STATUS));
+        // a job without rows is not given any
+        SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, "neverAdded", STATUS, SQLiteJDBC.PROCESS_STATUS_STARTED);
+        assertNull(JobRegistry.getJob("neverAdded"));
+    }
+
+    @Test
+    public void testDroppedJobIsReadBack() throws Exception {
+        System.setProperty(JobRegistry.MAX_JOB_COUNT_PROPERTY, "1");
+        addJob("dropped");
+        SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, "dropped", STATUS, SQLiteJDBC.PROCESS_STATUS_COMPLETED);
+        SQLiteJDBC.updateItem(SQLiteJDBC.FILE_TABLE_NAME, "dropped", PROGRAM_NAME, "l3bin");
+        JobRecord droppedJob = JobRegistry.getJob("dropped");
+
+        addJob("dropping");
+        assertTrue(droppedJob.isDropped());
+
+        JobRecord job = JobRegistry.getJob("dropped");
+        assertNotSame(droppedJob, job);
+        assertEquals(SQLiteJDBC.PROCESS_STATUS_COMPLETED, job.getStatus());
+        assertEquals("l3bin", job.getProgramName());
+        assertSame(job, JobRegistry.getJob("dropped"));
+    }
+
+    @Test
+    public void testChangeOfDroppedJobReachesJobReadBack() throws Exception {
+        System.setProperty(JobRegistry.MAX_JOB_COUNT_PROPERTY, "1");
+        addJob("changed");
+        JobRecord droppedJob = JobRegistry.getJob("changed");
+        addJob("changing");
+
+        // the dropped record is not changed, the change is made on the record read back
+        SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, "changed", STATUS, SQLiteJDBC.PROCESS_STATUS_FAILED);
+        assertNull(droppedJob.getStatus());
+        assertEquals(SQLiteJDBC.PROCESS_STATUS_FAILED, SQLiteJDBC.retrieveItem(SQLiteJDBC.PROCESS_TABLE_NAME, "changed", STATUS));
+
+        // the change is kept when the record read back is dropped in turn
+        addJob("changingAgain");
+        assertEquals(SQLiteJDBC.PROCESS_STATUS_FAILED, SQLiteJDBC.retrieveItem(SQLiteJDBC.PROCESS_TABLE_NAME, "changed", STATUS));
+    }
+
+    @Test
+    public void testWritesAreCommittedInOrder() throws Exception {
+        addJob("ordered");
+        for (int i = 0; i < 100; i++) {
+            SQLiteJDBC.updateItem(SQLiteJDBC.PROCESS_TABLE_NAME, "ordered", STATUS, String.valueOf(i));
+        }
+
+        SQLiteConnectionPool.flush();
+        assertEquals("99", readColumn(SQLiteJDBC.PROCESS_TABLE_NAME, "ordered", STATUS));
+        assertEquals("99", SQLiteJDBC.retrieveItem(SQLiteJDBC.PROCESS_TABLE_NAME, "ordered", STATUS));
+    }
+
+    private static void addJob(String jobId) {
+        SQLiteJDBC.insertItem(SQLiteJDBC.FILE_TABLE_NAME, SQLiteJDBC.JOB_ID_FIELD_NAME, jobId);
+        SQLiteJDBC.insertItem(SQLiteJDBC.PROCESS_TABLE_NAME, SQLiteJDBC.JOB_ID_FIELD_NAME, jobId);
+        SQLiteJDBC.insertItem(SQLiteJDBC.LONLAT_TABLE_NAME, SQLiteJDBC.JOB_ID_FIELD_NAME, jobId);
+    }
+
+    private static String readColumn(String tableName, String jobId, final String columnName) throws SQLException {
+        return SQLiteConnectionPool.query("SELECT * FROM " + tableName + " WHERE JOB_ID = ?", new SQLiteConnectionPool.ResultSetReader<String>() {
+            @Override
+            public String read(ResultSet resultSet) throws SQLException {
+                return resultSet.next() ? resultSet.getString(columnName) : null;
+            }
+        }, jobId);
+    }
+}
@@ -0,0 +1,263 @@
+package gov.nasa.gsfc.seadas.ocsswrest.process;
+
+import org.junit.Test;
+
+import javax.json.JsonObject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class JobSchedulerTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void testClientsAreServedInTurn() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        CountDownLatch blockerStarted = new CountDownLatch(1);
+        CountDownLatch releaseBlocker = new CountDownLatch(1);
+        scheduler.submit("a0", "A", new BlockingTask(blockerStarted, releaseBlocker));
+        assertTrue(blockerStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final List<String> runOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(5);
+        for (String jobId : new String[]{"a1", "a2", "a3"}) {
+            scheduler.submit(jobId, "A", new RecordingTask(jobId, runOrder, done));
+        }
+        scheduler.submit("b1", "B", new RecordingTask("b1", runOrder, done));
+        scheduler.submit("c1", "C", new RecordingTask("c1", runOrder, done));
+        releaseBlocker.countDown();
+
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a1", "b1", "c1", "a2", "a3"), runOrder);
+    }
+
+    @Test
+    public void testCancelQueuedJob() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        CountDownLatch blockerStarted = new CountDownLatch(1);
+        CountDownLatch releaseBlocker = new CountDownLatch(1);
+        scheduler.submit("blocker", "A", new BlockingTask(blockerStarted, releaseBlocker));
+        assertTrue(blockerStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        final List<String> runOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(1);
+        scheduler.submit("queued", "B", new RecordingTask("queued", runOrder, done));
+        scheduler.submit("next", "B", new RecordingTask("next", runOrder, done));
+        ProcessLog queuedLog = ProcessLog.getLog("queued", ProcessLog.STDOUT);
+
+        assertTrue(scheduler.cancel("queued"));
+        assertFalse(scheduler.cancel("queued"));
+        assertTrue(scheduler.isFailed("queued"));
+        assertTrue(queuedLog.isClosed());
+
+        releaseBlocker.countDown();
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("next"), runOrder);
+    }
+
+    @Test
+    public void testCancelRunningJob() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        scheduler.submit("running", "A", new BlockingTask(started, new CountDownLatch(1)) {
+            @Override
+            void onInterrupt() {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertTrue(scheduler.cancel("running"));
+
+        assertTrue(interrupted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(scheduler.awaitFailed("running"));
+        assertFalse(scheduler.cancel("running"));
+        assertFalse(scheduler.cancel("unknown"));
+    }
+
+    @Test
+    public void testFinishedRunDoesNotDropResubmittedJob() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit("job", "A", new BlockingTask(started, release));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        ProcessLog firstRunLog = ProcessLog.getLog("job", ProcessLog.STDOUT);
+        // a second run of the job waits behind the first one
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        CountDownLatch secondRelease = new CountDownLatch(1);
+        scheduler.submit("job", "A", new BlockingTask(secondStarted, secondRelease));
+        ProcessLog secondRunLog = ProcessLog.getLog("job", ProcessLog.STDOUT);
+        assertNotSame(firstRunLog, secondRunLog);
+
+        release.countDown();
+        assertTrue(secondStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertTrue(firstRunLog.isClosed());
+        assertFalse(secondRunLog.isClosed());
+        final CountDownLatch secondRunLogClosed = new CountDownLatch(1);
+        secondRunLog.addListener(0, new ProcessLog.Listener() {
+            @Override
+            public void lineAppended(String line) {
+            }
+
+            @Override
+            public void logClosed() {
+                secondRunLogClosed.countDown();
+            }
+
+            @Override
+            public void logDisconnected() {
+            }
+        });
+        assertTrue(scheduler.cancel("job"));
+        assertTrue(scheduler.awaitFailed("job"));
+        assertTrue(secondRunLogClosed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        TestScheduler scheduler = new TestScheduler();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit("running", "A", new BlockingTask(started, release));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        final List<String> runOrder = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch done = new CountDownLatch(2);
+        scheduler.submit("a1", "A", new RecordingTask("a1", runOrder, done));
+        scheduler.submit("b1", "B", new RecordingTask("b1", runOrder, done));
+        scheduler.submit("b2", "B", new RecordingTask("b2", runOrder, done));
+
+        JsonObject metrics = scheduler.getMetrics();
+        assertEquals(1, metrics.getInt("workerCount"));
+        assertEquals(3, metrics.getInt("queuedJobs"));
+        assertEquals(1, metrics.getInt("runningJobs"));
+        assertEquals(0, metrics.getInt("completedJobs"));
+        assertEquals(1, metrics.getJsonObject("clientQueueDepths").getInt("A"));
+        assertEquals(2, metrics.getJsonObject("clientQueueDepths").getInt("B"));
+
+        assertTrue(scheduler.cancel("b2"));
+        release.countDown();
+        assertTrue(done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // the cancelled job is not counted as completed, the last job run may not have been counted yet
+        metrics = scheduler.awaitCompleted(3);
+        assertEquals(0, metrics.getInt("queuedJobs"));
+        assertEquals(0, metrics.getInt("runningJobs"));
+        assertEquals(3, metrics.getInt("completedJobs"));
+        assertEquals(1, metrics.getInt("cancelledJobs"));
+        assertEquals(0, metrics.getJsonObject("clientQueueDepths").size());
+        assertTrue(metrics.getInt("maxRunTime") >= metrics.getInt("averageRunTime"));
+    }
+
+    /**
+     * A scheduler with one worker, taking the clients of the jobs from the test instead of the job database.
+     */
+    private static class TestScheduler extends JobScheduler {
+
+        private final Map<String, String> clientIds = new HashMap<>();
+        private final List<String> failedJobIds = new ArrayList<>();
+
+        private TestScheduler() {
+            super(1);
+        }
+
+        void submit(String jobId, String clientId, Runnable task) {
+            synchronized (clientIds) {
+                clientIds.put(jobId, clientId);
+            }
+            submit(jobId, task);
+        }
+
+        @Override
+        String getClientId(String jobId) {
+            synchronized (clientIds) {
+                return clientIds.get(jobId);
+            }
+        }
+
+        @Override
+        void setFailed(String jobId) {
+            synchronized (failedJobIds) {
+                failedJobIds.add(jobId);
+                failedJobIds.notifyAll();
+            }
+        }
+
+        boolean isFailed(String jobId) {
+            synchronized (failedJobIds) {
+                return failedJobIds.contains(jobId);
+            }
+        }
+
+        boolean awaitFailed(String jobId) throws InterruptedException {
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+            synchronized (failedJobIds) {
+                while (!failedJobIds.contains(jobId) && System.currentTimeMillis() < end) {
+                    failedJobIds.wait(100);
+                }
+                return failedJobIds.contains(jobId);
+            }
+        }
+
+        JsonObject awaitCompleted(int completedJobCount) throws InterruptedException {
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+            JsonObject metrics = getMetrics();
+            while (metrics.getInt("completedJobs") < completedJobCount && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+                metrics = getMetrics();
+            }
+            return metrics;
+        }
+    }
+
+    private static class BlockingTask implements Runnable {
+
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        private BlockingTask(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                onInterrupt();
+            }
+        }
+
+        void onInterrupt() {
+        }
+    }
+
+    private static class RecordingTask implements Runnable {
+
+        private final String jobId;
+        private final List<String> runOrder;
+        private final CountDownLatch done;
+
+        private RecordingTask(String jobId, List<String> runOrder, CountDownLatch done) {
+            this.jobId = jobId;
+            this.runOrder = runOrder;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            runOrder.add(jobId);
+            done.countDown();
+        }
+    }
+}
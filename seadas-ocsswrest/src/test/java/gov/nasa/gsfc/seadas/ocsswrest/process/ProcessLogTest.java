@@ -0,0 +1,279 @@
+package gov.nasa.gsfc.seadas.ocsswrest.process;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessLogTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    public void testGetLines() {
+        ProcessLog log = ProcessLog.createLog("getLines", ProcessLog.STDOUT);
+        log.append("line 0");
+        log.append("line 1");
+        log.append("line 2");
+
+        List<String> lines = new ArrayList<>();
+        assertEquals(3, log.getLines(0, lines));
+        assertEquals(Arrays.asList("line 0", "line 1", "line 2"), lines);
+
+        lines.clear();
+        assertEquals(3, log.getLines(1, lines));
+        assertEquals(Arrays.asList("line 1", "line 2"), lines);
+
+        lines.clear();
+        assertEquals(5, log.getLines(5, lines));
+        assertTrue(lines.isEmpty());
+    }
+
+    @Test
+    public void testRingBufferWrap() {
+        ProcessLog log = ProcessLog.createLog("wrap", ProcessLog.STDOUT);
+        int lineCount = ProcessLog.MAX_LINE_COUNT + 10;
+        for (int i = 0; i < lineCount; i++) {
+            log.append("line " + i);
+        }
+
+        // the overwritten lines are skipped
+        List<String> lines = new ArrayList<>();
+        assertEquals(lineCount, log.getLines(0, lines));
+        assertEquals(ProcessLog.MAX_LINE_COUNT, lines.size());
+        assertEquals("line 10", lines.get(0));
+        assertEquals("line " + (lineCount - 1), lines.get(lines.size() - 1));
+
+        lines.clear();
+        assertEquals(lineCount, log.getLines(lineCount - 3, lines));
+        assertEquals(Arrays.asList("line " + (lineCount - 3), "line " + (lineCount - 2), "line " + (lineCount - 1)), lines);
+    }
+
+    @Test
+    public void testListenerReconnectingFromLine() throws Exception {
+        ProcessLog log = ProcessLog.createLog("reconnect", ProcessLog.STDOUT);
+        for (int i = 0; i < 5; i++) {
+            log.append("line " + i);
+        }
+
+        RecordingListener listener = new RecordingListener();
+        log.addListener(3, listener);
+        listener.awaitLineCount(2);
+        assertEquals(Arrays.asList("line 3", "line 4"), listener.getLines());
+        assertFalse(listener.isClosed());
+
+        log.append("line 5");
+        listener.awaitLineCount(3);
+        assertEquals(Arrays.asList("line 3", "line 4", "line 5"), listener.getLines());
+
+        log.close();
+        assertTrue(listener.awaitEnd());
+        assertTrue(listener.isClosed());
+        log.append("line 6");
+        assertEquals(3, listener.getLines().size());
+    }
+
+    @Test
+    public void testListenerOfWrappedLog() throws Exception {
+        ProcessLog log = ProcessLog.createLog("wrappedListener", ProcessLog.STDOUT);
+        int lineCount = ProcessLog.MAX_LINE_COUNT + 10;
+        for (int i = 0; i < lineCount; i++) {
+            log.append("line " + i);
+        }
+
+        RecordingListener listener = new RecordingListener();
+        log.addListener(5, listener);
+        log.close();
+
+        assertTrue(listener.awaitEnd());
+        assertEquals(ProcessLog.MAX_LINE_COUNT, listener.getLines().size());
+        assertEquals("line 10", listener.getLines().get(0));
+        assertTrue(listener.isClosed());
+    }
+
+    @Test
+    public void testListenerOfClosedLog() throws Exception {
+        ProcessLog log = ProcessLog.createLog("closed", ProcessLog.STDERR);
+        log.append("line 0");
+        log.append("line 1");
+        log.close();
+
+        RecordingListener listener = new RecordingListener();
+        log.addListener(1, listener);
+
+        assertTrue(listener.awaitEnd());
+        assertEquals(Arrays.asList("line 1"), listener.getLines());
+        assertTrue(listener.isClosed());
+    }
+
+    @Test
+    public void testFailingListenerIsRemoved() throws Exception {
+        ProcessLog log = ProcessLog.createLog("failing", ProcessLog.STDOUT);
+        RecordingListener listener = new RecordingListener();
+        listener.failAfter = 1;
+        log.addListener(0, listener);
+
+        log.append("line 0");
+        log.append("line 1");
+        listener.awaitLineCount(1);
+        awaitListenerCount(log, 0);
+        log.append("line 2");
+        log.close();
+
+        assertEquals(Arrays.asList("line 0"), listener.getLines());
+        assertFalse(listener.isClosed());
+        assertFalse(listener.isDisconnected());
+    }
+
+    @Test
+    public void testBlockingListenerDoesNotStallAppend() throws Exception {
+        final ProcessLog log = ProcessLog.createLog("blocking", ProcessLog.STDOUT);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingListener blockingListener = new RecordingListener() {
+            @Override
+            public void lineAppended(String line) throws IOException {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                super.lineAppended(line);
+            }
+        };
+        RecordingListener listener = new RecordingListener();
+        log.addListener(0, blockingListener);
+        log.addListener(0, listener);
+        log.append("line 0");
+        assertTrue(blocked.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // the appending thread is not held up by the blocked listener, even beyond the lines it may have queued
+        final int lineCount = ProcessLog.MAX_QUEUED_LINE_COUNT + 10;
+        Thread appender = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 1; i < lineCount; i++) {
+                    log.append("line " + i);
+                }
+            }
+        };
+        appender.start();
+        appender.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertFalse(appender.isAlive());
+        listener.awaitLineCount(lineCount);
+        assertEquals(lineCount, listener.getLines().size());
+
+        // the blocked listener has fallen behind, it is passed the lines it has queued and disconnected
+        assertEquals(1, log.getListenerCount());
+        release.countDown();
+        assertTrue(blockingListener.awaitEnd());
+        assertTrue(blockingListener.isDisconnected());
+        assertFalse(blockingListener.isClosed());
+        List<String> lines = blockingListener.getLines();
+        assertEquals(ProcessLog.MAX_QUEUED_LINE_COUNT + 1, lines.size());
+        assertEquals("line " + ProcessLog.MAX_QUEUED_LINE_COUNT, lines.get(lines.size() - 1));
+        assertFalse(log.isClosed());
+
+        // the client reconnects from its next line
+        RecordingListener reconnectedListener = new RecordingListener();
+        log.addListener(lines.size(), reconnectedListener);
+        log.close();
+        assertTrue(reconnectedListener.awaitEnd());
+        assertEquals(lineCount - lines.size(), reconnectedListener.getLines().size());
+        assertEquals("line " + lines.size(), reconnectedListener.getLines().get(0));
+        assertTrue(reconnectedListener.isClosed());
+        assertTrue(listener.awaitEnd());
+        assertTrue(listener.isClosed());
+    }
+
+    @Test
+    public void testGetLog() {
+        assertNull(ProcessLog.getLog("neverScheduled", ProcessLog.STDOUT));
+
+        ProcessLog log = ProcessLog.createLog("getLog", ProcessLog.STDOUT);
+        assertSame(log, ProcessLog.getLog("getLog", ProcessLog.STDOUT));
+        assertNull(ProcessLog.getLog("getLog", ProcessLog.STDERR));
+
+        // the log of a finished process is kept for late clients
+        log.append("line 0");
+        log.close();
+        assertSame(log, ProcessLog.getLog("getLog", ProcessLog.STDOUT));
+
+        // a new process of the job starts a new log
+        ProcessLog newLog = ProcessLog.createLog("getLog", ProcessLog.STDOUT);
+        assertNotSame(log, newLog);
+        assertSame(newLog, ProcessLog.getLog("getLog", ProcessLog.STDOUT));
+        assertFalse(newLog.isClosed());
+    }
+
+    private static void awaitListenerCount(ProcessLog log, int listenerCount) throws InterruptedException {
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (log.getListenerCount() != listenerCount && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(listenerCount, log.getListenerCount());
+    }
+
+    /**
+     * Records the lines passed by the writer threads of a log.
+     */
+    private static class RecordingListener implements ProcessLog.Listener {
+
+        private final List<String> lines = new ArrayList<>();
+        private final CountDownLatch ended = new CountDownLatch(1);
+        private boolean closed;
+        private boolean disconnected;
+        private int failAfter = Integer.MAX_VALUE;
+
+        @Override
+        public synchronized void lineAppended(String line) throws IOException {
+            if (lines.size() >= failAfter) {
+                throw new IOException("client gone");
+            }
+            lines.add(line);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void logClosed() {
+            closed = true;
+            ended.countDown();
+        }
+
+        @Override
+        public synchronized void logDisconnected() {
+            disconnected = true;
+            ended.countDown();
+        }
+
+        synchronized List<String> getLines() {
+            return new ArrayList<>(lines);
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        synchronized boolean isDisconnected() {
+            return disconnected;
+        }
+
+        synchronized void awaitLineCount(int lineCount) throws InterruptedException {
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+            while (lines.size() < lineCount && System.currentTimeMillis() < end) {
+                wait(100);
+            }
+        }
+
+        boolean awaitEnd() throws InterruptedException {
+            return ended.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
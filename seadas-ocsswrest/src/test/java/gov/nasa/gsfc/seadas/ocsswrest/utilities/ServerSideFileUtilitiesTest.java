@@ -0,0 +1,57 @@
+package gov.nasa.gsfc.seadas.ocsswrest.utilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ServerSideFileUtilitiesTest {
+
+    @Test
+    public void testParseClosedRange() {
+        assertArrayEquals(new long[]{100, 199}, ServerSideFileUtilities.parseByteRange("bytes=100-199", 1000));
+        assertArrayEquals(new long[]{0, 0}, ServerSideFileUtilities.parseByteRange("bytes=0-0", 1000));
+        // the last position is cut to the end of the file
+        assertArrayEquals(new long[]{900, 999}, ServerSideFileUtilities.parseByteRange("bytes=900-5000", 1000));
+        assertArrayEquals(new long[]{100, 199}, ServerSideFileUtilities.parseByteRange(" bytes= 100 - 199 ", 1000));
+    }
+
+    @Test
+    public void testParseOpenEndedRange() {
+        assertArrayEquals(new long[]{100, 999}, ServerSideFileUtilities.parseByteRange("bytes=100-", 1000));
+        assertArrayEquals(new long[]{999, 999}, ServerSideFileUtilities.parseByteRange("bytes=999-", 1000));
+    }
+
+    @Test
+    public void testParseSuffixRange() {
+        assertArrayEquals(new long[]{900, 999}, ServerSideFileUtilities.parseByteRange("bytes=-100", 1000));
+        // a suffix longer than the file is the whole file
+        assertArrayEquals(new long[]{0, 999}, ServerSideFileUtilities.parseByteRange("bytes=-5000", 1000));
+    }
+
+    @Test
+    public void testParseUnsatisfiableRange() {
+        assertUnsatisfiable(ServerSideFileUtilities.parseByteRange("bytes=1000-", 1000), 1000);
+        assertUnsatisfiable(ServerSideFileUtilities.parseByteRange("bytes=2000-2999", 1000), 1000);
+        assertUnsatisfiable(ServerSideFileUtilities.parseByteRange("bytes=-0", 1000), 1000);
+        assertUnsatisfiable(ServerSideFileUtilities.parseByteRange("bytes=-100", 0), 0);
+        assertUnsatisfiable(ServerSideFileUtilities.parseByteRange("bytes=0-", 0), 0);
+    }
+
+    @Test
+    public void testWholeFileForUnservableRanges() {
+        assertNull(ServerSideFileUtilities.parseByteRange(null, 1000));
+        // multiple ranges are not served as a multipart response
+        assertNull(ServerSideFileUtilities.parseByteRange("bytes=0-99,200-299", 1000));
+        assertNull(ServerSideFileUtilities.parseByteRange("bytes=-100,0-9", 1000));
+        assertNull(ServerSideFileUtilities.parseByteRange("items=0-99", 1000));
+        assertNull(ServerSideFileUtilities.parseByteRange("bytes=100", 1000));
+        assertNull(ServerSideFileUtilities.parseByteRange("bytes=abc-def", 1000));
+        // a last position before the first one makes the header invalid
+        assertNull(ServerSideFileUtilities.parseByteRange("bytes=200-100", 1000));
+    }
+
+    private static void assertUnsatisfiable(long[] byteRange, long fileLength) {
+        assertNotNull(byteRange);
+        assertTrue(byteRange[0] >= fileLength);
+    }
+}
@@ -10,11 +10,9 @@ import gov.nasa.gsfc.seadas.processing.common.SeadasProcess;
 import gov.nasa.gsfc.seadas.processing.core.*;
 import gov.nasa.gsfc.seadas.processing.utilities.SeadasArrayUtils;
 import org.esa.beam.visat.VisatApp;
-import org.glassfish.jersey.media.multipart.FormDataMultiPart;
-import org.glassfish.jersey.media.multipart.MultiPart;
-import org.glassfish.jersey.media.multipart.file.FileDataBodyPart;
 
 import javax.json.*;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.MediaType;
@@ -44,6 +42,8 @@ public class OCSSWRemote extends OCSSW {
     public static final String PROCESS_STATUS_COMPLETED = "0";
     public static final String PROCESS_STATUS_FAILED = "1";
 
+    private static final int PROCESS_STATUS_WAIT_SECONDS = 30;
+
     public static final String US_ASCII_CHAR_SET = "us-ascii";
 
     public static final String PROGRAM_NAMES_FOR_TEXT_INPUT_FILES = "l2bin, l3bin, multilevel_processor.py";
@@ -55,6 +55,7 @@ public class OCSSWRemote extends OCSSW {
 
     OCSSWClient ocsswClient;
     WebTarget target;
+    RemoteFileUploader fileUploader;
 
     String jobId;
     String clientId;
@@ -68,6 +69,7 @@ public class OCSSWRemote extends OCSSW {
     public OCSSWRemote() {
         ocsswClient = new OCSSWClient(ocsswInfo.getResourceBaseUri());
         target = ocsswClient.getOcsswWebTarget();
+        fileUploader = new RemoteFileUploader(target.path("fileServices"));
         jobId = target.path("jobs").path("newJobId").request(MediaType.TEXT_PLAIN_TYPE).get(String.class);
         clientId = RuntimeContext.getConfig().getContextProperty(SEADAS_CLIENT_ID_PROPERTY, System.getProperty("user.name"));
         target.path("ocssw").path("ocsswSetClientId").path(jobId).request().put(Entity.entity(clientId, MediaType.TEXT_PLAIN_TYPE));
@@ -145,13 +147,7 @@ public class OCSSWRemote extends OCSSW {
                 } finally {
                     pm.done();
                 }
-                final FileDataBodyPart fileDataBodyPart = new FileDataBodyPart("file", new File(fileName));
-                final MultiPart multiPart = new FormDataMultiPart()
-                        //.field("ifileName", ifileName)
-                        .bodyPart(fileDataBodyPart);
-                Response response = target.path("fileServices").path("uploadClientFile").path(jobId).request().post(Entity.entity(multiPart, MediaType.MULTIPART_FORM_DATA_TYPE));
-
-                if (response.getStatus() == Response.ok().build().getStatus()) {
+                if (fileUploader.uploadFiles(jobId, Collections.singletonList(fileName), pm) != null) {
                     ifileUploadSuccess = true;
                 }
                 return null;
@@ -176,13 +172,7 @@ public class OCSSWRemote extends OCSSW {
                     pm.beginTask("Uploading file '" + fileName + "' to the remote server ", 10);
 
                     pm.worked(1);
-                    final FileDataBodyPart fileDataBodyPart = new FileDataBodyPart("file", new File(fileName));
-                    final MultiPart multiPart = new FormDataMultiPart()
-                            //.field("ifileName", ifileName)
-                            .bodyPart(fileDataBodyPart);
-                    Response response = target.path("fileServices").path("uploadClientFile").path(jobId).request().post(Entity.entity(multiPart, MediaType.MULTIPART_FORM_DATA_TYPE));
-
-                    if (response.getStatus() == Response.ok().build().getStatus()) {
+                    if (fileUploader.uploadFiles(jobId, Collections.singletonList(fileName), pm) != null) {
                         ifileUploadSuccess = true;
                     }
                     return null;
@@ -216,6 +206,9 @@ public class OCSSWRemote extends OCSSW {
     }
 
     public boolean fileExistsOnServer(String fileName) {
+        if (fileUploader.isUploaded(jobId, fileName)) {
+            return true;
+        }
         String fileNameWithoutPath = fileName.substring(fileName.lastIndexOf(File.separator) + 1);
         Response response = ocsswClient.getServicePathForFileVerification(jobId).queryParam("fileName", fileNameWithoutPath).request().get();
         int responseCode = response.getStatus();
@@ -246,50 +239,23 @@ public class OCSSWRemote extends OCSSW {
             e.printStackTrace();
         }
 
-        int fileCount = 0;
         while (scanner.hasNextLine()) {
-            fileCount++;
-            fileList.add(scanner.nextLine());
-        }
-        scanner.close();
-
-        pm.beginTask("Uploading " + fileCount + " files to the remote server ...", fileCount);
-
-        FileDataBodyPart fileDataBodyPart;
-        MultiPart multiPart;
-        Response response;
-
-        boolean fileUploadSuccess = true;
-
-        int numberOfTasksWorked = 1;
-
-        for (String nextFileName : fileList) {
-            if (!fileExistsOnServer(nextFileName)) {
-
-                pm.setSubTaskName("Uploading " + nextFileName + " to the remote server ...");
-
-                fileDataBodyPart = new FileDataBodyPart("file", new File(nextFileName));
-                multiPart = new FormDataMultiPart()
-                        //.field("ifileName", ifileName)
-                        .bodyPart(fileDataBodyPart);
-                response = target.path("fileServices").path("uploadClientFile").path(jobId).request().post(Entity.entity(multiPart, MediaType.MULTIPART_FORM_DATA_TYPE));
-                if (response.getStatus() == Response.ok().build().getStatus()) {
-                    fileUploadSuccess = fileUploadSuccess & true;
-                    sb.append(nextFileName.substring(nextFileName.lastIndexOf(File.separator) + 1) + "\n");
-                } else {
-                    fileUploadSuccess = fileUploadSuccess & false;
-                }
-                pm.worked(numberOfTasksWorked++);
+            String nextFileName = scanner.nextLine();
+            if (nextFileName.trim().length() > 0) {
+                fileList.add(nextFileName.trim());
             }
         }
-        String fileNames = sb.toString();
-
+        scanner.close();
 
-        if (fileUploadSuccess) {
-            return fileNames;
-        } else {
+        // files the server already has are skipped by the uploader, all others are sent concurrently
+        List<String> uploadedFileList = fileUploader.uploadFiles(jobId, fileList, pm);
+        if (uploadedFileList == null) {
             return null;
         }
+        for (String nextFileName : uploadedFileList) {
+            sb.append(nextFileName.substring(nextFileName.lastIndexOf(File.separator) + 1) + "\n");
+        }
+        return sb.toString();
     }
 
 
@@ -490,7 +456,7 @@ public class OCSSWRemote extends OCSSW {
 
                     String processStatus = "-100";
                     while (!serverProcessStarted) {
-                        processStatus = target.path("ocssw").path("processStatus").path(jobId).request().get(String.class);
+                        processStatus = waitForProcessStatusChange(processStatus);
                         switch (processStatus) {
                             case PROCESS_STATUS_NONEXIST:
                                 serverProcessStarted = false;
@@ -508,11 +474,6 @@ public class OCSSWRemote extends OCSSW {
                                 serverProcessStarted = true;
                                 break;
                         }
-                        try {
-                            TimeUnit.SECONDS.sleep(1);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
                     }
                 } else {
                     setProcessExitValue(1);
@@ -536,7 +497,7 @@ public class OCSSWRemote extends OCSSW {
 
         String processStatus = "-100";
         while (!serverProcessCompleted) {
-            processStatus = target.path("ocssw").path("processStatus").path(jobId).request().get(String.class);
+            processStatus = waitForProcessStatusChange(processStatus);
             switch (processStatus) {
                 case PROCESS_STATUS_NONEXIST:
                     serverProcessCompleted = false;
@@ -553,11 +514,6 @@ public class OCSSWRemote extends OCSSW {
                     serverProcessCompleted = true;
                     break;
             }
-            try {
-                TimeUnit.SECONDS.sleep(1);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
         }
         return seadasProcess;
     }
@@ -579,7 +535,7 @@ public class OCSSWRemote extends OCSSW {
 
         String processStatus = PROCESS_STATUS_NONEXIST;
         while (!serverProcessCompleted) {
-            processStatus = target.path("ocssw").path("processStatus").path(jobId).request().get(String.class);
+            processStatus = waitForProcessStatusChange(processStatus);
             switch (processStatus) {
                 case PROCESS_STATUS_NONEXIST:
                     serverProcessCompleted = false;
@@ -598,11 +554,30 @@ public class OCSSWRemote extends OCSSW {
                 default:
                     serverProcessCompleted = false;
             }
+        }
+    }
+
+    /**
+     * Waits for the process status of the job to change. The server answers as soon as the status differs from
+     * the given one, or with the unchanged status after {@link #PROCESS_STATUS_WAIT_SECONDS} seconds.
+     *
+     * @param knownStatus the status last seen
+     * @return the current status
+     */
+    private String waitForProcessStatusChange(String knownStatus) {
+        try {
+            return target.path("ocssw").path("waitForProcessStatus").path(jobId)
+                    .queryParam("status", knownStatus)
+                    .queryParam("timeout", PROCESS_STATUS_WAIT_SECONDS)
+                    .request(MediaType.TEXT_PLAIN_TYPE).get(String.class);
+        } catch (NotFoundException e) {
+            // a server without the waitForProcessStatus service
             try {
-                TimeUnit.SECONDS.sleep(2);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                TimeUnit.SECONDS.sleep(1);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
             }
+            return target.path("ocssw").path("processStatus").path(jobId).request().get(String.class);
         }
     }
 
@@ -660,9 +635,7 @@ public class OCSSWRemote extends OCSSW {
                 while (st.hasMoreTokens()) {
                     fileNameWithFullPath = st.nextToken();
                     fileNameWithoutPath = fileNameWithFullPath.substring(fileNameWithFullPath.lastIndexOf(File.separator) + 1);
-                    Response response = target.path("fileServices").path("downloadFile").path(jobId).path(fileNameWithoutPath).request().get(Response.class);
-                    InputStream responceStream = (InputStream) response.getEntity();
-                    SeadasFileUtils.writeToFile(responceStream, fileNameWithFullPath);
+                    RemoteFileDownloader.downloadFile(target.path("fileServices").path("downloadFile").path(jobId).path(fileNameWithoutPath), fileNameWithFullPath);
                 }
                 return null;
             }
@@ -713,9 +686,9 @@ public class OCSSWRemote extends OCSSW {
                     ofileName = ofileFullPathName.substring(ofileFullPathName.lastIndexOf(File.separator) + 1);
                     SeadasLogger.getLogger().info("file name to be downloaded: " + ofileName);
                     SeadasLogger.getLogger().info("file name path to be downloaded: " + ofileFullPathName);
-                    Response response = target.path("fileServices").path("downloadFile").path(jobId).path(ofileName).request().get(Response.class);
-                    InputStream responceStream = (InputStream) response.getEntity();
-                    SeadasFileUtils.writeToFile(responceStream, ofileDir + File.separator + ofileFullPathName);
+                    if (!RemoteFileDownloader.downloadFile(target.path("fileServices").path("downloadFile").path(jobId).path(ofileName), ofileDir + File.separator + ofileFullPathName)) {
+                        return false;
+                    }
                     SeadasLogger.getLogger().info("file destination path: " + ofileFullPathName);
 
                 }
@@ -741,7 +714,7 @@ public class OCSSWRemote extends OCSSW {
 
         String processStatus = "-100";
         while (!serverProcessStarted) {
-            processStatus = target.path("ocssw").path("processStatus").path(jobId).request().get(String.class);
+            processStatus = waitForProcessStatusChange(processStatus);
             switch (processStatus) {
                 case PROCESS_STATUS_NONEXIST:
                     serverProcessStarted = false;
@@ -761,11 +734,6 @@ public class OCSSWRemote extends OCSSW {
                 default:
                     serverProcessStarted = false;
             }
-            try {
-                TimeUnit.SECONDS.sleep(1);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
         }
         return seadasProcess;
     }
@@ -805,10 +773,8 @@ public class OCSSWRemote extends OCSSW {
 
                     pm.setSubTaskName("Downloading file '" + ofileName + " to " + ofileDir);
 
-                    Response response = target.path("fileServices").path("downloadMLPOutputFile").path(jobId).path(ofileName).request().get(Response.class);
-                    InputStream responceStream = (InputStream) response.getEntity();
                     ofileFullPathName = ofileDir + File.separator + ofileName;
-                    SeadasFileUtils.writeToFile(responceStream, ofileFullPathName);
+                    RemoteFileDownloader.downloadFile(target.path("fileServices").path("downloadMLPOutputFile").path(jobId).path(ofileName), ofileFullPathName);
                     pm.worked(numberOfTasksWorked++);
                 }
                 return null;
@@ -823,9 +789,7 @@ public class OCSSWRemote extends OCSSW {
         setCommandArray((String[]) commandArrayJsonObject.asJsonArray().toArray());
         Response response = target.path("ocssw").path("executeOcsswProgram").path(jobId).request().put(Entity.entity(commandArrayJsonObject, MediaType.APPLICATION_JSON_TYPE));
         if (response.getStatus() == Response.Status.OK.getStatusCode()) {
-            Response output = target.path("fileServices").path("downloadFile").path(jobId).request().get(Response.class);
-            final InputStream responseStream = (InputStream) output.getEntity();
-            SeadasFileUtils.writeToFile(responseStream, ofileName);
+            RemoteFileDownloader.downloadFile(target.path("fileServices").path("downloadFile").path(jobId), ofileName);
         }
         Process Process = new SeadasProcess(ocsswInfo, jobId);
         return Process;
@@ -0,0 +1,245 @@
+package gov.nasa.gsfc.seadas.ocssw;
+
+import gov.nasa.gsfc.seadas.processing.common.SeadasLogger;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads files from the file services of the OCSSW remote server.
+ * <p/>
+ * A file is written to a ".part" file next to its destination and moved into place when it is complete.
+ * If the server supports byte ranges, an interrupted transfer is resumed from the end of the ".part" file,
+ * both when a request fails and when a download left over from an earlier session is repeated. A ".part" file
+ * left over is only resumed if it has been written in order and the entity tag of the file on the server, kept
+ * in a ".part.etag" file, is still the same; the server is asked to send the whole file if it has changed since.
+ * Large files are fetched in several byte ranges at once; as the ranges are written out of order, such a
+ * ".part" file is never resumed.
+ */
+class RemoteFileDownloader {
+
+    public static final String PART_FILE_EXTENSION = ".part";
+    public static final String ENTITY_TAG_FILE_EXTENSION = ".etag";
+
+    // files at least this large are fetched in parallel byte ranges
+    private static final long PARALLEL_DOWNLOAD_THRESHOLD = 64L * 1024 * 1024;
+    private static final int PARALLEL_DOWNLOAD_COUNT = 4;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private RemoteFileDownloader() {
+    }
+
+    /**
+     * Downloads a file.
+     *
+     * @param fileTarget the target of the download endpoint
+     * @param fileName   the full path of the local file to write
+     * @return true if the file has been downloaded completely
+     */
+    static boolean downloadFile(WebTarget fileTarget, String fileName) {
+        File file = new File(fileName);
+        File partFile = new File(fileName + PART_FILE_EXTENSION);
+        File entityTagFile = new File(partFile.getPath() + ENTITY_TAG_FILE_EXTENSION);
+        try {
+            Response headResponse = fileTarget.request().head();
+            long fileLength = headResponse.getLength();
+            boolean acceptsRanges = "bytes".equals(headResponse.getHeaderString("Accept-Ranges"));
+            String entityTag = headResponse.getHeaderString("ETag");
+            int status = headResponse.getStatus();
+            headResponse.close();
+            if (status != Response.Status.OK.getStatusCode()) {
+                SeadasLogger.getLogger().warning("file " + file.getName() + " can not be downloaded: " + status);
+                return false;
+            }
+
+            // a part file is resumable only if it was written in order from the same version of the file
+            boolean resumable = acceptsRanges && fileLength >= 0 && entityTag != null
+                    && partFile.isFile() && partFile.length() <= fileLength
+                    && entityTag.equals(readEntityTag(entityTagFile));
+            if (!resumable) {
+                Files.deleteIfExists(entityTagFile.toPath());
+                Files.deleteIfExists(partFile.toPath());
+            }
+
+            if (!acceptsRanges || fileLength < 0) {
+                downloadWholeFile(fileTarget, partFile);
+            } else if (fileLength >= PARALLEL_DOWNLOAD_THRESHOLD && !resumable) {
+                downloadRangesInParallel(fileTarget, partFile, fileLength, entityTag);
+            } else {
+                long resumePosition = resumable ? partFile.length() : 0;
+                if (resumePosition > 0) {
+                    SeadasLogger.getLogger().info("resuming download of " + file.getName() + " at byte " + resumePosition);
+                } else if (entityTag != null) {
+                    Files.write(entityTagFile.toPath(), entityTag.getBytes(StandardCharsets.UTF_8));
+                }
+                FileChannel fileChannel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                try {
+                    fileChannel.truncate(resumePosition);
+                    downloadRange(fileTarget, fileChannel, resumePosition, fileLength - 1, entityTag);
+                } finally {
+                    fileChannel.close();
+                }
+            }
+            Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(entityTagFile.toPath());
+            return true;
+        } catch (IOException | ProcessingException e) {
+            SeadasLogger.getLogger().warning("download of " + file.getName() + " failed: " + e.getMessage());
+            if (e instanceof FileChangedException) {
+                partFile.delete();
+                entityTagFile.delete();
+            }
+            return false;
+        }
+    }
+
+    private static void downloadWholeFile(WebTarget fileTarget, File partFile) throws IOException {
+        Response response = fileTarget.request().get();
+        try {
+            checkStatus(response, Response.Status.OK);
+            InputStream inputStream = response.readEntity(InputStream.class);
+            try {
+                Files.copy(inputStream, partFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                inputStream.close();
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    private static String readEntityTag(File entityTagFile) {
+        try {
+            return entityTagFile.isFile() ? new String(Files.readAllBytes(entityTagFile.toPath()), StandardCharsets.UTF_8) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void downloadRangesInParallel(final WebTarget fileTarget, File partFile, long fileLength, final String entityTag) throws IOException {
+        final FileChannel fileChannel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        ExecutorService executorService = Executors.newFixedThreadPool(PARALLEL_DOWNLOAD_COUNT);
+        boolean complete = false;
+        try {
+            long rangeLength = (fileLength + PARALLEL_DOWNLOAD_COUNT - 1) / PARALLEL_DOWNLOAD_COUNT;
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (long first = 0; first < fileLength; first += rangeLength) {
+                final long rangeFirst = first;
+                final long rangeLast = Math.min(first + rangeLength, fileLength) - 1;
+                futures.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        downloadRange(fileTarget, fileChannel, rangeFirst, rangeLast, entityTag);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("download interrupted", e);
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                }
+            }
+            complete = true;
+        } finally {
+            executorService.shutdownNow();
+            fileChannel.close();
+            if (!complete) {
+                // the ranges have been written out of order, so the part file can not be resumed
+                partFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes a byte range of the remote file to the same position of a local file. A failed request
+     * is repeated for the bytes still missing.
+     *
+     * @param entityTag the entity tag of the file the other bytes of the local file are from, or null
+     * @throws IOException if the range can not be downloaded, or if the file on the server has changed
+     */
+    private static void downloadRange(WebTarget fileTarget, FileChannel fileChannel, long first, long last, String entityTag) throws IOException {
+        long position = first;
+        int attempt = 0;
+        while (position <= last) {
+            Response response = null;
+            try {
+                Invocation.Builder request = fileTarget.request().header("Range", "bytes=" + position + "-" + last);
+                if (entityTag != null) {
+                    request.header("If-Range", entityTag);
+                }
+                response = request.get();
+                if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+                    // the server ignored the range, as the file has changed since the download started
+                    throw new FileChangedException();
+                }
+                checkStatus(response, Response.Status.PARTIAL_CONTENT);
+                InputStream inputStream = response.readEntity(InputStream.class);
+                ReadableByteChannel inputChannel = Channels.newChannel(inputStream);
+                try {
+                    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                    while (position <= last && inputChannel.read(buffer) != -1) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            position += fileChannel.write(buffer, position);
+                        }
+                        buffer.clear();
+                    }
+                } finally {
+                    inputChannel.close();
+                }
+                if (position <= last) {
+                    throw new IOException("connection closed at byte " + position);
+                }
+            } catch (FileChangedException e) {
+                throw e;
+            } catch (IOException | ProcessingException e) {
+                if (++attempt >= MAX_ATTEMPTS) {
+                    throw e instanceof IOException ? (IOException) e : new IOException(e);
+                }
+                SeadasLogger.getLogger().info("retrying download at byte " + position + ": " + e.getMessage());
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+            }
+        }
+    }
+
+    private static class FileChangedException extends IOException {
+        private FileChangedException() {
+            super("file has changed on the server");
+        }
+    }
+
+    private static void checkStatus(Response response, Response.Status expectedStatus) throws IOException {
+        if (response.getStatus() != expectedStatus.getStatusCode()) {
+            throw new IOException("unexpected server response " + response.getStatus());
+        }
+    }
+}
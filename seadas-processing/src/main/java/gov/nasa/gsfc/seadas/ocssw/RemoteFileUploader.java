@@ -0,0 +1,306 @@
+package gov.nasa.gsfc.seadas.ocssw;
+
+import com.bc.ceres.core.ProgressMonitor;
+import gov.nasa.gsfc.seadas.processing.common.SeadasLogger;
+
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Uploads input files to the file services of the OCSSW remote server.
+ * <p/>
+ * The server is first asked which of the files it already has, comparing content hashes, so those are
+ * not sent again. The other files are sent in chunks by a bounded pool of workers, several files at once.
+ * An interrupted upload is resumed at the last chunk the server has received, and the server checks the
+ * hash of each file once all its chunks have arrived.
+ */
+class RemoteFileUploader {
+
+    public static final String FILE_HASH_ALGORITHM = "SHA-256";
+    // the upload state reported by the server for a file it already has
+    public static final long UPLOAD_COMPLETE = -1;
+
+    private static final int UPLOAD_THREAD_COUNT = 4;
+    private static final long CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final int MAX_ATTEMPTS = 5;
+
+    // shared by all uploaders, so the number of concurrent transfers stays bounded
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(UPLOAD_THREAD_COUNT, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "OCSSW file upload");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final WebTarget fileServicesTarget;
+    // the hashes of local files, keyed by path, length and modification time
+    private final Map<String, String> fileHashes;
+    // the files known to be on the server, keyed by job and path, with their length, modification time and hash
+    private final Map<String, String> uploadedFiles;
+
+    RemoteFileUploader(WebTarget fileServicesTarget) {
+        this.fileServicesTarget = fileServicesTarget;
+        this.fileHashes = new ConcurrentHashMap<>();
+        this.uploadedFiles = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Tells whether a file has been uploaded for a job and has not been modified since, without asking the server.
+     */
+    boolean isUploaded(String jobId, String fileName) {
+        File file = new File(fileName);
+        String uploadedFile = uploadedFiles.get(getUploadedFileKey(jobId, file));
+        return uploadedFile != null && uploadedFile.startsWith(getFileStateKey(file) + ":");
+    }
+
+    /**
+     * Uploads files for a job, skipping the ones the server already has.
+     *
+     * @param jobId     the job
+     * @param fileNames the full paths of the local files
+     * @param pm        the progress monitor, worked once for each file
+     * @return the files which have actually been sent, or null if any of the files could not be uploaded, e.g.
+     * because two different files have the same name
+     */
+    List<String> uploadFiles(final String jobId, List<String> fileNames, ProgressMonitor pm) {
+        if (pm == null) {
+            pm = ProgressMonitor.NULL;
+        }
+        pm.beginTask("Uploading " + fileNames.size() + " files to the remote server ...", 2 * fileNames.size());
+        try {
+            // hash all files in parallel, the server is asked about all of them at once
+            Map<String, File> filesByName = new LinkedHashMap<>();
+            Map<String, String> hashesByName = new HashMap<>();
+            CompletionService<String[]> hashCompletionService = new ExecutorCompletionService<>(executorService);
+            for (String fileName : fileNames) {
+                final File file = new File(fileName);
+                if (!file.isFile()) {
+                    SeadasLogger.getLogger().warning("file " + fileName + " does not exist");
+                    return null;
+                }
+                File sameNameFile = filesByName.get(file.getName());
+                if (sameNameFile != null && !sameNameFile.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+                    // the files of a job share one directory on the server
+                    SeadasLogger.getLogger().warning("file " + fileName + " has the same name as " + sameNameFile.getPath()
+                            + " and cannot be uploaded for the same job");
+                    return null;
+                }
+                if (sameNameFile == null) {
+                    filesByName.put(file.getName(), file);
+                    hashCompletionService.submit(new Callable<String[]>() {
+                        @Override
+                        public String[] call() throws IOException {
+                            return new String[]{file.getName(), getFileHash(file)};
+                        }
+                    });
+                }
+            }
+            pm.setSubTaskName("Computing file hashes ...");
+            for (int i = 0; i < filesByName.size(); i++) {
+                String[] fileHash = hashCompletionService.take().get();
+                hashesByName.put(fileHash[0], fileHash[1]);
+                pm.worked(1);
+            }
+
+            JsonObjectBuilder jsonObjectBuilder = Json.createObjectBuilder();
+            for (Map.Entry<String, String> hashByName : hashesByName.entrySet()) {
+                jsonObjectBuilder.add(hashByName.getKey(), hashByName.getValue());
+            }
+            JsonObject uploadStatus = fileServicesTarget.path("uploadStatus").path(jobId).request(MediaType.APPLICATION_JSON_TYPE)
+                    .post(Entity.entity(jsonObjectBuilder.build(), MediaType.APPLICATION_JSON_TYPE), JsonObject.class);
+
+            final List<String> uploadedFileNames = new ArrayList<>();
+            CompletionService<Boolean> uploadCompletionService = new ExecutorCompletionService<>(executorService);
+            int uploadCount = 0;
+            for (Map.Entry<String, File> fileByName : filesByName.entrySet()) {
+                final File file = fileByName.getValue();
+                final String hash = hashesByName.get(fileByName.getKey());
+                final long offset = uploadStatus.containsKey(file.getName()) ? uploadStatus.getJsonNumber(file.getName()).longValue() : 0;
+                if (offset == UPLOAD_COMPLETE) {
+                    setUploaded(jobId, file, hash);
+                    pm.worked(1);
+                    continue;
+                }
+                uploadedFileNames.add(file.getPath());
+                uploadCount++;
+                uploadCompletionService.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return uploadFile(jobId, file, hash, offset);
+                    }
+                });
+            }
+            boolean uploadSuccess = true;
+            for (int i = 0; i < uploadCount; i++) {
+                pm.setSubTaskName("Uploading " + (uploadCount - i) + " files to the remote server ...");
+                uploadSuccess &= uploadCompletionService.take().get();
+                pm.worked(1);
+            }
+            return uploadSuccess ? uploadedFileNames : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | ProcessingException | WebApplicationException e) {
+            SeadasLogger.getLogger().warning("file upload failed: " + e.getMessage());
+            return null;
+        } finally {
+            pm.done();
+        }
+    }
+
+    /**
+     * Sends a file in chunks, starting at the given offset, and asks the server to check the complete file.
+     */
+    private boolean uploadFile(String jobId, File file, String hash, long offset) {
+        WebTarget chunkTarget = fileServicesTarget.path("uploadFileChunk").path(jobId).path(file.getName());
+        int attempt = 0;
+        while (attempt < MAX_ATTEMPTS) {
+            try {
+                long fileLength = file.length();
+                while (offset < fileLength) {
+                    long chunkLength = Math.min(CHUNK_SIZE, fileLength - offset);
+                    Response response = chunkTarget.queryParam("offset", offset).request(MediaType.TEXT_PLAIN_TYPE)
+                            .put(Entity.entity(createChunkOutput(file, offset, chunkLength), MediaType.APPLICATION_OCTET_STREAM_TYPE));
+                    try {
+                        if (response.getStatus() == Response.Status.OK.getStatusCode()
+                                || response.getStatus() == Response.Status.CONFLICT.getStatusCode()) {
+                            // the server reports how much it has, continue from there
+                            offset = Long.parseLong(response.readEntity(String.class).trim());
+                        } else {
+                            throw new IOException("unexpected server response " + response.getStatus());
+                        }
+                    } finally {
+                        response.close();
+                    }
+                }
+                Response response = fileServicesTarget.path("completeUpload").path(jobId).path(file.getName())
+                        .queryParam("hash", hash).request().post(Entity.text(""));
+                int status = response.getStatus();
+                response.close();
+                if (status == Response.Status.OK.getStatusCode()) {
+                    setUploaded(jobId, file, hash);
+                    return true;
+                }
+                // the server dropped the content, start again
+                SeadasLogger.getLogger().info("upload of " + file.getName() + " was not accepted: " + status);
+                offset = 0;
+            } catch (IOException | ProcessingException | NumberFormatException e) {
+                SeadasLogger.getLogger().info("retrying upload of " + file.getName() + " at byte " + offset + ": " + e.getMessage());
+                offset = getUploadOffset(jobId, file, hash);
+            }
+            attempt++;
+        }
+        return false;
+    }
+
+    private long getUploadOffset(String jobId, File file, String hash) {
+        try {
+            JsonObject uploadStatus = fileServicesTarget.path("uploadStatus").path(jobId).request(MediaType.APPLICATION_JSON_TYPE)
+                    .post(Entity.entity(Json.createObjectBuilder().add(file.getName(), hash).build(), MediaType.APPLICATION_JSON_TYPE), JsonObject.class);
+            JsonNumber offset = uploadStatus.getJsonNumber(file.getName());
+            return offset != null && offset.longValue() != UPLOAD_COMPLETE ? offset.longValue() : 0;
+        } catch (ProcessingException | WebApplicationException e) {
+            return 0;
+        }
+    }
+
+    private static StreamingOutput createChunkOutput(final File file, final long offset, final long length) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                try {
+                    WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+                    long position = offset;
+                    while (position < offset + length) {
+                        position += fileChannel.transferTo(position, offset + length - position, outputChannel);
+                    }
+                    outputStream.flush();
+                } finally {
+                    fileChannel.close();
+                }
+            }
+        };
+    }
+
+    private void setUploaded(String jobId, File file, String hash) {
+        uploadedFiles.put(getUploadedFileKey(jobId, file), getFileStateKey(file) + ":" + hash);
+    }
+
+    private String getFileHash(File file) throws IOException {
+        String key = getFileStateKey(file);
+        String hash = fileHashes.get(key);
+        if (hash == null) {
+            hash = computeFileHash(file);
+            fileHashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    private static String computeFileHash(File file) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(FILE_HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            byte[] bytes = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(bytes)) != -1) {
+                messageDigest.update(bytes, 0, read);
+            }
+        } finally {
+            inputStream.close();
+        }
+        StringBuilder hash = new StringBuilder();
+        for (byte b : messageDigest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    private static String getUploadedFileKey(String jobId, File file) {
+        return jobId + ":" + file.getAbsolutePath();
+    }
+
+    private static String getFileStateKey(File file) {
+        return file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    }
+}
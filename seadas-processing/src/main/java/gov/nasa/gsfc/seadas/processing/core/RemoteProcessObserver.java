@@ -4,19 +4,25 @@ import com.bc.ceres.core.ProgressMonitor;
 import gov.nasa.gsfc.seadas.OCSSWInfo;
 import gov.nasa.gsfc.seadas.ocssw.OCSSWClient;
 
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.WebTarget;
 import java.io.*;
-import java.net.Socket;
-import java.net.UnknownHostException;
-
-import static gov.nasa.gsfc.seadas.ocssw.OCSSWRemote.PROCESS_STATUS_NONEXIST;
-import static gov.nasa.gsfc.seadas.ocssw.OCSSWRemote.PROCESS_STATUS_STARTED;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Created by aabduraz on 9/12/17.
+ * <p/>
+ * The lines of the server process are read from the processLog service of the server, which streams them per job
+ * as they are written and ends the streams when the process has ended. The server also ends the stream of a reader
+ * falling too far behind, which is then read again from the next line while the process is running.
  */
 public class RemoteProcessObserver extends ProcessObserver {
 
+    private static final int MAX_CONNECTION_ATTEMPTS = 5;
+    private static final String PROCESS_STATUS_NONEXIST = "-100";
+    private static final String PROCESS_STATUS_STARTED = "-1";
+
     OCSSWInfo ocsswInfo;
     WebTarget target;
     private String jobId;
@@ -131,44 +137,58 @@ public class RemoteProcessObserver extends ProcessObserver {
         }
 
         private void read() throws IOException {
-            final InputStream inputStream = type.equals("stdout") ? readProcessStream(ocsswInfo.getProcessInputStreamPort()) : readProcessStream(ocsswInfo.getProcessErrorStreamPort());
-            final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            try {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    fireLineRead(line);
+            // the number of lines read, to continue after them if the connection breaks
+            long lineCount = 0;
+            int attempt = 0;
+            String processStatus;
+            while (true) {
+                long firstLine = lineCount;
+                try {
+                    final InputStream inputStream = readProcessStream(lineCount);
+                    final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+                    try {
+                        String line;
+                        while ((line = reader.readLine()) != null) {
+                            fireLineRead(line);
+                            lineCount++;
+                        }
+                    } finally {
+                        reader.close();
+                    }
+                } catch (NotFoundException e) {
+                    // the server has no log of the job, e.g. one that ended long ago
+                    processStatus = readProcessStatus();
+                    break;
+                } catch (IOException | ProcessingException e) {
+                    if (++attempt >= MAX_CONNECTION_ATTEMPTS) {
+                        throw e instanceof IOException ? (IOException) e : new IOException(e);
+                    }
+                    continue;
+                }
+                // the server sets the status before ending the stream of a finished process, so a stream ended
+                // while the process is running was ended because this reader fell behind
+                processStatus = readProcessStatus();
+                if (!PROCESS_STATUS_STARTED.equals(processStatus) && !PROCESS_STATUS_NONEXIST.equals(processStatus)) {
+                    break;
+                }
+                if (lineCount == firstLine && ++attempt >= MAX_CONNECTION_ATTEMPTS) {
+                    break;
                 }
-            } finally {
-                reader.close();
             }
-            String processStatus = target.path("ocssw").path("processStatus").path(jobId).request().get(String.class);
             setProcessExitValue(new Integer(processStatus).intValue());
         }
 
+        private String readProcessStatus() {
+            return target.path("ocssw").path("processStatus").path(jobId).request().get(String.class);
+        }
 
-        private InputStream readProcessStream(int portNumber) {
-            String hostName = "127.0.0.1";
-            InputStream inputStream = null;
-            boolean serverProcessStarted = false;
-            try {
-                String processStatus = "-100";
-                while (!serverProcessStarted) {
-                    processStatus = target.path("ocssw").path("processStatus").path(jobId).request().get(String.class);
-                    if ( ! processStatus.equals(PROCESS_STATUS_NONEXIST ) ) {
-                        serverProcessStarted = true;
-                    }
-                }
-                Socket echoSocket = new Socket(hostName, portNumber);
-                inputStream = echoSocket.getInputStream();
-            } catch (UnknownHostException e) {
-                System.err.println("Unknown host " + hostName);
-                e.printStackTrace();
-            } catch (IOException e) {
-                System.err.println("Couldn't get I/O for the connection to " +
-                        hostName + " at port number " + portNumber);
-                e.printStackTrace();
-            }
-            return inputStream;
+        /**
+         * Opens the stream of the process lines starting at the given line. The server holds the request until
+         * the process writes its lines, so there is no need to wait for the process to start.
+         */
+        private InputStream readProcessStream(long firstLine) {
+            return target.path("ocssw").path("processLog").path(jobId).path(type)
+                    .queryParam("from", firstLine).request().get(InputStream.class);
         }
 
         protected void fireLineRead(String line) {
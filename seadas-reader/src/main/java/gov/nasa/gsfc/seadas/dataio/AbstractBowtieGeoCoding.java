@@ -21,6 +21,7 @@ import org.esa.beam.framework.dataop.maptransf.Datum;
 import java.awt.*;
 import java.awt.geom.Line2D;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -39,17 +40,24 @@ public abstract class AbstractBowtieGeoCoding extends AbstractGeoCoding {
     protected List<GeoCoding> _gcList;
     protected boolean _cross180;
     protected List<PolyLine> _centerLineList;
-    private int _lastCenterLineIndex;           // index found on the previous search
+    private CenterLineIndex _centerLineIndex;
     private int _smallestValidIndex;
     private int _biggestValidIndex;
     private ProductNode _gridOwner;
 
+    // stripe pixel position reused by each thread, so that per-pixel geo-location does not allocate
+    private static final ThreadLocal<PixelPos> STRIPE_PIXEL_POS = new ThreadLocal<PixelPos>() {
+        @Override
+        protected PixelPos initialValue() {
+            return new PixelPos();
+        }
+    };
+
     /**
      * Constructs geo-coding with MODIS Bowtie correction.
      *
      */
     public AbstractBowtieGeoCoding() {
-        _lastCenterLineIndex = 0;
     }
 
     /**
@@ -102,8 +110,10 @@ public abstract class AbstractBowtieGeoCoding extends AbstractGeoCoding {
         }
         pixelPos.setInvalid();
 
-        final int index = getGeoCodingIndexfor(geoPos);
-        _lastCenterLineIndex = index;
+        final int index = _centerLineIndex.findClosest(geoPos.lon, geoPos.lat);
+        if (index < 0) {
+            return pixelPos;
+        }
         final GeoCoding gc = _gcList.get(index);
         if (gc != null) {
             gc.getPixelPos(geoPos, pixelPos);
@@ -126,14 +136,19 @@ public abstract class AbstractBowtieGeoCoding extends AbstractGeoCoding {
      * @return the geographical position as lat/lon in the coodinate system determined by {@link #getDatum()}
      */
     public GeoPos getGeoPos(PixelPos pixelPos, GeoPos geoPos) {
-        final int index = computeIndex(pixelPos);
+        if (geoPos == null) {
+            geoPos = new GeoPos();
+        }
+        return getGeoPos(pixelPos.x, pixelPos.y, geoPos, STRIPE_PIXEL_POS.get());
+    }
+
+    private GeoPos getGeoPos(float x, float y, GeoPos geoPos, PixelPos stripePixelPos) {
+        final int index = computeIndex(y);
         final GeoCoding gc = _gcList.get(index);
         if (gc != null) {
-            return gc.getGeoPos(new PixelPos(pixelPos.x, pixelPos.y - getScanlineHeight() * index + getScanlineOffset()), geoPos);
+            stripePixelPos.setLocation(x, y - getScanlineHeight() * index + getScanlineOffset());
+            return gc.getGeoPos(stripePixelPos, geoPos);
         } else {
-            if (geoPos == null) {
-                geoPos = new GeoPos();
-            }
             geoPos.setInvalid();
             return geoPos;
         }
@@ -163,6 +178,7 @@ public abstract class AbstractBowtieGeoCoding extends AbstractGeoCoding {
             }
         }
         _gcList.clear();
+        _centerLineIndex = null;
     }
 
     /**
@@ -189,6 +205,14 @@ public abstract class AbstractBowtieGeoCoding extends AbstractGeoCoding {
         }
     }
 
+    /**
+     * Builds the spatial index used by {@link #getPixelPos} to find the scan stripe of a geographical position.
+     * Must be called once all stripe geo-codings and center lines have been added.
+     */
+    protected void initCenterLineIndex() {
+        _centerLineIndex = new CenterLineIndex(_centerLineList);
+    }
+
     protected static PolyLine createCenterPolyLine(GeoCoding geoCoding, final int sceneWidth,
                                                  final int sceneHeight) {
 
@@ -213,8 +237,8 @@ public abstract class AbstractBowtieGeoCoding extends AbstractGeoCoding {
         return polyLine;
     }
 
-    private int computeIndex(PixelPos pixelPos) {
-        final int y = (int) pixelPos.getY() + getScanlineOffset();
+    private int computeIndex(float pixelY) {
+        final int y = (int) pixelY + getScanlineOffset();
         final int index = y / getScanlineHeight();
         if (index < _smallestValidIndex) {
             return _smallestValidIndex;
@@ -225,53 +249,6 @@ public abstract class AbstractBowtieGeoCoding extends AbstractGeoCoding {
         }
     }
 
-    private int getGeoCodingIndexfor(final GeoPos geoPos) {
-        int index = _lastCenterLineIndex;
-        index = getNextCenterLineIndex(index, 1);
-        final PolyLine centerLine1 = _centerLineList.get(index);
-        double v = centerLine1.getDistance(geoPos.lon, geoPos.lat);
-        int vIndex = index;
-
-        int direction = -1;
-        if (index == _smallestValidIndex) {
-            direction = +1;
-        }
-        while (true) {
-            index += direction;
-            index = getNextCenterLineIndex(index, direction);
-            final PolyLine centerLine2 = _centerLineList.get(index);
-            final double v2 = centerLine2.getDistance(geoPos.lon, geoPos.lat);
-            if (v2 < v) {
-                if (index == _smallestValidIndex || index == _biggestValidIndex) {
-                    return index;
-                }
-                v = v2;
-                vIndex = index;
-            } else if (direction == -1) {
-                index++;
-                direction = +1;
-                index = getNextCenterLineIndex(index, direction);
-                if (index == _biggestValidIndex) {
-                    return index;
-                }
-            } else if (direction == +1) {
-                return vIndex;
-            }
-        }
-    }
-
-    private int getNextCenterLineIndex(int index, final int direction) {
-        while (_centerLineList.get(index) == null) {
-            index += direction;
-            if (index < _smallestValidIndex) {
-                index = _biggestValidIndex;
-            } else if (index > _biggestValidIndex) {
-                index = _smallestValidIndex;
-            }
-        }
-        return index;
-    }
-
     static int calculateStartLine(int scanlineHeight, Rectangle region) {
         return region.y / scanlineHeight * scanlineHeight;
     }
@@ -310,6 +287,10 @@ public abstract class AbstractBowtieGeoCoding extends AbstractGeoCoding {
             _y1 = y;
         }
 
+        List<Line2D.Float> getLines() {
+            return _lines != null ? _lines : Collections.<Line2D.Float>emptyList();
+        }
+
         public double getDistance(final float x, final float y) {
             double smallestDistPoints = Double.MAX_VALUE;
             double pointsDist = smallestDistPoints;
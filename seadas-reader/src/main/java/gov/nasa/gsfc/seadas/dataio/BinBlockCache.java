@@ -0,0 +1,81 @@
+package gov.nasa.gsfc.seadas.dataio;
+
+import ucar.nc2.Variable;
+
+import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache of decoded bin list blocks of a level-3 binned product.
+ * <p/>
+ * A block is the contiguous run of bins covering the rows of one tile. All tiles in the same
+ * tile row share a block, so each part of the bin list is read and decoded only once while the
+ * product is tiled. The cache is bounded by the total number of bins it holds.
+ */
+class BinBlockCache {
+
+    private final long maxBins;
+    private final LinkedHashMap<Key, Object> blocks = new LinkedHashMap<Key, Object>(16, 0.75f, true);
+    private long cachedBins;
+
+    BinBlockCache(long maxBins) {
+        this.maxBins = maxBins;
+    }
+
+    synchronized Object get(Variable variable, int offset, int length) {
+        return blocks.get(new Key(variable, offset, length));
+    }
+
+    synchronized void put(Variable variable, int offset, int length, Object data) {
+        final Object previous = blocks.put(new Key(variable, offset, length), data);
+        if (previous != null) {
+            cachedBins -= Array.getLength(previous);
+        }
+        cachedBins += Array.getLength(data);
+        final Iterator<Map.Entry<Key, Object>> iterator = blocks.entrySet().iterator();
+        while (cachedBins > maxBins && blocks.size() > 1 && iterator.hasNext()) {
+            cachedBins -= Array.getLength(iterator.next().getValue());
+            iterator.remove();
+        }
+    }
+
+    synchronized void clear() {
+        blocks.clear();
+        cachedBins = 0;
+    }
+
+    private static final class Key {
+
+        final Variable variable;
+        final int offset;
+        final int length;
+
+        Key(Variable variable, int offset, int length) {
+            this.variable = variable;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return offset == key.offset && length == key.length && variable == key.variable;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(variable);
+            result = 31 * result + offset;
+            result = 31 * result + length;
+            return result;
+        }
+    }
+}
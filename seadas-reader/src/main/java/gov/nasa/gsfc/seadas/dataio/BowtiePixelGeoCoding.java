@@ -280,6 +280,7 @@ public class BowtiePixelGeoCoding extends AbstractBowtieGeoCoding {
         }
 
         initSmallestAndLargestValidGeocodingIndices();
+        initCenterLineIndex();
     }
 
     private void addStripeGeocode(float[] lats, float[] lons, int y, int stripeW, int stripeH) throws IOException {
@@ -129,7 +129,7 @@ public class BowtiePixelScanGeoCoding implements GeoCoding {
     private void getGeoPosInternal(int pixelX, int pixelY, GeoPos geoPos) {
         if(pixelX >= 0 && pixelX < width && pixelY >= 0 && pixelY < height) {
             int i = pixelY*width + pixelX;
-            if(lats[i] >= -90 && lats[i] <= 90 && lons[i] >= -180 && lons[i] <= 180) {
+            if(isValidGeoPos(i)) {
                 geoPos.setLocation(lats[i], lons[i]);
                 return;
             }
@@ -137,6 +137,10 @@ public class BowtiePixelScanGeoCoding implements GeoCoding {
         geoPos.setInvalid();
     }
 
+    private boolean isValidGeoPos(int i) {
+        return lats[i] >= -90 && lats[i] <= 90 && lons[i] >= -180 && lons[i] <= 180;
+    }
+
     @Override
     public GeoPos getGeoPos(final PixelPos pixelPos, GeoPos geoPos) {
         if (geoPos == null) {
@@ -154,20 +158,14 @@ public class BowtiePixelScanGeoCoding implements GeoCoding {
                 }
                 final float wx = pixelPos.x - (x0 + 0.5f);
                 final float wy = pixelPos.y - (y0 + 0.5f);
-
-                GeoPos d00 = new GeoPos();
-                GeoPos d10 = new GeoPos();
-                GeoPos d01 = new GeoPos();
-                GeoPos d11 = new GeoPos();
-
-                getGeoPosInternal(x0,   y0,   d00);
-                getGeoPosInternal(x0+1, y0,   d10);
-                getGeoPosInternal(x0,   y0+1, d01);
-                getGeoPosInternal(x0 + 1, y0 + 1, d11);
-
-                if(d00.isValid() && d10.isValid() && d01.isValid() && d11.isValid()) {
-                    float lat = MathUtils.interpolate2D(wx, wy, d00.lat, d10.lat, d01.lat, d11.lat);
-                    float lon = GeoCodingFactory.interpolateLon(wx, wy, d00.lon, d10.lon, d01.lon, d11.lon);
+                final int i00 = y0 * width + x0;
+                final int i01 = i00 + width;
+
+                // x0 + 1 and y0 + 1 are inside the scene, x0 and y0 are unless it is a single pixel wide or high
+                if (x0 >= 0 && y0 >= 0 && isValidGeoPos(i00) && isValidGeoPos(i00 + 1) &&
+                        isValidGeoPos(i01) && isValidGeoPos(i01 + 1)) {
+                    float lat = MathUtils.interpolate2D(wx, wy, lats[i00], lats[i00 + 1], lats[i01], lats[i01 + 1]);
+                    float lon = GeoCodingFactory.interpolateLon(wx, wy, lons[i00], lons[i00 + 1], lons[i01], lons[i01 + 1]);
                     geoPos.setLocation(lat, lon);
                     return geoPos;
                 }
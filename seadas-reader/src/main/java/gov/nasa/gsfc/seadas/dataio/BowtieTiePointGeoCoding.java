@@ -294,6 +294,7 @@ public class BowtieTiePointGeoCoding extends AbstractBowtieGeoCoding {
         }
 
         initSmallestAndLargestValidGeocodingIndices();
+        initCenterLineIndex();
     }
 
     private void addStripeGeocode(float[] lats, float[] lons, int y, int stripeW, int stripeH,
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package gov.nasa.gsfc.seadas.dataio;
+
+import java.awt.geom.Line2D;
+import java.util.List;
+
+/**
+ * A lon/lat grid bucket index over the center line segments of the scan stripes of a bowtie geo-coding.
+ * <p/>
+ * Finding the stripe closest to a geographical position only looks at the segments in the grid cells
+ * around the position, widening the search ring by ring until no closer segment can exist.
+ * The index is immutable once built and can be queried from any number of threads.
+ */
+class CenterLineIndex {
+
+    // segment end points, and the index of the center line each segment belongs to
+    private final float[] x1;
+    private final float[] y1;
+    private final float[] x2;
+    private final float[] y2;
+    private final int[] owners;
+
+    private final float minX;
+    private final float minY;
+    private final float cellWidth;
+    private final float cellHeight;
+    private final int cellsX;
+    private final int cellsY;
+    // segments of cell i are cellSegments[cellStarts[i]] .. cellSegments[cellStarts[i + 1] - 1]
+    private final int[] cellStarts;
+    private final int[] cellSegments;
+
+    CenterLineIndex(List<AbstractBowtieGeoCoding.PolyLine> centerLines) {
+        int numSegments = 0;
+        for (AbstractBowtieGeoCoding.PolyLine centerLine : centerLines) {
+            if (centerLine != null) {
+                numSegments += centerLine.getLines().size();
+            }
+        }
+        x1 = new float[numSegments];
+        y1 = new float[numSegments];
+        x2 = new float[numSegments];
+        y2 = new float[numSegments];
+        owners = new int[numSegments];
+
+        float xMin = Float.MAX_VALUE;
+        float yMin = Float.MAX_VALUE;
+        float xMax = -Float.MAX_VALUE;
+        float yMax = -Float.MAX_VALUE;
+        int s = 0;
+        for (int i = 0; i < centerLines.size(); i++) {
+            final AbstractBowtieGeoCoding.PolyLine centerLine = centerLines.get(i);
+            if (centerLine == null) {
+                continue;
+            }
+            for (Line2D.Float line : centerLine.getLines()) {
+                if (Float.isNaN(line.x1) || Float.isNaN(line.y1) || Float.isNaN(line.x2) || Float.isNaN(line.y2)) {
+                    continue;
+                }
+                x1[s] = line.x1;
+                y1[s] = line.y1;
+                x2[s] = line.x2;
+                y2[s] = line.y2;
+                owners[s] = i;
+                xMin = Math.min(xMin, Math.min(line.x1, line.x2));
+                yMin = Math.min(yMin, Math.min(line.y1, line.y2));
+                xMax = Math.max(xMax, Math.max(line.x1, line.x2));
+                yMax = Math.max(yMax, Math.max(line.y1, line.y2));
+                s++;
+            }
+        }
+        numSegments = s;
+        if (numSegments == 0) {
+            xMin = yMin = 0;
+            xMax = yMax = 1;
+        }
+
+        // aim for a handful of segments per cell
+        final int cells = Math.max(1, Math.min(512, (int) Math.ceil(Math.sqrt(numSegments / 4.0))));
+        minX = xMin;
+        minY = yMin;
+        cellsX = cells;
+        cellsY = cells;
+        cellWidth = Math.max((xMax - xMin) / cellsX, 1.0e-6f);
+        cellHeight = Math.max((yMax - yMin) / cellsY, 1.0e-6f);
+
+        // two passes: count the segments per cell, then fill them in
+        cellStarts = new int[cellsX * cellsY + 1];
+        for (s = 0; s < numSegments; s++) {
+            for (int cy = cellY(Math.min(y1[s], y2[s])); cy <= cellY(Math.max(y1[s], y2[s])); cy++) {
+                for (int cx = cellX(Math.min(x1[s], x2[s])); cx <= cellX(Math.max(x1[s], x2[s])); cx++) {
+                    cellStarts[cy * cellsX + cx + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < cellsX * cellsY; i++) {
+            cellStarts[i + 1] += cellStarts[i];
+        }
+        cellSegments = new int[cellStarts[cellsX * cellsY]];
+        final int[] fill = new int[cellsX * cellsY];
+        for (s = 0; s < numSegments; s++) {
+            for (int cy = cellY(Math.min(y1[s], y2[s])); cy <= cellY(Math.max(y1[s], y2[s])); cy++) {
+                for (int cx = cellX(Math.min(x1[s], x2[s])); cx <= cellX(Math.max(x1[s], x2[s])); cx++) {
+                    final int cell = cy * cellsX + cx;
+                    cellSegments[cellStarts[cell] + fill[cell]++] = s;
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the center line closest to a position.
+     *
+     * @param x the longitude
+     * @param y the latitude
+     * @return the index of the closest center line, or -1 if the index holds no center lines
+     */
+    int findClosest(float x, float y) {
+        final int cx0 = cellX(x);
+        final int cy0 = cellY(y);
+        final float cellMin = Math.min(cellWidth, cellHeight);
+        final int maxRing = Math.max(cellsX, cellsY);
+
+        double bestDistSq = Double.MAX_VALUE;
+        int best = -1;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int cy = cy0 - ring; cy <= cy0 + ring; cy++) {
+                if (cy < 0 || cy >= cellsY) {
+                    continue;
+                }
+                final boolean edgeRow = cy == cy0 - ring || cy == cy0 + ring;
+                final int step = edgeRow ? 1 : 2 * ring;
+                for (int cx = cx0 - ring; cx <= cx0 + ring; cx += Math.max(step, 1)) {
+                    if (cx < 0 || cx >= cellsX) {
+                        continue;
+                    }
+                    final int cell = cy * cellsX + cx;
+                    for (int i = cellStarts[cell]; i < cellStarts[cell + 1]; i++) {
+                        final int s = cellSegments[i];
+                        final double distSq = Line2D.ptSegDistSq(x1[s], y1[s], x2[s], y2[s], x, y);
+                        if (distSq < bestDistSq || (best >= 0 && distSq == bestDistSq && owners[s] < owners[best])) {
+                            bestDistSq = distSq;
+                            best = s;
+                        }
+                    }
+                }
+            }
+            // every cell beyond this ring is at least ring * cellMin away
+            final double reach = (double) ring * cellMin;
+            if (best >= 0 && bestDistSq <= reach * reach) {
+                break;
+            }
+        }
+        return best >= 0 ? owners[best] : -1;
+    }
+
+    private int cellX(float x) {
+        return Math.max(0, Math.min(cellsX - 1, (int) ((x - minX) / cellWidth)));
+    }
+
+    private int cellY(float y) {
+        return Math.max(0, Math.min(cellsY - 1, (int) ((y - minY) / cellHeight)));
+    }
+}
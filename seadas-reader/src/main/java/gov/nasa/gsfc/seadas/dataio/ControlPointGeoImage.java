@@ -0,0 +1,96 @@
+package gov.nasa.gsfc.seadas.dataio;
+
+import org.esa.beam.util.ImageUtils;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.SourcelessOpImage;
+import java.awt.*;
+import java.awt.image.DataBuffer;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Tiled image of latitudes or longitudes interpolated on demand from the navigation control points
+ * of a level-2 file.
+ * <p/>
+ * Only the navigation arrays (one value per scan line and control point) are kept in memory;
+ * full resolution tiles are computed when requested and live in the JAI tile cache.
+ */
+class ControlPointGeoImage extends SourcelessOpImage {
+
+    private final float[] rawData;
+    private final int rawWidth;
+    // index of the right-hand control point of each column
+    private final int[] columnPoints;
+    // interpolation weight of the right-hand control point of each column
+    private final double[] columnWeights;
+
+    /**
+     * @param rawData   the navigation values, one line of <code>colPoints.length</code> values per scan line
+     * @param colPoints the 1-based scene columns of the control points
+     * @param width     the scene width
+     * @param height    the scene height
+     * @param tileSize  the tile size of the image
+     */
+    ControlPointGeoImage(float[] rawData, int[] colPoints, int width, int height, Dimension tileSize) {
+        this(rawData, colPoints, width, height,
+             ImageUtils.createSingleBandedSampleModel(DataBuffer.TYPE_FLOAT, tileSize.width, tileSize.height));
+    }
+
+    private ControlPointGeoImage(float[] rawData, int[] colPoints, int width, int height, SampleModel sampleModel) {
+        super(new ImageLayout(0, 0, width, height, 0, 0, sampleModel.getWidth(), sampleModel.getHeight(),
+                              sampleModel, null),
+              null, sampleModel, 0, 0, width, height);
+        this.rawData = rawData;
+        this.rawWidth = colPoints.length;
+        this.columnPoints = new int[width];
+        this.columnWeights = new double[width];
+
+        int colPointIdx = 0;
+        int p1 = colPoints[colPointIdx] - 1;
+        int p2 = colPoints[++colPointIdx] - 1;
+
+        for (int x = 0; x < width; x++) {
+            if (x == p2 && colPointIdx < rawWidth - 1) {
+                p1 = p2;
+                p2 = colPoints[++colPointIdx] - 1;
+            }
+            final int steps = p2 - p1;
+            final double step = 1.0 / steps;
+            columnPoints[x] = colPointIdx;
+            columnWeights[x] = step * (x - p1);
+        }
+    }
+
+    @Override
+    protected void computeRect(PlanarImage[] sources, WritableRaster dest, Rectangle destRect) {
+        final float[] line = new float[destRect.width];
+        for (int y = destRect.y; y < destRect.y + destRect.height; y++) {
+            for (int i = 0; i < destRect.width; i++) {
+                final int x = destRect.x + i;
+                final int rawPos2 = y * rawWidth + columnPoints[x];
+                final int rawPos1 = rawPos2 - 1;
+                line[i] = interpolate(rawData[rawPos1], rawData[rawPos2], columnWeights[x]);
+            }
+            dest.setSamples(destRect.x, y, destRect.width, 1, 0, line);
+        }
+    }
+
+    /**
+     * Linearly interpolates between two navigation values, taking care of the anti-meridian for longitudes.
+     */
+    static float interpolate(final float a, final float b, final double weight) {
+        if ((b - a) > 180) {
+            final float b2 = b - 360;
+            final double v = a + (b2 - a) * weight;
+            if (v >= -180) {
+                return (float) v;
+            } else {
+                return (float) (v + 360);
+            }
+        } else {
+            return (float) (a + (b - a) * weight);
+        }
+    }
+}
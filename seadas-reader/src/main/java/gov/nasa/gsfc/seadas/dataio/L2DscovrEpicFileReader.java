@@ -124,9 +124,9 @@ public class L2DscovrEpicFileReader extends SeadasFileReader {
     }
 
 
-    public synchronized void readBandData(Band destBand, int sourceOffsetX, int sourceOffsetY, int sourceWidth,
-                                          int sourceHeight, int sourceStepX, int sourceStepY, ProductData destBuffer,
-                                          ProgressMonitor pm) throws IOException, InvalidRangeException {
+    public void readBandData(Band destBand, int sourceOffsetX, int sourceOffsetY, int sourceWidth,
+                             int sourceHeight, int sourceStepX, int sourceStepY, ProductData destBuffer,
+                             ProgressMonitor pm) throws IOException, InvalidRangeException {
         
         int widthRemainder = destBand.getSceneRasterWidth() - (sourceOffsetX + sourceWidth);
 
@@ -134,12 +134,9 @@ public class L2DscovrEpicFileReader extends SeadasFileReader {
             sourceWidth += widthRemainder;
         }
         
-        start[1] = sourceOffsetY;
-        start[0] = sourceOffsetX;
-        stride[1] = sourceStepY;
-        stride[0] = sourceStepX;
-        count[1] = sourceHeight;
-        count[0] = sourceWidth;
+        final int[] start = {sourceOffsetX, sourceOffsetY};
+        final int[] stride = {sourceStepX, sourceStepY};
+        final int[] count = {sourceWidth, sourceHeight};
 
         Object buffer = destBuffer.getElems();
         Variable variable = variableMap.get(destBand);
@@ -151,7 +148,7 @@ public class L2DscovrEpicFileReader extends SeadasFileReader {
             Array array;
             int[] newshape = {sourceHeight, sourceWidth};
 
-            array = variable.read(section);
+            array = readSection(variable, section);
             array = array.transpose(0,1);
 
 
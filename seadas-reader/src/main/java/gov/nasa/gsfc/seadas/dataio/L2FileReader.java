@@ -18,6 +18,7 @@ package gov.nasa.gsfc.seadas.dataio;
 
 import org.esa.beam.framework.dataio.ProductIOException;
 import org.esa.beam.framework.datamodel.*;
+import org.esa.beam.jai.ImageManager;
 import ucar.ma2.Array;
 import ucar.nc2.Attribute;
 import ucar.nc2.Dimension;
@@ -330,8 +331,12 @@ public class L2FileReader extends SeadasFileReader {
                 try {
                     cntArray = cntlPointVar.read();
                     int[] colPoints = (int[]) cntArray.getStorage();
-                    computeLatLonBandData(product.getSceneRasterHeight(),product.getSceneRasterWidth(),latBand, lonBand,
-                            latRawData, lonRawData, colPoints);
+                    // lat/lon are interpolated tile by tile when needed, instead of two full-scene arrays
+                    final int width = product.getSceneRasterWidth();
+                    final int height = product.getSceneRasterHeight();
+                    final java.awt.Dimension tileSize = ImageManager.getPreferredTileSize(product);
+                    latBand.setSourceImage(new ControlPointGeoImage(latRawData, colPoints, width, height, tileSize));
+                    lonBand.setSourceImage(new ControlPointGeoImage(lonRawData, colPoints, width, height, tileSize));
 
                 } catch (IOException e) {
                    throw new ProductIOException(e.getMessage(), e);
@@ -8,12 +8,12 @@ import org.geotools.referencing.crs.DefaultGeographicCRS;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.operation.TransformException;
 import ucar.ma2.Array;
+import ucar.ma2.ArrayStructure;
 import ucar.ma2.DataType;
 import ucar.ma2.InvalidRangeException;
 import ucar.nc2.Structure;
 import ucar.nc2.Variable;
 
-import java.awt.*;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -24,10 +24,13 @@ import java.util.Map;
 public class L3BinFileReader extends SeadasFileReader {
 
     private ISINGrid grid;
-    private RowInfo[] rowInfo;
-    private int[] bins;
+    private L3BinIndex binIndex;
     private int sceneWidth;
     private int sceneHeight;
+    private final BinBlockCache blockCache = new BinBlockCache(MAX_CACHED_BINS);
+
+    // upper bound of decoded bins kept in the block cache, across all bands
+    private static final long MAX_CACHED_BINS = 8 * 1024 * 1024;
 
     L3BinFileReader(SeadasProductReader productReader) {
         super(productReader);
@@ -52,11 +55,6 @@ public class L3BinFileReader extends SeadasFileReader {
         final Variable idxVariable = ncFile.getRootGroup().findGroup("Level-3_Binned_Data").findVariable("BinList");
         List<Variable> l3ProdVars = ncFile.getVariables();
         variableMap = addBands(product, idxVariable, l3ProdVars);
-//        try {
-//            addBandsBinMap(product);
-//        } catch (InvalidRangeException e) {
-//            e.printStackTrace();
-//        }
         if (product.getNumBands() == 0) {
             throw new ProductIOException("No bands found.");
         }
@@ -68,7 +66,7 @@ public class L3BinFileReader extends SeadasFileReader {
     }
 
     @Override
-    public synchronized void readBandData(Band destBand, int sourceOffsetX, int sourceOffsetY, int sourceWidth,
+    public void readBandData(Band destBand, int sourceOffsetX, int sourceOffsetY, int sourceWidth,
                              int sourceHeight, int sourceStepX, int sourceStepY, ProductData destBuffer,
                              ProgressMonitor pm) throws IOException, InvalidRangeException {
 
@@ -98,65 +96,36 @@ public class L3BinFileReader extends SeadasFileReader {
             buffer = ibuffer;
         }
 
-        if (rowInfo == null) {
-            rowInfo = createRowInfos();
-        }
+        final L3BinIndex binIndex = getBinIndex();
 
         final int height = sceneHeight;
-        final int width = sceneWidth;
-        final ISINGrid grid = this.grid;
 
+        // the rows of a tile are contiguous in the bin list, so they are read as one block
+        int blockStart = Integer.MAX_VALUE;
+        int blockEnd = -1;
+        for (int y = sourceOffsetY; y < sourceOffsetY + sourceHeight; y += sourceStepY) {
+            final int rowIndex = (height - 1) - y;
+            if (binIndex.getRowLength(rowIndex) > 0) {
+                blockStart = Math.min(blockStart, binIndex.getRowOffset(rowIndex));
+                blockEnd = Math.max(blockEnd, binIndex.getRowOffset(rowIndex) + binIndex.getRowLength(rowIndex));
+            }
+        }
+        if (blockEnd < 0) {
+            return;
+        }
 
         // loop over lines
         try {
-            int[] lineOffsets = new int[1];
-            int[] lineLengths = new int[1];
-            int[] stride = new int[1];
-            stride[0] = 1;
+            final Object bindata = readBinBlock(variable, blockStart, blockEnd - blockStart);
 
-
-//            for (int y = sourceOffsetY; y < sourceOffsetY + sourceHeight; y++) {
             for (int y = sourceOffsetY; y < sourceOffsetY + sourceHeight; y+=sourceStepY) {
                     if (pm.isCanceled()) {
                     break;
                 }
                 final int rowIndex = (height - 1) - y;
-                final RowInfo rowInfo = this.rowInfo[rowIndex];
-                if (rowInfo != null) {
-
-                    final int lineOffset = rowInfo.offset;
-                    final int lineLength = rowInfo.length;
-
-
-                    lineOffsets[0] = lineOffset;
-                    lineLengths[0] = lineLength;
-                    final Object bindata;
-
-                    synchronized (ncFile) {
-                        bindata = variable.read().section(lineOffsets, lineLengths, stride).copyTo1DJavaArray();
-                    }
-                    int lineIndex0 = 0;
-                    for (int x = sourceOffsetX; x < sourceOffsetX + sourceWidth; x++) {
-                        final double lon = x * 360.0 / width;
-                        final int binIndex = grid.getBinIndex(rowIndex, lon);
-                        int lineIndex = -1;
-                        for (int i = lineIndex0; i < lineLength; i++) {
-                            int binidx = bins[lineOffset + i];
-                            if (binidx >= binIndex) {
-                                if (binidx == binIndex) {
-                                    lineIndex = i;
-                                }
-                                lineIndex0 = i;
-                                break;
-                            }
-                        }
-
-                        if (lineIndex >= 0) {
-                            final int rasterIndex = sourceWidth * (y - sourceOffsetY) + (x - sourceOffsetX);
-
-                            System.arraycopy(bindata, lineIndex, buffer, rasterIndex, 1);
-                        }
-                    }
+                if (binIndex.getRowLength(rowIndex) > 0) {
+                    binIndex.rasterizeRow(rowIndex, sourceOffsetX, sourceWidth, bindata, blockStart,
+                            buffer, sourceWidth * (y - sourceOffsetY));
                     pm.worked(1);
                 }
             }
@@ -166,108 +135,35 @@ public class L3BinFileReader extends SeadasFileReader {
         }
     }
 
-    // Don't do this...it hurts.  Too much of a memory hog...
-    private void addBandsBinMap (Product product)throws IOException, InvalidRangeException {
-        String[] bandList = product.getBandNames();
-        if (rowInfo == null) {
-            rowInfo = createRowInfos();
-        }
-
-        final int height = sceneHeight;
-        final int width = sceneWidth;
-        final ISINGrid grid = this.grid;
-
-
-        // loop over lines
-        try {
-            int[] lineOffsets = new int[1];
-            int[] lineLengths = new int[1];
-            int[] stride = new int[1];
-            stride[0] = 1;
-
-
-//            for (int y = sourceOffsetY; y < sourceOffsetY + sourceHeight; y++) {
-            for (String name : bandList) {
-                if (name.endsWith("mean") || name.endsWith("stdev"))
-                    continue;
-                Band band = product.getBand(name);
-                ProductData buffer;
-                final Variable variable = variableMap.get(band);
-                DataType prodtype = variable.getDataType();
-                float[] fbuffer = new float[width*height];
-                short[] sbuffer = new short[width*height];
-                int [] ibuffer= new int[width*height];
-                byte [] bbuffer= new byte[width*height];
-
-                if (prodtype == DataType.FLOAT) {
-                    Arrays.fill(fbuffer, Float.NaN);
-                    buffer = ProductData.createInstance(fbuffer);
-                } else if (prodtype == DataType.SHORT) {
-                    Arrays.fill(sbuffer, (short) -999);
-                    buffer = ProductData.createInstance(sbuffer);
-                } else if (prodtype == DataType.BYTE) {
-                    Arrays.fill(bbuffer, (byte) 255);
-                    buffer = ProductData.createInstance(bbuffer);
+    /**
+     * Reads the bins [offset, offset + length) of a band variable, or takes them from the block cache
+     * if a tile in the same tile row has already read them.
+     */
+    private Object readBinBlock(Variable variable, int offset, int length) throws IOException, InvalidRangeException {
+        Object data = blockCache.get(variable, offset, length);
+        if (data == null) {
+            final int[] origin = {offset};
+            final int[] shape = {length};
+            final Array array;
+            synchronized (ncFile) {
+                if (variable.isMemberOfStructure()) {
+                    final ArrayStructure records = (ArrayStructure) variable.getParentStructure().read(origin, shape);
+                    array = records.extractMemberArray(records.findMember(variable.getShortName()));
                 } else {
-                    Arrays.fill(ibuffer, -999);
-                    buffer = ProductData.createInstance(ibuffer);
+                    array = variable.read(origin, shape);
                 }
-
-                for (int y = 0; y < height; y++) {
-
-                    final int rowIndex = (height - 1) - y;
-                    final RowInfo rowInfo = this.rowInfo[rowIndex];
-                    if (rowInfo != null) {
-                        final Array bindata;
-
-                        final int lineOffset = rowInfo.offset;
-                        final int lineLength = rowInfo.length;
-
-
-                        lineOffsets[0] = lineOffset;
-                        lineLengths[0] = lineLength;
-
-                        synchronized (ncFile) {
-                            bindata = variable.read().section(lineOffsets, lineLengths, stride);//.copyTo1DJavaArray();
-                        }
-                        int lineIndex0 = 0;
-                        for (int x = 0; x < width; x++) {
-                            final double lon = x * 360.0 / width;
-                            final int binIndex = grid.getBinIndex(rowIndex, lon);
-                            int lineIndex = -1;
-                            for (int i = lineIndex0; i < lineLength; i++) {
-                                int binidx = bins[lineOffset + i];
-                                if (binidx >= binIndex) {
-                                    if (binidx == binIndex) {
-                                        lineIndex = i;
-                                    }
-                                    lineIndex0 = i;
-                                    break;
-                                }
-                            }
-
-                            if (lineIndex >= 0) {
-                                final int rasterIndex = width * y + x;
-                                final Array elem;
-                                elem = Array.factory(bindata.copyTo1DJavaArray());
-                                for (int i=0; i<elem.getSize(); i++){
-                                    if (prodtype == DataType.FLOAT) {
-
-                                        buffer.setElemFloatAt(rasterIndex, elem.getFloat(i));
-                                    } else {
-                                        buffer.setElemIntAt(rasterIndex, elem.getInt(i));
-                                    }
-    //                                System.arraycopy(bindata, lineIndex, buffer, rasterIndex, 1);
-                                }
-                            }
-                        }
-                    }
-                }
-                band.setDataElems(buffer);
             }
-        } catch (IOException e){
-            throw new IOException("Could not map product " + product.getName(), e);
+            data = array.copyTo1DJavaArray();
+            blockCache.put(variable, offset, length, data);
+        }
+        return data;
+    }
+
+    private synchronized L3BinIndex getBinIndex() throws IOException {
+        if (binIndex == null) {
+            binIndex = createBinIndex();
         }
+        return binIndex;
     }
 
     /////////////////////////////////////////////////////////////////////////
@@ -294,9 +190,7 @@ public class L3BinFileReader extends SeadasFileReader {
         }
     }
 
-    private RowInfo[] createRowInfos() throws IOException {
-        final ISINGrid grid = this.grid;
-        final RowInfo[] binLines = new RowInfo[sceneHeight];
+    private L3BinIndex createBinIndex() throws IOException {
         final Variable idxVariable = ncFile.getRootGroup().findGroup("Level-3_Binned_Data").findVariable("BinList");
         final Structure idxStructure = (Structure) idxVariable;
         final Variable idx = idxStructure.findVariable("bin_num");
@@ -304,56 +198,7 @@ public class L3BinFileReader extends SeadasFileReader {
         synchronized (ncFile) {
             idxValues = (int[]) idx.read().getStorage();
         }
-        if (bins == null) {
-            bins = idxValues;//(int[]) idxVariable.read().copyTo1DJavaArray();
-        }
-        final Point gridPoint = new Point();
-        int lastBinIndex = -1;
-        int lastRowIndex = -1;
-        int lineOffset = 0;
-        int lineLength = 0;
-        for (int i = 0; i < idxValues.length; i++) {
-
-            final int binIndex = idxValues[i];
-            if (binIndex < lastBinIndex) {
-                throw new IOException(
-                        "Unrecognized level-3 format. Bins numbers expected to appear in ascending order.");
-            }
-            lastBinIndex = binIndex;
-
-            grid.getGridPoint(binIndex, gridPoint);
-            final int rowIndex = gridPoint.y;
-
-            if (rowIndex != lastRowIndex) {
-                if (lineLength > 0) {
-                    binLines[lastRowIndex] = new RowInfo(lineOffset, lineLength);
-                }
-                lineOffset = i;
-                lineLength = 0;
-            }
-
-            lineLength++;
-            lastRowIndex = rowIndex;
-        }
-
-        if (lineLength > 0) {
-            binLines[lastRowIndex] = new RowInfo(lineOffset, lineLength);
-        }
-
-        return binLines;
-    }
-
-    private static final class RowInfo {
-
-        // offset of row within file
-        final int offset;
-        // number of bins per row
-        final int length;
-
-        public RowInfo(int offset, int length) {
-            this.offset = offset;
-            this.length = length;
-        }
+        return new L3BinIndex(grid, idxValues, sceneWidth);
     }
 
     public Map<Band, Variable> addBands(Product product, Variable idxVariable, List<Variable> l3ProdVars) {
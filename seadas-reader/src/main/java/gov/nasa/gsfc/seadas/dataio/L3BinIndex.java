@@ -0,0 +1,158 @@
+package gov.nasa.gsfc.seadas.dataio;
+
+import org.esa.beam.dataio.merisl3.ISINGrid;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Maps the bin list of a level-3 binned product onto the scene raster.
+ * <p/>
+ * For every ISIN row the index knows the run of the bin list holding that row, and for every bin list
+ * entry the span of scene columns [start, end) that the bin covers. The index is built once per product
+ * and shared by all of its bands, so rasterizing a line is a binary search followed by one fill per bin.
+ */
+class L3BinIndex {
+
+    private final int sceneWidth;
+    // offset of each row within the bin list
+    private final int[] rowOffsets;
+    // number of bins per row
+    private final int[] rowLengths;
+    // first scene column covered by each bin list entry
+    private final int[] columnStarts;
+    // scene column following the last one covered by each bin list entry
+    private final int[] columnEnds;
+
+    /**
+     * @param grid       the ISIN grid of the product
+     * @param bins       the bin numbers of the bin list, in ascending order
+     * @param sceneWidth the width of the scene raster
+     * @throws IOException if the bin numbers are not in ascending order
+     */
+    L3BinIndex(ISINGrid grid, int[] bins, int sceneWidth) throws IOException {
+        final int rowCount = grid.getRowCount();
+        this.sceneWidth = sceneWidth;
+        rowOffsets = new int[rowCount];
+        rowLengths = new int[rowCount];
+        columnStarts = new int[bins.length];
+        columnEnds = new int[bins.length];
+
+        final Point gridPoint = new Point();
+        int lastBinIndex = -1;
+        for (int i = 0; i < bins.length; i++) {
+            final int binIndex = bins[i];
+            if (binIndex < lastBinIndex) {
+                throw new IOException(
+                        "Unrecognized level-3 format. Bins numbers expected to appear in ascending order.");
+            }
+            lastBinIndex = binIndex;
+
+            grid.getGridPoint(binIndex, gridPoint);
+            final int rowIndex = gridPoint.y;
+            if (rowLengths[rowIndex] == 0) {
+                rowOffsets[rowIndex] = i;
+            }
+            rowLengths[rowIndex]++;
+        }
+
+        for (int rowIndex = 0; rowIndex < rowCount; rowIndex++) {
+            if (rowLengths[rowIndex] > 0) {
+                indexRow(grid, bins, rowIndex);
+            }
+        }
+    }
+
+    int getRowOffset(int rowIndex) {
+        return rowOffsets[rowIndex];
+    }
+
+    int getRowLength(int rowIndex) {
+        return rowLengths[rowIndex];
+    }
+
+    /**
+     * Copies the bins of one ISIN row into a line of the destination raster.
+     * Columns not covered by a bin of the bin list are left untouched.
+     *
+     * @param rowIndex   the ISIN row
+     * @param x0         the first scene column of the line
+     * @param width      the number of columns in the line
+     * @param binData    decoded bin values, a primitive array of the same type as <code>dest</code>
+     * @param dataOffset the bin list offset of the first element of <code>binData</code>
+     * @param dest       the destination raster
+     * @param destOffset the index of column <code>x0</code> within <code>dest</code>
+     */
+    void rasterizeRow(int rowIndex, int x0, int width, Object binData, int dataOffset, Object dest, int destOffset) {
+        final int x1 = x0 + width;
+        final int end = rowOffsets[rowIndex] + rowLengths[rowIndex];
+
+        // first bin whose column span ends after x0
+        int lo = rowOffsets[rowIndex];
+        int hi = end;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (columnEnds[mid] <= x0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        for (int i = lo; i < end && columnStarts[i] < x1; i++) {
+            final int from = Math.max(columnStarts[i], x0);
+            final int to = Math.min(columnEnds[i], x1);
+            if (from < to) {
+                fill(binData, i - dataOffset, dest, destOffset + from - x0, destOffset + to - x0);
+            }
+        }
+    }
+
+    private void indexRow(ISINGrid grid, int[] bins, int rowIndex) {
+        final int offset = rowOffsets[rowIndex];
+        final int end = offset + rowLengths[rowIndex];
+        Arrays.fill(columnStarts, offset, end, -1);
+
+        int i = offset;
+        for (int x = 0; x < sceneWidth && i < end; x++) {
+            final double lon = x * 360.0 / sceneWidth;
+            final int binIndex = grid.getBinIndex(rowIndex, lon);
+            while (i < end && bins[i] < binIndex) {
+                i++;
+            }
+            if (i < end && bins[i] == binIndex) {
+                if (columnStarts[i] < 0) {
+                    columnStarts[i] = x;
+                }
+                columnEnds[i] = x + 1;
+            }
+        }
+
+        // bins no column maps onto get an empty span, keeping the spans ordered for the binary search
+        int lastEnd = 0;
+        for (i = offset; i < end; i++) {
+            if (columnStarts[i] < 0) {
+                columnStarts[i] = lastEnd;
+                columnEnds[i] = lastEnd;
+            }
+            lastEnd = columnEnds[i];
+        }
+    }
+
+    private static void fill(Object src, int srcIndex, Object dest, int from, int to) {
+        if (dest instanceof float[]) {
+            Arrays.fill((float[]) dest, from, to, ((float[]) src)[srcIndex]);
+        } else if (dest instanceof short[]) {
+            Arrays.fill((short[]) dest, from, to, ((short[]) src)[srcIndex]);
+        } else if (dest instanceof int[]) {
+            Arrays.fill((int[]) dest, from, to, ((int[]) src)[srcIndex]);
+        } else if (dest instanceof byte[]) {
+            Arrays.fill((byte[]) dest, from, to, ((byte[]) src)[srcIndex]);
+        } else {
+            for (int x = from; x < to; x++) {
+                System.arraycopy(src, srcIndex, dest, x, 1);
+            }
+        }
+    }
+}
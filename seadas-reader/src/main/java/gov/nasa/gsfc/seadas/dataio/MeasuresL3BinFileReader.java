@@ -15,7 +15,6 @@ import ucar.ma2.InvalidRangeException;
 import ucar.ma2.Section;
 import ucar.nc2.Variable;
 
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
@@ -26,8 +25,7 @@ import java.util.Map;
 public class MeasuresL3BinFileReader extends SeadasFileReader {
 
     private ISINGrid grid;
-    private RowInfo[] rowInfo;
-    private int[] bins;
+    private L3BinIndex binIndex;
     private int sceneWidth;
     private int sceneHeight;
 
@@ -80,7 +78,7 @@ public class MeasuresL3BinFileReader extends SeadasFileReader {
     }
 
     @Override
-    public synchronized void readBandData(Band destBand, int sourceOffsetX, int sourceOffsetY, int sourceWidth,
+    public void readBandData(Band destBand, int sourceOffsetX, int sourceOffsetY, int sourceWidth,
                              int sourceHeight, int sourceStepX, int sourceStepY, ProductData destBuffer,
                              ProgressMonitor pm) throws IOException, InvalidRangeException {
 
@@ -100,13 +98,9 @@ public class MeasuresL3BinFileReader extends SeadasFileReader {
             buffer = ibuffer;
         }
 
-        if (rowInfo == null) {
-            rowInfo = createRowInfos();
-        }
+        final L3BinIndex binIndex = getBinIndex();
 
         final int height = sceneHeight;
-        final int width = sceneWidth;
-        final ISINGrid grid = this.grid;
 
         // loop over lines
         try {
@@ -115,11 +109,10 @@ public class MeasuresL3BinFileReader extends SeadasFileReader {
                     break;
                 }
                 final int rowIndex = (height - 1) - y;
-                final RowInfo rowInfo = this.rowInfo[rowIndex];
-                if (rowInfo != null) {
+                if (binIndex.getRowLength(rowIndex) > 0) {
 
-                    final int lineOffset = rowInfo.offset;
-                    final int lineLength = rowInfo.length;
+                    final int lineOffset = binIndex.getRowOffset(rowIndex);
+                    final int lineLength = binIndex.getRowLength(rowIndex);
                     final int[] start = new int[]{lineOffset,0};
 //                    final int[] stride = new int[]{sourceStepY,sourceStepX};
                     final int[] stride = new int[]{1,1};
@@ -129,28 +122,8 @@ public class MeasuresL3BinFileReader extends SeadasFileReader {
                     synchronized (ncFile) {
                         bindata = variable.read(section).reduce().copyTo1DJavaArray();
                     }
-                    int lineIndex0 = 0;
-                    for (int x = sourceOffsetX; x < sourceOffsetX + sourceWidth; x++) {
-                        final double lon = x * 360.0 / width;
-                        final int binIndex = grid.getBinIndex(rowIndex, lon);
-                        int lineIndex = -1;
-                        for (int i = lineIndex0; i < lineLength; i++) {
-                            int binidx = bins[lineOffset + i];
-                            if (binidx >= binIndex) {
-                                if (binidx == binIndex) {
-                                    lineIndex = i;
-                                }
-                                lineIndex0 = i;
-                                break;
-                            }
-                        }
-
-                        if (lineIndex >= 0) {
-                            final int rasterIndex = sourceWidth * (y - sourceOffsetY) + (x - sourceOffsetX);
-
-                            System.arraycopy(bindata, lineIndex, buffer, rasterIndex, 1);
-                        }
-                    }
+                    binIndex.rasterizeRow(rowIndex, sourceOffsetX, sourceWidth, bindata, lineOffset,
+                            buffer, sourceWidth * (y - sourceOffsetY));
 
                     pm.worked(1);
                 }
@@ -161,6 +134,13 @@ public class MeasuresL3BinFileReader extends SeadasFileReader {
         }
     }
 
+    private synchronized L3BinIndex getBinIndex() throws IOException {
+        if (binIndex == null) {
+            binIndex = createBinIndex();
+        }
+        return binIndex;
+    }
+
 
     /////////////////////////////////////////////////////////////////////////
     // private helpers
@@ -186,65 +166,13 @@ public class MeasuresL3BinFileReader extends SeadasFileReader {
         }
     }
 
-    private RowInfo[] createRowInfos() throws
-            IOException {
-        final ISINGrid grid = this.grid;
-        final RowInfo[] binLines = new RowInfo[sceneHeight];
+    private L3BinIndex createBinIndex() throws IOException {
         final Variable idxVariable = ncFile.getRootGroup().findVariable("Indexes");
         final int[] idxValues;
         synchronized (ncFile) {
             idxValues = (int[]) idxVariable.read().getStorage();
         }
-        if (bins == null) {
-            bins = idxValues;//(int[]) idxVariable.read().copyTo1DJavaArray();
-        }
-        final Point gridPoint = new Point();
-        int lastBinIndex = -1;
-        int lastRowIndex = -1;
-        int lineOffset = 0;
-        int lineLength = 0;
-        for (int i = 0; i < idxValues.length; i++) {
-
-            final int binIndex = idxValues[i];
-            if (binIndex < lastBinIndex) {
-                throw new IOException(
-                        "Unrecognized level-3 format. Bins numbers expected to appear in ascending order.");
-            }
-            lastBinIndex = binIndex;
-
-            grid.getGridPoint(binIndex, gridPoint);
-            final int rowIndex = gridPoint.y;
-
-            if (rowIndex != lastRowIndex) {
-                if (lineLength > 0) {
-                    binLines[lastRowIndex] = new RowInfo(lineOffset, lineLength);
-                }
-                lineOffset = i;
-                lineLength = 0;
-            }
-
-            lineLength++;
-            lastRowIndex = rowIndex;
-        }
-
-        if (lineLength > 0 && lastRowIndex > 0) {
-            binLines[lastRowIndex] = new RowInfo(lineOffset, lineLength);
-        }
-
-        return binLines;
-    }
-
-    private static final class RowInfo {
-
-        // offset of row within file
-        final int offset;
-        // number of bins per row
-        final int length;
-
-        public RowInfo(int offset, int length) {
-            this.offset = offset;
-            this.length = length;
-        }
+        return new L3BinIndex(grid, idxValues, sceneWidth);
     }
 
     public Map<Band, Variable> addBands(Product product, List<Variable> l3ProdVars) {
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package gov.nasa.gsfc.seadas.dataio;
+
+import org.esa.beam.dataio.netcdf.util.NetcdfFileOpener;
+import ucar.nc2.NetcdfFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A pool of additional read handles onto the same NetCDF/HDF file.
+ * <p/>
+ * A {@link NetcdfFile} shares one underlying random access file between all of its variables, so
+ * concurrent reads through a single handle must be serialized. Tile reads instead borrow a handle
+ * of their own from this pool, which lets the tile scheduler read a product with as many threads
+ * as it has. Handles are opened lazily and reused, so the pool never holds more handles than the
+ * peak number of concurrent readers.
+ */
+class NetcdfFilePool {
+
+    private final String path;
+    private final ConcurrentLinkedQueue<NetcdfFile> idle = new ConcurrentLinkedQueue<NetcdfFile>();
+    private final List<NetcdfFile> opened = new ArrayList<NetcdfFile>();
+    private boolean closed;
+
+    NetcdfFilePool(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Borrows a handle from the pool, opening a new one if all handles are in use.
+     * Every handle obtained here must be given back by {@link #release(NetcdfFile)}.
+     *
+     * @return a handle for exclusive use by the caller, or <code>null</code> if the file could not be re-opened
+     */
+    NetcdfFile acquire() throws IOException {
+        NetcdfFile handle = idle.poll();
+        if (handle != null) {
+            return handle;
+        }
+        synchronized (opened) {
+            if (closed) {
+                throw new IOException("Product reader has been closed: " + path);
+            }
+            handle = NetcdfFileOpener.open(path);
+            if (handle != null) {
+                opened.add(handle);
+            }
+        }
+        return handle;
+    }
+
+    void release(NetcdfFile handle) {
+        if (handle == null) {
+            return;
+        }
+        synchronized (opened) {
+            if (!closed) {
+                idle.offer(handle);
+                return;
+            }
+        }
+        closeQuietly(handle);
+    }
+
+    void close() {
+        synchronized (opened) {
+            closed = true;
+            idle.clear();
+            for (NetcdfFile handle : opened) {
+                closeQuietly(handle);
+            }
+            opened.clear();
+        }
+    }
+
+    private static void closeQuietly(NetcdfFile handle) {
+        try {
+            handle.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
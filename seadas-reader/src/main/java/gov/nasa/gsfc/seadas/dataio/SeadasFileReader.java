@@ -66,9 +66,6 @@ public abstract class SeadasFileReader {
     protected Map<Band, Variable> variableMap;
     protected NetcdfFile ncFile;
     protected SeadasProductReader productReader;
-    protected int[] start = new int[2];
-    protected int[] stride = new int[2];
-    protected int[] count = new int[2];
     protected String sensor = null;
 
     protected int leadLineSkip = 0;
@@ -102,9 +99,9 @@ public abstract class SeadasFileReader {
 
     public abstract Product createProduct() throws IOException;
 
-    public synchronized void readBandData(Band destBand, int sourceOffsetX, int sourceOffsetY, int sourceWidth,
-                                          int sourceHeight, int sourceStepX, int sourceStepY, ProductData destBuffer,
-                                          ProgressMonitor pm) throws IOException, InvalidRangeException {
+    public void readBandData(Band destBand, int sourceOffsetX, int sourceOffsetY, int sourceWidth,
+                             int sourceHeight, int sourceStepX, int sourceStepY, ProductData destBuffer,
+                             ProgressMonitor pm) throws IOException, InvalidRangeException {
 
         if (mustFlipY) {
             sourceOffsetY = destBand.getSceneRasterHeight() - (sourceOffsetY + sourceHeight);
@@ -118,12 +115,9 @@ public abstract class SeadasFileReader {
         if (widthRemainder < 0) {
             sourceWidth += widthRemainder;
         }
-        start[0] = sourceOffsetY;
-        start[1] = sourceOffsetX;
-        stride[0] = sourceStepY;
-        stride[1] = sourceStepX;
-        count[0] = sourceHeight;
-        count[1] = sourceWidth;
+        final int[] start = {sourceOffsetY, sourceOffsetX};
+        final int[] stride = {sourceStepY, sourceStepX};
+        final int[] count = {sourceHeight, sourceWidth};
         Object buffer = destBuffer.getElems();
         Variable variable = variableMap.get(destBand);
 
@@ -134,7 +128,7 @@ public abstract class SeadasFileReader {
             Array array;
             int[] newshape = {sourceHeight, sourceWidth};
 
-            array = variable.read(section);
+            array = readSection(variable, section);
             if (array.getRank() > 2) {
                 array = array.reshapeNoCopy(newshape);
             }
@@ -162,6 +156,29 @@ public abstract class SeadasFileReader {
 
     }
 
+    /**
+     * Reads a section of a band variable through a file handle borrowed from the product reader's pool,
+     * so that concurrent tile reads of one product do not serialize on the shared {@link #ncFile}.
+     * Falls back to the shared handle if the variable cannot be resolved in a pooled handle.
+     */
+    protected Array readSection(Variable variable, Section section) throws IOException, InvalidRangeException {
+        final NetcdfFilePool pool = productReader.getNcfilePool();
+        final NetcdfFile handle = pool != null ? pool.acquire() : null;
+        if (handle != null) {
+            try {
+                final Variable pooledVariable = handle.findVariable(variable.getFullNameEscaped());
+                if (pooledVariable != null) {
+                    return pooledVariable.read(section);
+                }
+            } finally {
+                pool.release(handle);
+            }
+        }
+        synchronized (ncFile) {
+            return variable.read(section);
+        }
+    }
+
     public FlagCoding readFlagCoding(Product product, Band bandName) {
         Variable variable = variableMap.get(bandName);
         if (variable.getFullName().contains("flag")) {
@@ -1153,51 +1170,8 @@ public abstract class SeadasFileReader {
         }
     }
 
-    public void computeLatLonBandData(int height, int width, Band latBand, Band lonBand,
-                                      final float[] latRawData, final float[] lonRawData,
-                                      final int[] colPoints) {
-
-        float[] latFloats = new float[height * width];
-        float[] lonFloats = new float[height * width];
-        final int rawWidth = colPoints.length;
-
-        int colPointIdx = 0;
-        int p1 = colPoints[colPointIdx] - 1;
-        int p2 = colPoints[++colPointIdx] - 1;
-
-        for (int x = 0; x < width; x++) {
-            if (x == p2 && colPointIdx < rawWidth - 1) {
-                p1 = p2;
-                p2 = colPoints[++colPointIdx] - 1;
-            }
-            final int steps = p2 - p1;
-            final double step = 1.0 / steps;
-            final double weight = step * (x - p1);
-            for (int y = 0; y < height; y++) {
-                final int rawPos2 = y * rawWidth + colPointIdx;
-                final int rawPos1 = rawPos2 - 1;
-                final int pos = y * width + x;
-                latFloats[pos] = computeGeoPixel(latRawData[rawPos1], latRawData[rawPos2], weight);
-                lonFloats[pos] = computeGeoPixel(lonRawData[rawPos1], lonRawData[rawPos2], weight);
-            }
-        }
-
-        latBand.setDataElems(latFloats);
-        lonBand.setDataElems(lonFloats);
-    }
-
     public float computeGeoPixel(final float a, final float b, final double weight) {
-        if ((b - a) > 180) {
-            final float b2 = b - 360;
-            final double v = a + (b2 - a) * weight;
-            if (v >= -180) {
-                return (float) v;
-            } else {
-                return (float) (v + 360);
-            }
-        } else {
-            return (float) (a + (b - a) * weight);
-        }
+        return ControlPointGeoImage.interpolate(a, b, weight);
     }
 
     public boolean getDefaultFlip() throws ProductIOException {
@@ -36,6 +36,7 @@ import java.util.List;
 public class SeadasProductReader extends AbstractProductReader {
 
     private NetcdfFile ncfile;
+    private NetcdfFilePool ncfilePool;
     private ProductType productType;
     private SeadasFileReader seadasFileReader;
 
@@ -104,6 +105,7 @@ public class SeadasProductReader extends AbstractProductReader {
             final String path = inFile.getPath();
 
             ncfile = NetcdfFileOpener.open(path);
+            ncfilePool = new NetcdfFilePool(path);
             productType = findProductType();
 
             switch (productType) {
@@ -187,6 +189,9 @@ public class SeadasProductReader extends AbstractProductReader {
 
     @Override
     public void close() throws IOException {
+        if (ncfilePool != null) {
+            ncfilePool.close();
+        }
         if (getNcfile() != null) {
             getNcfile().close();
         }
@@ -217,6 +222,13 @@ public class SeadasProductReader extends AbstractProductReader {
         return ncfile;
     }
 
+    /**
+     * @return the pool of per-thread read handles onto the input file, used for concurrent band reads
+     */
+    NetcdfFilePool getNcfilePool() {
+        return ncfilePool;
+    }
+
     public ProductType getProductType() {
         return productType;
     }
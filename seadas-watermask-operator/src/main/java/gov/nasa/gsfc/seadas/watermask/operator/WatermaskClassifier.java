@@ -19,17 +19,27 @@ package gov.nasa.gsfc.seadas.watermask.operator;
 import org.esa.beam.framework.datamodel.GeoCoding;
 import org.esa.beam.framework.datamodel.GeoPos;
 import org.esa.beam.framework.datamodel.PixelPos;
+import org.esa.beam.util.logging.BeamLogManager;
 import gov.nasa.gsfc.seadas.watermask.util.ResourceInstallationUtils;
 import gov.nasa.gsfc.seadas.watermask.util.ImageDescriptor;
 import gov.nasa.gsfc.seadas.watermask.util.ImageDescriptorBuilder;
 
 import javax.media.jai.OpImage;
+import java.awt.Rectangle;
 import java.awt.image.Raster;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.text.MessageFormat;
+import java.util.Arrays;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Classifies a pixel given by its geo-coordinate as water pixel.
@@ -114,6 +124,25 @@ public class WatermaskClassifier {
     static final int MODIS_TILE_WIDTH = 640;
     static final int MODIS_TILE_HEIGHT = 540;
 
+    /**
+     * System property which, if set to <code>false</code>, keeps the classifier from converting
+     * the zipped source images into memory-mapped tile stores. The conversion runs in the background;
+     * until a store is written, its image is read from the zip file.
+     */
+    public static final String TILE_STORE_PROPERTY = "seadas.watermask.tileStore";
+    static final String TILE_STORE_EXTENSION = ".tiles";
+
+    // converts the source images into tile stores, one at a time
+    private static final ExecutorService tileStoreConverter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "water mask tile store converter");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
 //    private SRTMOpImage centerImage;
 //    private final PNGSourceImage gshhsImage;
 //    private final PNGSourceImage aboveSixtyNorthImage;
@@ -123,6 +152,14 @@ public class WatermaskClassifier {
     private PNGSourceImage gshhsImage;
     private PNGSourceImage aboveSixtyNorthImage;
     private PNGSourceImage belowSixtySouthImage;
+    private final AtomicReference<WatermaskTileStore> centerStore = new AtomicReference<WatermaskTileStore>();
+    private final AtomicReference<WatermaskTileStore> gshhsStore = new AtomicReference<WatermaskTileStore>();
+    private final AtomicReference<WatermaskTileStore> aboveSixtyNorthStore = new AtomicReference<WatermaskTileStore>();
+    private final AtomicReference<WatermaskTileStore> belowSixtySouthStore = new AtomicReference<WatermaskTileStore>();
+    private File gshhsZipFile;
+    private File centerZipFile;
+    private File aboveSixtyNorthZipFile;
+    private File belowSixtySouthZipFile;
     private Mode mode;
     private int resolution;
     private String filename;
@@ -215,15 +252,23 @@ public class WatermaskClassifier {
             ImageDescriptor gshhsDescriptor = getGshhsDescriptor(auxdataDir);
             if (gshhsDescriptor != null) {
                 gshhsImage = createImage(auxdataDir, gshhsDescriptor);
+                gshhsZipFile = getZipFile(gshhsDescriptor);
+                openTileStore(gshhsImage, gshhsZipFile, gshhsStore);
             }
         } else if (mode == Mode.SRTM_GC) {
             centerImage = createSrtmImage(auxdataDir);
+            centerZipFile = new File(auxdataDir, filename);
+            openTileStore(centerImage, centerZipFile, centerStore);
 
             ImageDescriptor northDescriptor = getNorthDescriptor(auxdataDir);
             aboveSixtyNorthImage = createImage(auxdataDir, northDescriptor);
+            aboveSixtyNorthZipFile = getZipFile(northDescriptor);
+            openTileStore(aboveSixtyNorthImage, aboveSixtyNorthZipFile, aboveSixtyNorthStore);
 
             ImageDescriptor southDescriptor = getSouthDescriptor(auxdataDir);
             belowSixtySouthImage = createImage(auxdataDir, southDescriptor);
+            belowSixtySouthZipFile = getZipFile(southDescriptor);
+            openTileStore(belowSixtySouthImage, belowSixtySouthZipFile, belowSixtySouthStore);
         }
 
 
@@ -361,12 +406,94 @@ public class WatermaskClassifier {
         final URL imageProperties = getClass().getResource("image.properties");
         properties.load(imageProperties.openStream());
 
-        final File auxdataDir = descriptor.getAuxdataDir();
-        final String zipFileName = descriptor.getZipFileName();
-        File zipFile = new File(auxdataDir, zipFileName);
-        return PNGSourceImage.create(properties, zipFile, mode, resolution);
+        return PNGSourceImage.create(properties, getZipFile(descriptor), mode, resolution);
     }
 
+    private static File getZipFile(ImageDescriptor descriptor) {
+        return new File(descriptor.getAuxdataDir(), descriptor.getZipFileName());
+    }
+
+    /**
+     * Opens the memory-mapped tile store of a source image. If there is no up-to-date store yet, the zip file
+     * is converted in the background and the store is used once it is written.
+     *
+     * @param store receives the store; left empty while the image shall be read from the zip file
+     */
+    private static void openTileStore(final OpImage image, final File zipFile,
+                                      final AtomicReference<WatermaskTileStore> store) {
+        if (!Boolean.parseBoolean(System.getProperty(TILE_STORE_PROPERTY, "true"))) {
+            return;
+        }
+        final File storeFile = getStoreFile(zipFile);
+        final WatermaskTileStore validStore = WatermaskTileStore.openIfValid(image, zipFile, storeFile);
+        if (validStore != null) {
+            store.set(validStore);
+            return;
+        }
+        tileStoreConverter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    store.set(WatermaskTileStore.openOrConvert(image, zipFile, storeFile));
+                } catch (IOException e) {
+                    BeamLogManager.getSystemLogger().warning(
+                            MessageFormat.format("Cannot use water mask tile store ''{0}'', reading ''{1}'' instead: {2}",
+                                                 storeFile, zipFile, e.getMessage()));
+                }
+            }
+        });
+    }
+
+
+    private static File getStoreFile(File zipFile) {
+        return new File(zipFile.getPath() + TILE_STORE_EXTENSION);
+    }
+
+    /**
+     * Writes the tile stores of all source images of this classifier next to their zip files, unless they are
+     * up to date already, and reads the images from the stores from then on. Used to convert the water masks
+     * offline, see {@link gov.nasa.gsfc.seadas.watermask.util.LandMaskRasterCreator}.
+     *
+     * @throws IOException if a store cannot be written
+     */
+    public void writeTileStores() throws IOException {
+        if (gshhsImage != null) {
+            writeTileStore(gshhsImage, gshhsZipFile, gshhsStore);
+        }
+        if (centerImage != null) {
+            writeTileStore(centerImage, centerZipFile, centerStore);
+        }
+        if (aboveSixtyNorthImage != null) {
+            writeTileStore(aboveSixtyNorthImage, aboveSixtyNorthZipFile, aboveSixtyNorthStore);
+        }
+        if (belowSixtySouthImage != null) {
+            writeTileStore(belowSixtySouthImage, belowSixtySouthZipFile, belowSixtySouthStore);
+        }
+    }
+
+    private static void writeTileStore(final OpImage image, final File zipFile,
+                                       AtomicReference<WatermaskTileStore> store) throws IOException {
+        final File storeFile = getStoreFile(zipFile);
+        BeamLogManager.getSystemLogger().info(MessageFormat.format("Writing water mask tile store ''{0}''.", storeFile));
+        // on the converter thread, as a JVM cannot hold the lock of a store twice
+        final Future<WatermaskTileStore> conversion = tileStoreConverter.submit(new Callable<WatermaskTileStore>() {
+            @Override
+            public WatermaskTileStore call() throws IOException {
+                return WatermaskTileStore.openOrConvert(image, zipFile, storeFile);
+            }
+        });
+        try {
+            store.set(conversion.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing water mask tile store '" + storeFile + "'.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Cannot write water mask tile store '" + storeFile + "'.", e.getCause());
+        }
+    }
 
     /**
      * Returns the sample value at the given geo-position, regardless of the source resolution.
@@ -377,6 +504,15 @@ public class WatermaskClassifier {
      *         about the position.
      */
     public int getWaterMaskSample(float lat, float lon) {
+        return getWaterMaskSample(lat, lon, null);
+    }
+
+    /**
+     * Returns the sample value at the given geo-position, fetching source tiles through <code>tiles</code>.
+     *
+     * @param tiles the source tiles fetched last; may be <code>null</code>
+     */
+    private int getWaterMaskSample(float lat, float lon, TileCache tiles) {
         double tempLon = lon + 180.0;
         if (tempLon >= 360) {
             tempLon %= 360;
@@ -388,26 +524,37 @@ public class WatermaskClassifier {
             return INVALID_VALUE;
         }
         if (mode == Mode.GSHHS) {
-            return getSample(normLat, tempLon, 180.0, 360.0, 0.0, gshhsImage);
+            return getSample(normLat, tempLon, 180.0, 360.0, 0.0, gshhsImage, gshhsStore.get(), 0, tiles);
         } else {
             if (normLat < 150.0f && normLat > 30.0f) {
-                return getSample(normLat, tempLon, 180.0, 360.0, 0.0, centerImage);
+                return getSample(normLat, tempLon, 180.0, 360.0, 0.0, centerImage, centerStore.get(), 1, tiles);
             } else if (normLat <= 30.0f) {
-                return getSample(normLat, tempLon, 30.0, 360.0, 0.0, aboveSixtyNorthImage);
+                return getSample(normLat, tempLon, 30.0, 360.0, 0.0, aboveSixtyNorthImage,
+                                 aboveSixtyNorthStore.get(), 2, tiles);
             } else if (normLat >= 150.0f) {
 //                return WATER_VALUE;
-                return getSample(normLat, tempLon, 30.0, 360.0, 0.0, belowSixtySouthImage);
+                return getSample(normLat, tempLon, 30.0, 360.0, 0.0, belowSixtySouthImage,
+                                 belowSixtySouthStore.get(), 3, tiles);
             }
         }
         throw new IllegalStateException("Cannot come here");
     }
 
-    private int getSample(double lat, double lon, double latDiff, double lonDiff, double offset, OpImage image) {
+    private int getSample(double lat, double lon, double latDiff, double lonDiff, double offset, OpImage image,
+                          WatermaskTileStore store, int imageIndex, TileCache tiles) {
         final double pixelSizeX = lonDiff / image.getWidth();
         final double pixelSizeY = latDiff / image.getHeight();
         final int x = (int) Math.floor(lon / pixelSizeX);
         final int y = (int) (Math.floor((lat - offset) / pixelSizeY));
-        final Raster tile = image.getTile(image.XToTileX(x), image.YToTileY(y));
+        if (store != null) {
+            final int sample = store.getSample(x, y);
+            if (sample != WatermaskTileStore.NOT_STORED) {
+                return sample;
+            }
+        }
+        final int tileX = image.XToTileX(x);
+        final int tileY = image.YToTileY(y);
+        final Raster tile = tiles != null ? tiles.getTile(image, imageIndex, tileX, tileY) : image.getTile(tileX, tileY);
         if (tile == null) {
             return INVALID_VALUE;
         }
@@ -451,6 +598,88 @@ public class WatermaskClassifier {
         return computeAverage(subsamplingFactorX, subsamplingFactorY, valueSum, invalidCount);
     }
 
+    /**
+     * Returns the fractions of water for all pixels of a rectangle, considering a subsampling factor.
+     * <p/>
+     * This gives the same results as calling {@link #getWaterMaskFraction} for every pixel, but geo-locates
+     * the sub-samples one image line at a time into primitive buffers and keeps the last tile fetched from
+     * each source image, as neighbouring sub-samples mostly fall into the same tile.
+     *
+     * @param geoCoding          The geo coding of the product the watermask fractions shall be computed for.
+     * @param rectangle          The pixel rectangle the watermask fractions shall be computed for.
+     * @param subsamplingFactorX The factor between the high resolution water mask and the source image in x direction.
+     * @param subsamplingFactorY The factor between the high resolution water mask and the source image in y direction.
+     * @param fractions          Receives the fractions of water in the range [0..100], line by line;
+     *                           must hold at least <code>rectangle.width * rectangle.height</code> values.
+     */
+    public void getWaterMaskFractions(GeoCoding geoCoding, Rectangle rectangle, int subsamplingFactorX,
+                                      int subsamplingFactorY, byte[] fractions) {
+        final double xStep = 1.0 / subsamplingFactorX;
+        final double yStep = 1.0 / subsamplingFactorY;
+        final int samplesPerPixel = subsamplingFactorX * subsamplingFactorY;
+        final int sampleCount = rectangle.width * samplesPerPixel;
+        final float[] pixelX = new float[sampleCount];
+        final float[] pixelY = new float[sampleCount];
+        final float[] lats = new float[sampleCount];
+        final float[] lons = new float[sampleCount];
+        final TileCache tiles = new TileCache();
+
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            int i = 0;
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                for (int sx = 0; sx < subsamplingFactorX; sx++) {
+                    final float currentX = (float) (x + sx * xStep);
+                    for (int sy = 0; sy < subsamplingFactorY; sy++) {
+                        pixelX[i] = currentX;
+                        pixelY[i] = (float) (y + sy * yStep);
+                        i++;
+                    }
+                }
+            }
+            getGeoPos(geoCoding, pixelX, pixelY, lats, lons, sampleCount);
+
+            final int lineOffset = (y - rectangle.y) * rectangle.width;
+            for (int px = 0; px < rectangle.width; px++) {
+                float valueSum = 0;
+                int invalidCount = 0;
+                for (int s = px * samplesPerPixel; s < (px + 1) * samplesPerPixel; s++) {
+                    final int waterMaskSample;
+                    if (Float.isNaN(lats[s]) || Float.isNaN(lons[s])) {
+                        waterMaskSample = INVALID_VALUE;
+                    } else {
+                        waterMaskSample = getWaterMaskSample(lats[s], lons[s], tiles);
+                    }
+                    if (waterMaskSample != INVALID_VALUE) {
+                        valueSum += waterMaskSample;
+                    } else {
+                        invalidCount++;
+                    }
+                }
+                fractions[lineOffset + px] = computeAverage(subsamplingFactorX, subsamplingFactorY, valueSum, invalidCount);
+            }
+        }
+    }
+
+    /**
+     * Geo-locates many pixel positions at once. Positions without a valid geo-position get <code>NaN</code>.
+     */
+    private static void getGeoPos(GeoCoding geoCoding, float[] pixelX, float[] pixelY, float[] lats, float[] lons,
+                                  int count) {
+        final PixelPos pixelPos = new PixelPos();
+        final GeoPos geoPos = new GeoPos();
+        for (int i = 0; i < count; i++) {
+            pixelPos.setLocation(pixelX[i], pixelY[i]);
+            geoCoding.getGeoPos(pixelPos, geoPos);
+            if (geoPos.isValid()) {
+                lats[i] = geoPos.lat;
+                lons[i] = geoPos.lon;
+            } else {
+                lats[i] = Float.NaN;
+                lons[i] = Float.NaN;
+            }
+        }
+    }
+
     private byte computeAverage(int subsamplingFactorX, int subsamplingFactorY, float valueSum, int invalidCount) {
         final boolean allValuesInvalid = invalidCount == subsamplingFactorX * subsamplingFactorY;
         if (allValuesInvalid) {
@@ -483,4 +712,32 @@ public class WatermaskClassifier {
         return waterMaskSample == WATER_VALUE;
     }
 
+    /**
+     * The tile fetched last from each of the source images, indexed by the image index passed to
+     * {@link #getSample}.
+     */
+    private static final class TileCache {
+
+        private static final int IMAGE_COUNT = 4;
+
+        private final Raster[] tiles = new Raster[IMAGE_COUNT];
+        private final int[] tileXs = new int[IMAGE_COUNT];
+        private final int[] tileYs = new int[IMAGE_COUNT];
+
+        private TileCache() {
+            // no tile has been fetched yet; tile indices are never negative
+            Arrays.fill(tileXs, -1);
+            Arrays.fill(tileYs, -1);
+        }
+
+        private Raster getTile(OpImage image, int imageIndex, int tileX, int tileY) {
+            if (tileXs[imageIndex] != tileX || tileYs[imageIndex] != tileY) {
+                tiles[imageIndex] = image.getTile(tileX, tileY);
+                tileXs[imageIndex] = tileX;
+                tileYs[imageIndex] = tileY;
+            }
+            return tiles[imageIndex];
+        }
+    }
+
 }
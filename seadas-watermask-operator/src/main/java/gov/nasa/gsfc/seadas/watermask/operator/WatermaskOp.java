@@ -149,24 +149,35 @@ public class WatermaskOp extends Operator {
         final Rectangle rectangle = targetTile.getRectangle();
         try {
             final String targetBandName = targetBand.getName();
-            final PixelPos pixelPos = new PixelPos();
             final GeoCoding geoCoding = sourceProduct.getGeoCoding();
-            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+            if (targetBandName.equals(LAND_WATER_FRACTION_BAND_NAME)) {
+                final byte[] fractions = new byte[rectangle.width * rectangle.height];
+                classifier.getWaterMaskFractions(geoCoding, rectangle,
+                        superSamplingFactor,
+                        superSamplingFactor, fractions);
+                int i = 0;
                 for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
-                    pixelPos.x = x;
-                    pixelPos.y = y;
-                    int dataValue = 0;
-                    if (targetBandName.equals(LAND_WATER_FRACTION_BAND_NAME)) {
-                        dataValue = classifier.getWaterMaskFraction(geoCoding, pixelPos,
-                                superSamplingFactor,
-                                superSamplingFactor);
-                    } else if (targetBandName.equals(COAST_BAND_NAME)) {
+                    for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                        targetTile.setSample(x, y, fractions[i++]);
+                    }
+                }
+            } else if (targetBandName.equals(COAST_BAND_NAME)) {
+                final PixelPos pixelPos = new PixelPos();
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                    for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                        pixelPos.x = x;
+                        pixelPos.y = y;
                         final boolean coastline = isCoastline(geoCoding, pixelPos,
                                 superSamplingFactor,
                                 superSamplingFactor);
-                        dataValue = coastline ? 1 : 0;
+                        targetTile.setSample(x, y, coastline ? 1 : 0);
+                    }
+                }
+            } else {
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                    for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+                        targetTile.setSample(x, y, 0);
                     }
-                    targetTile.setSample(x, y, dataValue);
                 }
             }
 
@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package gov.nasa.gsfc.seadas.watermask.operator;
+
+import javax.media.jai.PlanarImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A flat, uncompressed copy of a water mask source image which is read through memory mapping.
+ * <p/>
+ * The zipped source images inflate or PNG-decode a tile whenever it drops out of the tile cache.
+ * The store is converted once from such an image and afterwards every lookup is a plain read from
+ * the mapped file, with neither decoding cost nor heap footprint. As the store lives next to the zip
+ * file and is written under a file lock, all JVMs on a host share the same conversion. The lock file
+ * is removed once the store is written.
+ * <p/>
+ * Most of a water mask is land, water or invalid, so the store keeps a pyramid of three levels:
+ * <ul>
+ * <li>tiles holding a single value are recorded in the index only,</li>
+ * <li>tiles holding nothing but land, water and invalid are packed to 2 bits per pixel, preceded by a
+ * summary telling for every block of {@link #BLOCK_SIZE} by {@link #BLOCK_SIZE} pixels whether it is
+ * all land, all water, all invalid or mixed,</li>
+ * <li>any other tile is kept with one byte per pixel.</li>
+ * </ul>
+ * Homogeneous tiles and blocks are answered without touching the full resolution data.
+ * <p/>
+ * File layout: a header of {@link #HEADER_INTS} ints (magic, version, width, height, tile width,
+ * tile height, tiles in x, tiles in y, number of byte tiles, number of packed tiles, block size),
+ * followed by one int per tile, the byte tiles and the packed tiles. An index entry <code>&gt;= 0</code>
+ * is the slot of a byte tile, an entry with {@link #PACKED} set the slot of a packed tile,
+ * <code>-1 - value</code> marks a tile filled with <code>value</code> and {@link #ABSENT} a tile
+ * which could not be converted.
+ */
+public class WatermaskTileStore {
+
+    /**
+     * Returned by {@link #getSample(int, int)} for tiles the store does not hold.
+     */
+    static final int NOT_STORED = -1;
+
+    private static final int MAGIC = 0x53574D54; // "SWMT"
+    private static final int VERSION = 2;
+    private static final int HEADER_INTS = 11;
+    private static final int ABSENT = Integer.MIN_VALUE;
+    private static final int PACKED = 1 << 30;
+    private static final int BLOCK_SIZE = 32;
+    // number of homogeneous tile buffers remembered while converting; the zip images share one per value
+    private static final int MAX_KNOWN_BUFFERS = 8;
+
+    // the values of the 2 bit codes; the remaining code marks a mixed block in the summary
+    private static final int[] CODE_VALUES = {
+            WatermaskClassifier.LAND_VALUE,
+            WatermaskClassifier.WATER_VALUE,
+            WatermaskClassifier.INVALID_VALUE
+    };
+    private static final int MIXED = 3;
+
+    private final int width;
+    private final int height;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int numXTiles;
+    private final int numYTiles;
+    private final int[] index;
+    private final int blocksX;
+    private final int summaryBytes;
+    private final Chunks byteTiles;
+    private final Chunks packedTiles;
+
+    private WatermaskTileStore(int width, int height, int tileWidth, int tileHeight, int numXTiles, int numYTiles,
+                               int[] index, Chunks byteTiles, Chunks packedTiles) {
+        this.width = width;
+        this.height = height;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.numXTiles = numXTiles;
+        this.numYTiles = numYTiles;
+        this.index = index;
+        this.blocksX = getBlockCount(tileWidth);
+        this.summaryBytes = getSummaryBytes(tileWidth, tileHeight);
+        this.byteTiles = byteTiles;
+        this.packedTiles = packedTiles;
+    }
+
+    /**
+     * Opens the store of the given image, converting the image first if there is no up-to-date store yet.
+     *
+     * @param image      the source image
+     * @param sourceFile the file the image is read from; a store older than this file is converted again
+     * @param storeFile  the store file
+     * @return the store
+     * @throws IOException if the store can neither be opened nor written
+     */
+    static WatermaskTileStore openOrConvert(PlanarImage image, File sourceFile, File storeFile) throws IOException {
+        WatermaskTileStore store = openIfValid(image, sourceFile, storeFile);
+        if (store != null) {
+            return store;
+        }
+        final File lockPath = new File(storeFile.getPath() + ".lock");
+        final RandomAccessFile lockFile = new RandomAccessFile(lockPath, "rw");
+        try {
+            // blocks while another JVM converts the same image
+            final FileLock lock = lockFile.getChannel().lock();
+            try {
+                store = openIfValid(image, sourceFile, storeFile);
+                if (store == null) {
+                    convert(image, storeFile);
+                    store = open(storeFile);
+                }
+                // JVMs coming later find the valid store before they look for the lock
+                lockPath.delete();
+                return store;
+            } finally {
+                lock.release();
+            }
+        } finally {
+            lockFile.close();
+        }
+    }
+
+    /**
+     * Writes the store of the given image.
+     *
+     * @param image     the source image, a single banded byte image
+     * @param storeFile the store file
+     * @throws IOException if the store cannot be written
+     */
+    static void convert(PlanarImage image, File storeFile) throws IOException {
+        final int tileWidth = image.getTileWidth();
+        final int tileHeight = image.getTileHeight();
+        final int numXTiles = image.getNumXTiles();
+        final int numYTiles = image.getNumYTiles();
+        final int[] index = new int[numXTiles * numYTiles];
+        final byte[] tileData = new byte[tileWidth * tileHeight];
+        final byte[] packedData = new byte[getSummaryBytes(tileWidth, tileHeight) + getPackedBytes(tileWidth, tileHeight)];
+        // tiles sharing the data of a homogeneous tile are recognized without scanning them again
+        final Map<DataBuffer, Integer> homogeneousBuffers = new IdentityHashMap<DataBuffer, Integer>();
+
+        final File tempFile = File.createTempFile(storeFile.getName(), ".tmp", storeFile.getParentFile());
+        final File packedFile = File.createTempFile(storeFile.getName(), ".tmp", storeFile.getParentFile());
+        try {
+            final RandomAccessFile file = new RandomAccessFile(tempFile, "rw");
+            try {
+                final RandomAccessFile packed = new RandomAccessFile(packedFile, "rw");
+                try {
+                    final long dataStart = 4L * (HEADER_INTS + index.length);
+                    file.seek(dataStart);
+                    int byteSlot = 0;
+                    int packedSlot = 0;
+                    for (int tileY = 0; tileY < numYTiles; tileY++) {
+                        for (int tileX = 0; tileX < numXTiles; tileX++) {
+                            final int tileIndex = tileY * numXTiles + tileX;
+                            final Raster tile;
+                            try {
+                                tile = image.getTile(image.getMinTileX() + tileX, image.getMinTileY() + tileY);
+                            } catch (RuntimeException e) {
+                                index[tileIndex] = ABSENT;
+                                continue;
+                            }
+                            if (tile == null) {
+                                index[tileIndex] = ABSENT;
+                                continue;
+                            }
+                            final Integer knownValue = homogeneousBuffers.get(tile.getDataBuffer());
+                            if (knownValue != null) {
+                                index[tileIndex] = -1 - knownValue;
+                                continue;
+                            }
+                            readTileData(tile, tileWidth, tileHeight, tileData);
+                            final int value = getHomogeneousValue(tileData);
+                            if (value >= 0) {
+                                if (homogeneousBuffers.size() == MAX_KNOWN_BUFFERS) {
+                                    homogeneousBuffers.clear();
+                                }
+                                homogeneousBuffers.put(tile.getDataBuffer(), value);
+                                index[tileIndex] = -1 - value;
+                            } else if (pack(tileData, tileWidth, tileHeight, packedData)) {
+                                packed.write(packedData);
+                                index[tileIndex] = PACKED | packedSlot++;
+                            } else {
+                                file.write(tileData);
+                                index[tileIndex] = byteSlot++;
+                            }
+                        }
+                    }
+
+                    // the packed tiles follow the byte tiles
+                    final FileChannel packedChannel = packed.getChannel();
+                    long transferred = 0;
+                    while (transferred < packedChannel.size()) {
+                        transferred += packedChannel.transferTo(transferred, packedChannel.size() - transferred,
+                                                                file.getChannel());
+                    }
+
+                    file.seek(0);
+                    final ByteBuffer header = ByteBuffer.allocate((int) dataStart);
+                    header.putInt(MAGIC).putInt(VERSION)
+                            .putInt(image.getWidth()).putInt(image.getHeight())
+                            .putInt(tileWidth).putInt(tileHeight)
+                            .putInt(numXTiles).putInt(numYTiles)
+                            .putInt(byteSlot).putInt(packedSlot)
+                            .putInt(BLOCK_SIZE);
+                    header.asIntBuffer().put(index);
+                    file.write(header.array());
+                } finally {
+                    packed.close();
+                }
+            } finally {
+                file.close();
+            }
+            if (storeFile.exists() && !storeFile.delete()) {
+                throw new IOException("Cannot replace water mask tile store '" + storeFile + "'.");
+            }
+            if (!tempFile.renameTo(storeFile)) {
+                throw new IOException("Cannot write water mask tile store '" + storeFile + "'.");
+            }
+        } finally {
+            tempFile.delete();
+            packedFile.delete();
+        }
+    }
+
+    /**
+     * Maps an existing store.
+     *
+     * @param storeFile the store file
+     * @return the store
+     * @throws IOException if the file cannot be read or is no water mask tile store
+     */
+    static WatermaskTileStore open(File storeFile) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(storeFile, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            final ByteBuffer header = ByteBuffer.allocate(4 * HEADER_INTS);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < 4 * HEADER_INTS || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a water mask tile store: '" + storeFile + "'.");
+            }
+            final int width = header.getInt();
+            final int height = header.getInt();
+            final int tileWidth = header.getInt();
+            final int tileHeight = header.getInt();
+            final int numXTiles = header.getInt();
+            final int numYTiles = header.getInt();
+            final int byteSlots = header.getInt();
+            final int packedSlots = header.getInt();
+            if (header.getInt() != BLOCK_SIZE) {
+                throw new IOException("Unsupported block size in water mask tile store: '" + storeFile + "'.");
+            }
+
+            final int[] index = new int[numXTiles * numYTiles];
+            final ByteBuffer indexBuffer = ByteBuffer.allocate(4 * index.length);
+            channel.read(indexBuffer, 4L * HEADER_INTS);
+            indexBuffer.flip();
+            final IntBuffer indexInts = indexBuffer.asIntBuffer();
+            if (indexInts.remaining() != index.length) {
+                throw new IOException("Truncated water mask tile store: '" + storeFile + "'.");
+            }
+            indexInts.get(index);
+
+            final long byteRecord = (long) tileWidth * tileHeight;
+            final long packedRecord = getSummaryBytes(tileWidth, tileHeight) + getPackedBytes(tileWidth, tileHeight);
+            final long byteStart = 4L * (HEADER_INTS + index.length);
+            final long packedStart = byteStart + byteSlots * byteRecord;
+            if (channel.size() < packedStart + packedSlots * packedRecord) {
+                throw new IOException("Truncated water mask tile store: '" + storeFile + "'.");
+            }
+            return new WatermaskTileStore(width, height, tileWidth, tileHeight, numXTiles, numYTiles, index,
+                                          new Chunks(channel, byteStart, byteSlots, byteRecord),
+                                          new Chunks(channel, packedStart, packedSlots, packedRecord));
+        } finally {
+            // mappings stay valid after the channel is closed
+            file.close();
+        }
+    }
+
+    /**
+     * Returns the sample at the given image position.
+     *
+     * @return the sample, {@link WatermaskClassifier#INVALID_VALUE} outside of the image, including the
+     *         padding of the last tiles, or {@link #NOT_STORED} if the tile is not part of the store
+     */
+    int getSample(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return WatermaskClassifier.INVALID_VALUE;
+        }
+        final int tileX = x / tileWidth;
+        final int tileY = y / tileHeight;
+        final int entry = index[tileY * numXTiles + tileX];
+        if (entry == ABSENT) {
+            return NOT_STORED;
+        }
+        if (entry < 0) {
+            return -1 - entry;
+        }
+        final int localX = x - tileX * tileWidth;
+        final int localY = y - tileY * tileHeight;
+        if ((entry & PACKED) == 0) {
+            return byteTiles.get(entry, localY * tileWidth + localX) & 0xFF;
+        }
+
+        final int slot = entry & ~PACKED;
+        final int block = (localY / BLOCK_SIZE) * blocksX + localX / BLOCK_SIZE;
+        final int blockCode = getCode(packedTiles.get(slot, block >> 2), block);
+        if (blockCode != MIXED) {
+            return CODE_VALUES[blockCode];
+        }
+        final int pixel = localY * tileWidth + localX;
+        return CODE_VALUES[getCode(packedTiles.get(slot, summaryBytes + (pixel >> 2)), pixel)];
+    }
+
+    private boolean matches(PlanarImage image) {
+        return width == image.getWidth() && height == image.getHeight()
+               && tileWidth == image.getTileWidth() && tileHeight == image.getTileHeight()
+               && numXTiles == image.getNumXTiles() && numYTiles == image.getNumYTiles();
+    }
+
+    /**
+     * Opens the store of the given image if it is up to date.
+     *
+     * @return the store, or <code>null</code> if the image has to be converted first
+     */
+    static WatermaskTileStore openIfValid(PlanarImage image, File sourceFile, File storeFile) {
+        if (!storeFile.isFile() || storeFile.lastModified() < sourceFile.lastModified()) {
+            return null;
+        }
+        try {
+            final WatermaskTileStore store = open(storeFile);
+            return store.matches(image) ? store : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Packs a tile to 2 bits per pixel, preceded by its block summary.
+     *
+     * @return <code>false</code> if the tile holds values which cannot be packed
+     */
+    private static boolean pack(byte[] tileData, int tileWidth, int tileHeight, byte[] packedData) {
+        final int blocksX = getBlockCount(tileWidth);
+        final int blocksY = getBlockCount(tileHeight);
+        final int summaryBytes = getSummaryBytes(tileWidth, tileHeight);
+        Arrays.fill(packedData, (byte) 0);
+
+        for (int i = 0; i < tileData.length; i++) {
+            final int code = getCodeOf(tileData[i]);
+            if (code < 0) {
+                return false;
+            }
+            packedData[summaryBytes + (i >> 2)] |= (byte) (code << ((i & 3) * 2));
+        }
+
+        for (int blockY = 0; blockY < blocksY; blockY++) {
+            for (int blockX = 0; blockX < blocksX; blockX++) {
+                final int x0 = blockX * BLOCK_SIZE;
+                final int y0 = blockY * BLOCK_SIZE;
+                final int x1 = Math.min(x0 + BLOCK_SIZE, tileWidth);
+                final int y1 = Math.min(y0 + BLOCK_SIZE, tileHeight);
+                final byte first = tileData[y0 * tileWidth + x0];
+                int blockCode = getCodeOf(first);
+                for (int y = y0; y < y1 && blockCode != MIXED; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        if (tileData[y * tileWidth + x] != first) {
+                            blockCode = MIXED;
+                            break;
+                        }
+                    }
+                }
+                final int block = blockY * blocksX + blockX;
+                packedData[block >> 2] |= (byte) (blockCode << ((block & 3) * 2));
+            }
+        }
+        return true;
+    }
+
+    private static int getCodeOf(byte value) {
+        for (int code = 0; code < CODE_VALUES.length; code++) {
+            if (CODE_VALUES[code] == (value & 0xFF)) {
+                return code;
+            }
+        }
+        return -1;
+    }
+
+    private static int getCode(byte packed, int position) {
+        return (packed >> ((position & 3) * 2)) & 3;
+    }
+
+    private static int getBlockCount(int size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    private static int getSummaryBytes(int tileWidth, int tileHeight) {
+        return (getBlockCount(tileWidth) * getBlockCount(tileHeight) + 3) / 4;
+    }
+
+    private static int getPackedBytes(int tileWidth, int tileHeight) {
+        return (tileWidth * tileHeight + 3) / 4;
+    }
+
+    private static void readTileData(Raster tile, int tileWidth, int tileHeight, byte[] tileData) {
+        final SampleModel sampleModel = tile.getSampleModel();
+        final DataBuffer dataBuffer = tile.getDataBuffer();
+        if (dataBuffer instanceof DataBufferByte
+            && sampleModel instanceof ComponentSampleModel
+            && ((ComponentSampleModel) sampleModel).getPixelStride() == 1
+            && ((ComponentSampleModel) sampleModel).getScanlineStride() == tileWidth
+            && tile.getWidth() == tileWidth && tile.getHeight() == tileHeight
+            && tile.getSampleModelTranslateX() == tile.getMinX()
+            && tile.getSampleModelTranslateY() == tile.getMinY()
+            && dataBuffer.getOffset() == 0
+            && ((ComponentSampleModel) sampleModel).getBandOffsets()[0] == 0
+            && ((DataBufferByte) dataBuffer).getData().length >= tileData.length) {
+            System.arraycopy(((DataBufferByte) dataBuffer).getData(), 0, tileData, 0, tileData.length);
+            return;
+        }
+        final int[] line = new int[tileWidth];
+        final int width = Math.min(tileWidth, tile.getWidth());
+        final int height = Math.min(tileHeight, tile.getHeight());
+        for (int y = 0; y < height; y++) {
+            tile.getSamples(tile.getMinX(), tile.getMinY() + y, width, 1, 0, line);
+            for (int x = 0; x < width; x++) {
+                tileData[y * tileWidth + x] = (byte) line[x];
+            }
+        }
+    }
+
+    private static int getHomogeneousValue(byte[] tileData) {
+        final byte first = tileData[0];
+        for (byte value : tileData) {
+            if (value != first) {
+                return -1;
+            }
+        }
+        return first & 0xFF;
+    }
+
+    /**
+     * Tile records of a fixed size, mapped in chunks of whole records as a single mapping cannot exceed 2 GB.
+     */
+    private static final class Chunks {
+
+        private final int recordSize;
+        private final int recordsPerChunk;
+        private final MappedByteBuffer[] buffers;
+
+        Chunks(FileChannel channel, long start, int recordCount, long recordSize) throws IOException {
+            this.recordSize = (int) recordSize;
+            recordsPerChunk = (int) Math.max(1, Integer.MAX_VALUE / recordSize);
+            buffers = new MappedByteBuffer[(recordCount + recordsPerChunk - 1) / recordsPerChunk];
+            for (int i = 0; i < buffers.length; i++) {
+                final int records = Math.min(recordsPerChunk, recordCount - i * recordsPerChunk);
+                buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                         start + i * recordsPerChunk * recordSize, records * recordSize);
+            }
+        }
+
+        byte get(int record, int offset) {
+            return buffers[record / recordsPerChunk].get((record % recordsPerChunk) * recordSize + offset);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package gov.nasa.gsfc.seadas.watermask.util;
 
 import com.bc.ceres.glevel.MultiLevelImage;
+import gov.nasa.gsfc.seadas.watermask.operator.WatermaskClassifier;
 import org.esa.beam.framework.dataio.ProductIO;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.Product;
@@ -33,7 +34,14 @@ import java.text.MessageFormat;
  */
 public class LandMaskRasterCreator {
 
+    static final String TILE_STORE_OPTION = "-tileStore";
+
     public static void main(String[] args) throws IOException {
+        if (args.length >= 2 && args.length <= 3 && TILE_STORE_OPTION.equals(args[0])) {
+            final String filename = args.length == 3 ? args[2] : WatermaskClassifier.FILENAME_USE_DEFAULT;
+            createTileStoreFiles(Integer.parseInt(args[1]), filename);
+            return;
+        }
         if (args.length != 2) {
             printUsage();
             System.exit(-1);
@@ -47,6 +55,9 @@ public class LandMaskRasterCreator {
     private static void printUsage() {
         System.out.println("Usage: ");
         System.out.println("    LandMaskRasterCreator $sourceFile $targetPath");
+        System.out.println("    LandMaskRasterCreator " + TILE_STORE_OPTION + " $resolution [$filename]");
+        System.out.println("    With " + TILE_STORE_OPTION + ", the memory-mapped tile stores of the installed water mask");
+        System.out.println("    of the given resolution are written next to its zip files.");
         System.out.println("    System will exit.");
     }
 
@@ -85,6 +96,21 @@ public class LandMaskRasterCreator {
         }
     }
 
+    /**
+     * Converts the zip files of a water mask into the tile stores the {@link WatermaskClassifier} reads, so the
+     * classifier does not need to convert them on first use.
+     *
+     * @param resolution the resolution of the water mask in meters
+     * @param filename   the zip file of the water mask, or {@link WatermaskClassifier#FILENAME_USE_DEFAULT}
+     */
+    static void createTileStoreFiles(int resolution, String filename) throws IOException {
+        // the stores are written below, not by the classifier itself
+        System.setProperty(WatermaskClassifier.TILE_STORE_PROPERTY, "false");
+        final WatermaskClassifier classifier = new WatermaskClassifier(resolution, WatermaskClassifier.Mode.DEFAULT,
+                                                                       filename);
+        classifier.writeTileStores();
+    }
+
     private Product readLwProduct(String sourcePath) {
         final Product lwProduct;
         try {
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package gov.nasa.gsfc.seadas.watermask.operator;
+
+import org.esa.beam.util.ImageUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class WatermaskTileStoreTest {
+
+    private File sourceFile;
+    private File storeFile;
+    private TiledImage image;
+
+    @Before
+    public void setUp() throws Exception {
+        sourceFile = File.createTempFile("watermask", ".zip");
+        storeFile = new File(sourceFile.getPath() + WatermaskClassifier.TILE_STORE_EXTENSION);
+        image = new TiledImage(0, 0, 100, 70, 0, 0,
+                               ImageUtils.createSingleBandedSampleModel(DataBuffer.TYPE_BYTE, 16, 16), null);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                // mixed tiles on the left, homogeneous water tiles on the right
+                image.setSample(x, y, 0, x < 48 ? (x + y) % 2 : WatermaskClassifier.WATER_VALUE);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sourceFile.delete();
+        storeFile.delete();
+        new File(storeFile.getPath() + ".lock").delete();
+    }
+
+    @Test
+    public void testConvertAndRead() throws Exception {
+        final WatermaskTileStore store = WatermaskTileStore.openOrConvert(image, sourceFile, storeFile);
+
+        assertTrue(storeFile.isFile());
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                assertEquals(image.getTile(x / 16, y / 16).getSample(x, y, 0), store.getSample(x, y));
+            }
+        }
+        assertEquals(WatermaskClassifier.INVALID_VALUE, store.getSample(-1, 0));
+        assertEquals(WatermaskClassifier.INVALID_VALUE, store.getSample(0, 112));
+        // the padding of the last tile column and row is not part of the image
+        assertEquals(WatermaskClassifier.INVALID_VALUE, store.getSample(100, 0));
+        assertEquals(WatermaskClassifier.INVALID_VALUE, store.getSample(0, 70));
+        assertFalse(new File(storeFile.getPath() + ".lock").exists());
+    }
+
+    @Test
+    public void testPackedAndUnpackedTiles() throws Exception {
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                // invalid pixels can be packed, other values cannot
+                image.setSample(x, y, 0, x < 8 ? WatermaskClassifier.INVALID_VALUE : WatermaskClassifier.LAND_VALUE);
+                image.setSample(x + 16, y, 0, x < 8 ? 5 : WatermaskClassifier.LAND_VALUE);
+            }
+        }
+        final WatermaskTileStore store = WatermaskTileStore.openOrConvert(image, sourceFile, storeFile);
+
+        assertEquals(WatermaskClassifier.INVALID_VALUE, store.getSample(3, 3));
+        assertEquals(WatermaskClassifier.LAND_VALUE, store.getSample(12, 3));
+        assertEquals(5, store.getSample(19, 3));
+        assertEquals(WatermaskClassifier.LAND_VALUE, store.getSample(28, 3));
+        assertEquals(WatermaskClassifier.WATER_VALUE, store.getSample(99, 69));
+    }
+
+    @Test
+    public void testStoreIsReused() throws Exception {
+        WatermaskTileStore.openOrConvert(image, sourceFile, storeFile);
+        final long lastModified = storeFile.lastModified();
+
+        final WatermaskTileStore store = WatermaskTileStore.openOrConvert(image, sourceFile, storeFile);
+
+        assertEquals(lastModified, storeFile.lastModified());
+        assertEquals(WatermaskClassifier.WATER_VALUE, store.getSample(60, 10));
+    }
+}
@@ -0,0 +1,92 @@
+package gov.nasa.gsfc.seadas.writeimage;
+
+import com.bc.ceres.grender.support.BufferedImageRendering;
+import org.esa.beam.framework.ui.product.ProductSceneView;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.SourcelessOpImage;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Image of all layers of a scene view, rendered strip by strip when the strips are requested.
+ * <p/>
+ * Each tile of the image is a strip spanning the full image width. Image encoders pull the strips
+ * one after another, so only a few strips are held in memory at any time instead of the whole image.
+ * The image, mask, contour, graticule and annotation layers are rendered into each strip with the
+ * same viewport as for a single image of the full size, so the strips join seamlessly.
+ */
+class LayerStripImage extends SourcelessOpImage {
+
+    // rendered strips kept for encoders reading a strip in several requests
+    private static final int CACHED_STRIPS = 2;
+
+    private final ProductSceneView view;
+    private final Dimension dimension;
+    private final boolean alphaChannel;
+    private final boolean geoReferenced;
+    private final ColorModel colorModel;
+
+    /**
+     * @param view          the scene view to render
+     * @param dimension     the size of the full image
+     * @param alphaChannel  whether the image has an alpha channel
+     * @param geoReferenced whether the image is rendered in image instead of view coordinates
+     * @param stripHeight   the height of the strips
+     */
+    LayerStripImage(ProductSceneView view, Dimension dimension, boolean alphaChannel, boolean geoReferenced,
+                    int stripHeight) {
+        this(view, dimension, alphaChannel, geoReferenced,
+             new BufferedImage(1, 1, alphaChannel ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR),
+             Math.max(1, Math.min(stripHeight, dimension.height)));
+    }
+
+    private LayerStripImage(ProductSceneView view, Dimension dimension, boolean alphaChannel, boolean geoReferenced,
+                            BufferedImage prototype, int stripHeight) {
+        this(view, dimension, alphaChannel, geoReferenced, prototype.getColorModel(),
+             prototype.getSampleModel().createCompatibleSampleModel(dimension.width, stripHeight));
+    }
+
+    private LayerStripImage(ProductSceneView view, Dimension dimension, boolean alphaChannel, boolean geoReferenced,
+                            ColorModel colorModel, SampleModel sampleModel) {
+        super(new ImageLayout(0, 0, dimension.width, dimension.height, 0, 0,
+                              sampleModel.getWidth(), sampleModel.getHeight(), sampleModel, colorModel),
+              null, sampleModel, 0, 0, dimension.width, dimension.height);
+        this.view = view;
+        this.dimension = new Dimension(dimension);
+        this.alphaChannel = alphaChannel;
+        this.geoReferenced = geoReferenced;
+        this.colorModel = colorModel;
+
+        final long stripBytes = (long) sampleModel.getWidth() * sampleModel.getHeight() * sampleModel.getNumBands();
+        setTileCache(JAI.createTileCache(CACHED_STRIPS * stripBytes));
+    }
+
+    @Override
+    protected synchronized void computeRect(PlanarImage[] sources, WritableRaster dest, Rectangle destRect) {
+        // render straight into the strip raster
+        final WritableRaster stripRaster = dest.createWritableChild(destRect.x, destRect.y,
+                                                                    destRect.width, destRect.height, 0, 0, null);
+        final BufferedImage strip = new BufferedImage(colorModel, stripRaster, false, null);
+
+        final Rectangle stripBounds = new Rectangle(destRect);
+        final BufferedImageRendering rendering = WriteImageOp.createRendering(view, true, geoReferenced, strip,
+                                                                              dimension, stripBounds);
+        final Graphics2D graphics = rendering.getGraphics();
+        // shift the strip's part of the full image onto the strip
+        final AffineTransform transform = AffineTransform.getTranslateInstance(-destRect.x, -destRect.y);
+        transform.concatenate(graphics.getTransform());
+        graphics.setTransform(transform);
+        if (!alphaChannel) {
+            graphics.setColor(view.getLayerCanvas().getBackground());
+            graphics.fill(stripBounds);
+        }
+        view.getRootLayer().render(rendering);
+    }
+}
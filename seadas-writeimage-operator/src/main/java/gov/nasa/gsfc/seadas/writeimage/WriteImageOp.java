@@ -7,6 +7,7 @@ import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.glayer.*;
 import com.bc.ceres.glayer.support.ImageLayer;
 import com.bc.ceres.glayer.support.LayerUtils;
+import com.bc.ceres.glevel.MultiLevelModel;
 import com.bc.ceres.grender.Viewport;
 import com.bc.ceres.grender.support.BufferedImageRendering;
 import com.bc.ceres.grender.support.DefaultViewport;
@@ -36,6 +37,7 @@ import org.esa.beam.util.ProductUtils;
 import org.esa.beam.util.PropertyMap;
 import org.esa.beam.util.geotiff.GeoTIFF;
 import org.esa.beam.util.geotiff.GeoTIFFMetadata;
+import org.esa.beam.util.math.Histogram;
 import org.esa.beam.util.math.MathUtils;
 import org.esa.beam.visat.VisatApp;
 import org.esa.beam.visat.actions.ShowColorBarOverlayAction;
@@ -58,8 +60,18 @@ import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author kutila
@@ -110,7 +122,7 @@ public class WriteImageOp extends Operator {
     private String contourProductFilePath;
 
     @Parameter(description = "Name of band containing data. If not provided, first band in the source product is used.")
-    private String sourceBandName;
+    String sourceBandName;
 
 //    @Parameter(description = "Mask color as an RGB value. Defaults to 192,192,192.")
 //    private int[] imageMaskColor;
@@ -134,6 +146,15 @@ public class WriteImageOp extends Operator {
     @Parameter(description = "Add contour layer to the target image.", defaultValue = "false")
     private boolean contourLayer;
 
+    @Parameter(itemAlias = "batchImage", description = "Specifies the images of a batch run. Each image is rendered " +
+            "from a band of the source product or of another product, with the masks, contours, text annotations " +
+            "and layers configured for this operator. If batch images are given, only they are written.")
+    BatchImage[] batchImages = {};
+
+    @Parameter(description = "Number of products rendered in parallel in a batch run. 0 uses one thread per processor.",
+            defaultValue = "0")
+    int batchThreadCount;
+
     @Parameter(description = "Add text annotation layer to the target image.", defaultValue = "false")
     private boolean textAnnotationLayer;
 
@@ -148,26 +169,35 @@ public class WriteImageOp extends Operator {
 
 
     @Parameter(description = "The file to which the image is written.")
-    private String filePath;
+    String filePath;
 
     @Parameter(description = "Output image format", defaultValue = "png")
-    private String formatName;
+    String formatName;
 
     @Parameter(description = "Color palette definition file", defaultValue = "nofile.cpd")
-    private String cpdFilePath;
+    String cpdFilePath;
 
     @Parameter(description = "Auto distribute points between min/max", defaultValue = "true")
     private boolean cpdAutoDistribute;
 
     @Parameter(description = "Minimum value of colour scale. Used only if colour palette definition not present.", defaultValue = "0.01")
-    private double colourScaleMin;
+    double colourScaleMin;
 
     @Parameter(description = "Maximum value of colour scale. Used only if colour palette definition not present.", defaultValue = "1.0")
-    private double colourScaleMax;
+    double colourScaleMax;
+
+    @Parameter(description = "Derive the colour scale from approximate band statistics, computed on a reduced " +
+            "resolution level, instead of using colourScaleMin and colourScaleMax.", defaultValue = "false")
+    private boolean colourScaleAuto;
 
     @Parameter(description = "Output image reduction factor.", defaultValue = "0")
     private int level;
 
+    @Parameter(description = "Height of the image strips rendered and written one at a time, " +
+            "bounding the memory used for very large images. 0 renders the whole image at once.",
+            defaultValue = "0")
+    private int stripHeight;
+
     /**
      * From API docs:
      * <p>
@@ -177,13 +207,32 @@ public class WriteImageOp extends Operator {
      */
     private double[] histoSkipRatios = {0.01, 0.04};
 
+    /**
+     * Approximate statistics are computed on the finest resolution level with at most this many pixels.
+     */
+    private static final long MAX_STATISTICS_PIXELS = 1024 * 1024;
+
     @Parameter(description = "The scale type to apply. Can be 'linear' or 'log'.", defaultValue = "linear")
-    private String scaleType;
+    String scaleType;
 
     private Band sourceBand;
 
     private ProgressMonitor pm = ProgressMonitor.NULL;
 
+    // parsed color palette definitions by file path, shared by all images of a batch run
+    private Map<String, ColorPaletteDef> colorPaletteDefs = new ConcurrentHashMap<String, ColorPaletteDef>();
+    // mask and contour products, and filtered contour bands, reused for all images of the source product
+    private Product maskProduct;
+    private Product contourProduct;
+    // the operator settings overridden by batch images, restored for images not overriding them
+    private String defaultFormatName;
+    private String defaultCpdFilePath;
+    private double defaultColourScaleMin;
+    private double defaultColourScaleMax;
+    private String defaultScaleType;
+    // filtered bands of the contour product by band and contour name
+    private final Map<String, FilterBand> filteredBands = new HashMap<String, FilterBand>();
+
     @Override
     public void initialize() throws OperatorException {
         if (this.sourceProduct == null) {
@@ -202,7 +251,7 @@ public class WriteImageOp extends Operator {
             this.log.warn("WARNING: Color palette definition could not be read. Will proceed with default colors.");
 
             // - colour scale min/max are only used if there is cpd file
-            if (!(this.colourScaleMin < this.colourScaleMax)) {
+            if (!this.colourScaleAuto && !(this.colourScaleMin < this.colourScaleMax)) {
                 throw new OperatorException("Error in data range: min should be less than max");
             }
         }
@@ -214,6 +263,15 @@ public class WriteImageOp extends Operator {
             this.sourceBandName = this.sourceBand.getName();
         }
 
+        for (BatchImage batchImage : batchImages) {
+            if (batchImage.getSourceBandName() == null || batchImage.getFilePath() == null) {
+                throw new OperatorException("Each batch image needs a source band name and a file path");
+            }
+            if (batchImage.getSourceFilePath() == null && !sourceProduct.containsBand(batchImage.getSourceBandName())) {
+                throw new OperatorException("Source does not contain band: " + batchImage.getSourceBandName());
+            }
+        }
+
         final int sceneRasterWidth = 1199;
         final int sceneRasterHeight = 951;
 
@@ -236,7 +294,11 @@ public class WriteImageOp extends Operator {
         this.log.debug(" WriteImage.computeTile({}, {}) ", rectangle.getX(), rectangle.getY());
 
         try {
-            this.writeImage();
+            if (batchImages.length > 0) {
+                this.writeBatchImages();
+            } else {
+                this.writeImage();
+            }
         } catch (final Exception e) {
             //FIXME: decide whether to throw this upwards
             e.printStackTrace();
@@ -249,6 +311,204 @@ public class WriteImageOp extends Operator {
         super.dispose();
     }
 
+    /**
+     * Generates and writes the images of a batch run. The images of one product are rendered one after another,
+     * so they can share the product's masks and contour bands, while different products are rendered in parallel.
+     *
+     * @throws Exception
+     */
+    protected void writeBatchImages() throws Exception {
+        final Map<String, List<BatchImage>> imagesByProduct = groupByProduct(batchImages);
+        final ExecutorService executor = Executors.newFixedThreadPool(getBatchThreadCount(imagesByProduct.size()));
+        try {
+            final List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (final Map.Entry<String, List<BatchImage>> entry : imagesByProduct.entrySet()) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return writeProductImages(entry.getKey(), entry.getValue());
+                    }
+                }));
+            }
+            int failures = 0;
+            for (Future<Integer> result : results) {
+                try {
+                    failures += result.get();
+                } catch (ExecutionException e) {
+                    this.log.error("Failed to render batch images", e.getCause());
+                    failures++;
+                }
+            }
+            this.log.info("=== batch written === [{} images, {} failed]", batchImages.length, failures);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Groups batch images by their product file, in the order the products first occur.
+     *
+     * @param batchImages the batch images
+     * @return the images by product file, the images of the source product under null
+     */
+    static Map<String, List<BatchImage>> groupByProduct(BatchImage[] batchImages) {
+        final Map<String, List<BatchImage>> imagesByProduct = new LinkedHashMap<String, List<BatchImage>>();
+        for (BatchImage batchImage : batchImages) {
+            List<BatchImage> productImages = imagesByProduct.get(batchImage.getSourceFilePath());
+            if (productImages == null) {
+                productImages = new ArrayList<BatchImage>();
+                imagesByProduct.put(batchImage.getSourceFilePath(), productImages);
+            }
+            productImages.add(batchImage);
+        }
+        return imagesByProduct;
+    }
+
+    /**
+     * @param productCount the number of products of the batch run
+     * @return the number of threads rendering the products, no more than there are products
+     */
+    int getBatchThreadCount(int productCount) {
+        final int threadCount = batchThreadCount > 0 ? batchThreadCount : Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(threadCount, productCount));
+    }
+
+    /**
+     * Renders the batch images of one product.
+     *
+     * @param productFilePath the product file, or null for the source product
+     * @param productImages   the images to render
+     * @return the number of images that failed
+     */
+    private int writeProductImages(String productFilePath, List<BatchImage> productImages) {
+        Product product = this.sourceProduct;
+        if (productFilePath != null) {
+            Operator readerOp = new ReadOp();
+            readerOp.setParameter("file", new File(productFilePath));
+            readerOp.initialize();
+            product = readerOp.getTargetProduct();
+        }
+        final WriteImageOp imageOp = createBatchOp(product);
+        int failures = 0;
+        try {
+            for (BatchImage batchImage : productImages) {
+                try {
+                    imageOp.configure(batchImage);
+                    imageOp.writeImage();
+                } catch (Exception e) {
+                    this.log.error("Failed to write image " + batchImage.getFilePath(), e);
+                    failures++;
+                }
+            }
+        } finally {
+            if (product != this.sourceProduct) {
+                product.dispose();
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Creates an operator rendering images from the bands of a product with the settings of this operator.
+     */
+    WriteImageOp createBatchOp(Product product) {
+        WriteImageOp imageOp = new WriteImageOp();
+        imageOp.sourceProduct = product;
+        imageOp.maskProductFilePath = maskProductFilePath;
+        imageOp.contourProductFilePath = contourProductFilePath;
+        imageOp.imageMasks = imageMasks;
+        imageOp.contours = contours;
+        imageOp.textAnnotations = textAnnotations;
+        imageOp.maskLayer = maskLayer;
+        imageOp.contourLayer = contourLayer;
+        imageOp.textAnnotationLayer = textAnnotationLayer;
+        imageOp.graticuleLayer = graticuleLayer;
+        imageOp.graticuleLayerLabel = graticuleLayerLabel;
+        imageOp.graticuleLayerTickEnabled = graticuleLayerTickEnabled;
+        imageOp.formatName = formatName;
+        imageOp.cpdFilePath = cpdFilePath;
+        imageOp.cpdAutoDistribute = cpdAutoDistribute;
+        imageOp.colourScaleMin = colourScaleMin;
+        imageOp.colourScaleMax = colourScaleMax;
+        imageOp.colourScaleAuto = colourScaleAuto;
+        imageOp.level = level;
+        imageOp.histoSkipRatios = histoSkipRatios;
+        imageOp.scaleType = scaleType;
+        imageOp.stripHeight = stripHeight;
+        imageOp.colorPaletteDefs = colorPaletteDefs;
+        imageOp.defaultFormatName = formatName;
+        imageOp.defaultCpdFilePath = cpdFilePath;
+        imageOp.defaultColourScaleMin = colourScaleMin;
+        imageOp.defaultColourScaleMax = colourScaleMax;
+        imageOp.defaultScaleType = scaleType;
+        return imageOp;
+    }
+
+    /**
+     * Applies the settings of a batch image; settings not given keep the values of this operator.
+     */
+    void configure(BatchImage batchImage) {
+        if (!sourceProduct.containsBand(batchImage.getSourceBandName())) {
+            throw new OperatorException("Source does not contain band: " + batchImage.getSourceBandName());
+        }
+        sourceBandName = batchImage.getSourceBandName();
+        sourceBand = sourceProduct.getBand(sourceBandName);
+        filePath = batchImage.getFilePath();
+        formatName = batchImage.getFormatName() != null ? batchImage.getFormatName() : defaultFormatName;
+        cpdFilePath = batchImage.getCpdFilePath() != null ? batchImage.getCpdFilePath() : defaultCpdFilePath;
+        colourScaleMin = batchImage.getColourScaleMin() != null ? batchImage.getColourScaleMin() : defaultColourScaleMin;
+        colourScaleMax = batchImage.getColourScaleMax() != null ? batchImage.getColourScaleMax() : defaultColourScaleMax;
+        scaleType = batchImage.getScaleType() != null ? batchImage.getScaleType() : defaultScaleType;
+    }
+
+    /**
+     * Loads a color palette definition, parsing each file only once.
+     *
+     * @param cpdFile the color palette definition file
+     * @return a copy of the parsed definition
+     * @throws IOException if the file cannot be read
+     */
+    private ColorPaletteDef loadColorPaletteDef(File cpdFile) throws IOException {
+        final String key = cpdFile.getAbsolutePath();
+        ColorPaletteDef cpd = colorPaletteDefs.get(key);
+        if (cpd == null) {
+            cpd = ColorPaletteDef.loadColorPaletteDef(cpdFile);
+            colorPaletteDefs.put(key, cpd);
+        }
+        return cpd.createDeepCopy();
+    }
+
+    /**
+     * Creates the default image info of a band without a full resolution statistics pass.
+     * <p/>
+     * If the colour scale is given, the statistics would not be used for the colour stretch at all, so the
+     * image info is built from a flat histogram over the given range. Otherwise the statistics are computed
+     * on a reduced resolution level of the band's image pyramid.
+     *
+     * @param band the band
+     * @return the default image info
+     */
+    private ImageInfo createDefaultImageInfo(Band band) {
+        if (!colourScaleAuto) {
+            final int[] bins = new int[Stx.DEFAULT_BIN_COUNT];
+            Arrays.fill(bins, 1);
+            return band.createDefaultImageInfo(histoSkipRatios, new Histogram(bins, colourScaleMin, colourScaleMax));
+        }
+
+        final MultiLevelModel model = band.getSourceImage().getModel();
+        int level = 0;
+        while (level < model.getLevelCount() - 1 && getPixelCount(band, model.getScale(level)) > MAX_STATISTICS_PIXELS) {
+            level++;
+        }
+        final Stx stx = new StxFactory().withResolutionLevel(level).create(band, this.pm);
+        return band.createDefaultImageInfo(histoSkipRatios,
+                new Histogram(stx.getHistogramBins(), stx.getMinimum(), stx.getMaximum()));
+    }
+
+    private static long getPixelCount(Band band, double scale) {
+        return (long) (band.getRasterWidth() / scale) * (long) (band.getRasterHeight() / scale);
+    }
+
     /**
      * Generates and writes an image file from the input Product.
      *
@@ -257,7 +517,7 @@ public class WriteImageOp extends Operator {
     protected void writeImage() throws Exception {
 
         Band band = this.sourceBand;
-        final ImageInfo defaultImageInfo = band.createDefaultImageInfo(histoSkipRatios, this.pm);
+        final ImageInfo defaultImageInfo = createDefaultImageInfo(band);
         band.setImageInfo(defaultImageInfo);
 
         final boolean isLog = LOGARITHMIC.equalsIgnoreCase(this.scaleType);
@@ -267,7 +527,7 @@ public class WriteImageOp extends Operator {
         final File file = new File(this.cpdFilePath);
         ColorPaletteDef cpd = null;
         try {
-            cpd = ColorPaletteDef.loadColorPaletteDef(file);
+            cpd = loadColorPaletteDef(file);
             debug.append("Successfully loaded color palette definition: ");
             debug.append(this.cpdFilePath);
 
@@ -287,16 +547,20 @@ public class WriteImageOp extends Operator {
 
             double minSample = colourScaleMin;
             double maxSample = colourScaleMax;
+            if (colourScaleAuto) {
+                minSample = defaultImageInfo.getColorPaletteDef().getMinDisplaySample();
+                maxSample = defaultImageInfo.getColorPaletteDef().getMaxDisplaySample();
+            }
 
             band.getImageInfo().setColorPaletteDef(cpd, minSample, maxSample, this.cpdAutoDistribute, defaultImageInfo.isLogScaled(), isLog);
             band.getImageInfo().setLogScaled(isLog);
 
             debug.append("\n CPD min =");
-            debug.append(minSample + "   " + band.getStx().getMinimum() + "   ");
+            debug.append(minSample + "   " + defaultImageInfo.getColorPaletteDef().getMinDisplaySample() + "   ");
             debug.append(cpd.getMinDisplaySample() + "   " + band.getImageInfo().getColorPaletteDef().getMinDisplaySample());
             debug.append(band.getImageInfo().isLogScaled());
             debug.append("\n CPD  max =");
-            debug.append(maxSample + "  " + band.getStx().getMinimum() + "   " + cpd.getMaxDisplaySample() + "   " + band.getImageInfo().getColorPaletteDef().getMaxDisplaySample());
+            debug.append(maxSample + "  " + defaultImageInfo.getColorPaletteDef().getMaxDisplaySample() + "   " + cpd.getMaxDisplaySample() + "   " + band.getImageInfo().getColorPaletteDef().getMaxDisplaySample());
             debug.append("\n ColorScaleMin/Max  = " + colourScaleMin + "; " + colourScaleMax);
             debug.append("\n source scaling=" + (defaultImageInfo.isLogScaled() ? "LOG" : "LINEAR"));
             if (isLog) {
@@ -463,6 +727,10 @@ public class WriteImageOp extends Operator {
         final boolean useAlpha = !BMP_FORMAT_DESCRIPTION[0].equals(imageFormat) && !JPEG_FORMAT_DESCRIPTION[0].equals(imageFormat);
         final boolean entireImage = true;
         Dimension dimension = new Dimension(getImageDimensions(view, entireImage));
+        if (stripHeight > 0) {
+            return new LayerStripImage(view, dimension, useAlpha,
+                    GEOTIFF_FORMAT_DESCRIPTION[0].equals(imageFormat), stripHeight);
+        }
         return createImage(view, entireImage, dimension, useAlpha,
                 GEOTIFF_FORMAT_DESCRIPTION[0].equals(imageFormat));
     }
@@ -486,14 +754,31 @@ public class WriteImageOp extends Operator {
 
     private static BufferedImageRendering createRendering(ProductSceneView view, boolean fullScene,
                                                           boolean geoReferenced, BufferedImage bufferedImage) {
+        final Dimension dimension = new Dimension(bufferedImage.getWidth(), bufferedImage.getHeight());
+        return createRendering(view, fullScene, geoReferenced, bufferedImage, dimension, null);
+    }
+
+    /**
+     * Creates a rendering of a part of the image into a buffered image.
+     *
+     * @param dimension  the size of the full image
+     * @param viewBounds the part of the full image to render, or null for the full image
+     */
+    static BufferedImageRendering createRendering(ProductSceneView view, boolean fullScene,
+                                                  boolean geoReferenced, BufferedImage bufferedImage,
+                                                  Dimension dimension, Rectangle viewBounds) {
         final Viewport vp1 = view.getLayerCanvas().getViewport();
-        final Viewport vp2 = new DefaultViewport(new Rectangle(0, 0, bufferedImage.getWidth(), bufferedImage.getHeight()),
+        final Viewport vp2 = new DefaultViewport(new Rectangle(0, 0, dimension.width, dimension.height),
                 vp1.isModelYAxisDown());
         if (fullScene) {
             vp2.zoom(view.getBaseImageLayer().getModelBounds());
         } else {
             setTransform(vp1, vp2);
         }
+        if (viewBounds != null) {
+            // layers only render what falls into the view bounds
+            vp2.setViewBounds(viewBounds);
+        }
 
         final BufferedImageRendering imageRendering = new BufferedImageRendering(bufferedImage, vp2);
         if (geoReferenced) {
@@ -612,10 +897,12 @@ public class WriteImageOp extends Operator {
         Layer maskCollectionLayer = productSceneView.getSceneImage().getMaskCollectionLayer(true);
         maskCollectionLayer.setVisible(true);
         int existingLayerCount = maskCollectionLayer.getChildren().size();
-        Operator readerOp = new ReadOp();
-        readerOp.setParameter("file", new File(maskProductFilePath));
-        readerOp.initialize();
-        Product maskProduct = readerOp.getTargetProduct();
+        if (maskProduct == null) {
+            Operator readerOp = new ReadOp();
+            readerOp.setParameter("file", new File(maskProductFilePath));
+            readerOp.initialize();
+            maskProduct = readerOp.getTargetProduct();
+        }
         for (int i = 0; i < imageMasks.length; i++) {
             imageMask = imageMasks[i];
             //extract mask band, rename it, and add to the source product
@@ -627,6 +914,14 @@ public class WriteImageOp extends Operator {
             }
             maskName = imageMask.getImageMaskName();
             maskDescription = imageMask.getImageMaskDescription();
+            final Mask existingMask = this.sourceProduct.getMaskGroup().get(maskName);
+            if (existingMask != null) {
+                // created for an earlier image of the product, the scene image may not have a layer for it yet
+                if (!containsMaskLayer(maskCollectionLayer, existingMask)) {
+                    maskCollectionLayer.getChildren().add(getMaskAsLayer(existingMask));
+                }
+                continue;
+            }
 
             maskExpression = imageMask.getImageMaskExpression();
 
@@ -669,6 +964,16 @@ public class WriteImageOp extends Operator {
         productSceneView.setMaskOverlayEnabled(true);
     }
 
+    private static boolean containsMaskLayer(final Layer maskCollectionLayer, final Mask mask) {
+        for (Layer layer : maskCollectionLayer.getChildren()) {
+            final Object layerMask = layer.getConfiguration().getValue(MaskLayerType.PROPERTY_NAME_MASK);
+            if (layerMask == mask) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Layer getMaskAsLayer(final Mask mask) {
         final MaskLayerType maskLayerType = LayerTypeRegistry.getLayerType(MaskLayerType.class);
         final PropertySet configuration = maskLayerType.createLayerConfig(null);
@@ -769,6 +1074,11 @@ public class WriteImageOp extends Operator {
                 geoPos = geoCoding.getGeoPos(pixelPos, null);
             }
 
+            if (sourceProduct.getTextAnnotationGroup().contains(textAnnotations[i].getTextAnnotationName())) {
+                // added for an earlier image of the product
+                continue;
+            }
+
             if (pixelPos != null && geoPos !=null ) {
                 textAnnotationMark = Placemark.createPointPlacemark(descriptor,
                         textAnnotations[i].getTextAnnotationName(),
@@ -822,16 +1132,18 @@ public class WriteImageOp extends Operator {
     private void addContourLayers(ProductSceneView productSceneView) {
         ImageMask imageMask;
         String contourSourceBandName;
-        Operator readerOp = new ReadOp();
-        readerOp.setParameter("file", new File(contourProductFilePath));
-        readerOp.initialize();
-        Product contourProduct = readerOp.getTargetProduct();
+        if (contourProduct == null) {
+            Operator readerOp = new ReadOp();
+            readerOp.setParameter("file", new File(contourProductFilePath));
+            readerOp.initialize();
+            contourProduct = readerOp.getTargetProduct();
+        }
         productSceneView.setGcpOverlayEnabled(true);
         Product sourceProduct = productSceneView.getProduct();
         String filterBandName;
         ContourData contourData;
         Color contourLineColor;
-        Band filteredBand;
+        FilterBand filteredBand;
         Band contourBand;
         for (Contour contour: contours) {
             contourSourceBandName = contour.getContourSourceBandName();
@@ -841,7 +1153,12 @@ public class WriteImageOp extends Operator {
                 sourceProduct.addBand(contourBand);
             }
             filterBandName = contour.getFilterName();
-            filteredBand = getFilteredBand(contourBand, contour.getName());
+            final String filteredBandKey = contourSourceBandName + "/" + contour.getName();
+            filteredBand = filteredBands.get(filteredBandKey);
+            if (filteredBand == null) {
+                filteredBand = getFilteredBand(contourBand, contour.getName());
+                filteredBands.put(filteredBandKey, filteredBand);
+            }
             ContourInterval ci = new ContourInterval(contour.getName(), new Double(contour.getValue()), filterBandName, 1, true); //0.08, "am5", 1);
             contourLineColor = new Color(contour.getColor()[0], contour.getColor()[1], contour.getColor()[2]);
             ci.setLineColor(contourLineColor);
@@ -1113,6 +1430,99 @@ public class WriteImageOp extends Operator {
         }
     }
 
+    public static class BatchImage {
+
+        @Parameter(description = "The product file containing the band. If not provided, the source product is used.")
+        private String sourceFilePath;
+        @Parameter(description = "Name of the band to render.")
+        private String sourceBandName;
+        @Parameter(description = "The file to which the image is written.")
+        private String filePath;
+        @Parameter(description = "Output image format. If not provided, the format of the operator is used.")
+        private String formatName;
+        @Parameter(description = "Color palette definition file. If not provided, the file of the operator is used.")
+        private String cpdFilePath;
+        @Parameter(description = "Minimum value of colour scale. If not provided, the minimum of the operator is used.")
+        private Double colourScaleMin;
+        @Parameter(description = "Maximum value of colour scale. If not provided, the maximum of the operator is used.")
+        private Double colourScaleMax;
+        @Parameter(description = "The scale type to apply. If not provided, the scale type of the operator is used.")
+        private String scaleType;
+
+        public BatchImage() {
+        }
+
+        public BatchImage(String sourceFilePath, String sourceBandName, String filePath) {
+            this.sourceFilePath = sourceFilePath;
+            this.sourceBandName = sourceBandName;
+            this.filePath = filePath;
+        }
+
+        public String getSourceFilePath() {
+            return sourceFilePath;
+        }
+
+        public void setSourceFilePath(String sourceFilePath) {
+            this.sourceFilePath = sourceFilePath;
+        }
+
+        public String getSourceBandName() {
+            return sourceBandName;
+        }
+
+        public void setSourceBandName(String sourceBandName) {
+            this.sourceBandName = sourceBandName;
+        }
+
+        public String getFilePath() {
+            return filePath;
+        }
+
+        public void setFilePath(String filePath) {
+            this.filePath = filePath;
+        }
+
+        public String getFormatName() {
+            return formatName;
+        }
+
+        public void setFormatName(String formatName) {
+            this.formatName = formatName;
+        }
+
+        public String getCpdFilePath() {
+            return cpdFilePath;
+        }
+
+        public void setCpdFilePath(String cpdFilePath) {
+            this.cpdFilePath = cpdFilePath;
+        }
+
+        public Double getColourScaleMin() {
+            return colourScaleMin;
+        }
+
+        public void setColourScaleMin(Double colourScaleMin) {
+            this.colourScaleMin = colourScaleMin;
+        }
+
+        public Double getColourScaleMax() {
+            return colourScaleMax;
+        }
+
+        public void setColourScaleMax(Double colourScaleMax) {
+            this.colourScaleMax = colourScaleMax;
+        }
+
+        public String getScaleType() {
+            return scaleType;
+        }
+
+        public void setScaleType(String scaleType) {
+            this.scaleType = scaleType;
+        }
+    }
+
     public static class ImageMask {
 
         @Parameter(description = "Name of band that is used to create a mask. If not provided, first band in the mask product is used.")
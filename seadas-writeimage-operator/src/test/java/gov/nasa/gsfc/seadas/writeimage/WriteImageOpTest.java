@@ -7,6 +7,7 @@ import org.esa.beam.framework.dataio.ProductIO;
 import org.esa.beam.framework.datamodel.*;
 import org.esa.beam.framework.gpf.GPF;
 import org.esa.beam.framework.gpf.Operator;
+import org.esa.beam.framework.gpf.OperatorException;
 import org.esa.beam.framework.gpf.OperatorSpi;
 import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.framework.gpf.annotations.OperatorMetadata;
@@ -22,6 +23,10 @@ import javax.media.jai.TileScheduler;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by aabduraz on 7/30/15.
@@ -154,6 +159,78 @@ public class WriteImageOpTest extends TestCase {
             }
         }
     }
+    public void testBatchImagesAreGroupedByProduct() throws Exception {
+        WriteImageOp.BatchImage sourceImage1 = new WriteImageOp.BatchImage(null, "a", "a.png");
+        WriteImageOp.BatchImage otherImage1 = new WriteImageOp.BatchImage("other.nc", "a", "other_a.png");
+        WriteImageOp.BatchImage sourceImage2 = new WriteImageOp.BatchImage(null, "b", "b.png");
+        WriteImageOp.BatchImage otherImage2 = new WriteImageOp.BatchImage("other.nc", "b", "other_b.png");
+        WriteImageOp.BatchImage thirdImage = new WriteImageOp.BatchImage("third.nc", "a", "third_a.png");
+
+        Map<String, List<WriteImageOp.BatchImage>> imagesByProduct = WriteImageOp.groupByProduct(
+                new WriteImageOp.BatchImage[]{sourceImage1, otherImage1, sourceImage2, thirdImage, otherImage2});
+
+        assertEquals(Arrays.asList(null, "other.nc", "third.nc"), new ArrayList<String>(imagesByProduct.keySet()));
+        assertEquals(Arrays.asList(sourceImage1, sourceImage2), imagesByProduct.get(null));
+        assertEquals(Arrays.asList(otherImage1, otherImage2), imagesByProduct.get("other.nc"));
+        assertEquals(Arrays.asList(thirdImage), imagesByProduct.get("third.nc"));
+    }
+
+    public void testBatchThreadCount() throws Exception {
+        WriteImageOp op = new WriteImageOp();
+        op.batchThreadCount = 2;
+        assertEquals(2, op.getBatchThreadCount(5));
+        // no more threads than products
+        assertEquals(1, op.getBatchThreadCount(1));
+
+        op.batchThreadCount = 0;
+        assertEquals(Math.min(Runtime.getRuntime().availableProcessors(), 64), op.getBatchThreadCount(64));
+    }
+
+    public void testBatchImageSettingsAreRestored() throws Exception {
+        Product product = new Product("batch", "test", RASTER_WIDTH, RASTER_HEIGHT);
+        product.addBand("a", ProductData.TYPE_FLOAT32);
+        product.addBand("b", ProductData.TYPE_FLOAT32);
+        WriteImageOp op = new WriteImageOp();
+        op.formatName = "png";
+        op.cpdFilePath = "default.cpd";
+        op.colourScaleMin = 0.5;
+        op.colourScaleMax = 2.0;
+        op.scaleType = "linear";
+        WriteImageOp batchOp = op.createBatchOp(product);
+
+        WriteImageOp.BatchImage overridingImage = new WriteImageOp.BatchImage(null, "a", "a.jpg");
+        overridingImage.setFormatName("jpeg");
+        overridingImage.setCpdFilePath("other.cpd");
+        overridingImage.setColourScaleMin(-1.0);
+        overridingImage.setColourScaleMax(1.0);
+        overridingImage.setScaleType("log");
+        batchOp.configure(overridingImage);
+        assertEquals("a", batchOp.sourceBandName);
+        assertEquals("a.jpg", batchOp.filePath);
+        assertEquals("jpeg", batchOp.formatName);
+        assertEquals("other.cpd", batchOp.cpdFilePath);
+        assertEquals(-1.0, batchOp.colourScaleMin);
+        assertEquals(1.0, batchOp.colourScaleMax);
+        assertEquals("log", batchOp.scaleType);
+
+        // the settings of the operator apply again to an image that does not override them
+        batchOp.configure(new WriteImageOp.BatchImage(null, "b", "b.png"));
+        assertEquals("b", batchOp.sourceBandName);
+        assertEquals("b.png", batchOp.filePath);
+        assertEquals("png", batchOp.formatName);
+        assertEquals("default.cpd", batchOp.cpdFilePath);
+        assertEquals(0.5, batchOp.colourScaleMin);
+        assertEquals(2.0, batchOp.colourScaleMax);
+        assertEquals("linear", batchOp.scaleType);
+
+        try {
+            batchOp.configure(new WriteImageOp.BatchImage(null, "c", "c.png"));
+            fail("OperatorException expected");
+        } catch (OperatorException expected) {
+        }
+        product.dispose();
+    }
+
     public void testInitialize() throws Exception {
 
     }